@@ -0,0 +1,115 @@
+package com.myproject.core.tables;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 表格引擎的解析、序列化以及 TableRowsServlet 用到的排序 / 过滤索引。
+ * 与 TableParsers 同包，直接调用包内可见的解析方法。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TableEngineBenchmark {
+
+    private static final int COLUMNS = 6;
+    private static final String[] WORDS = {"Hang Seng", "Tencent", "HSBC", "AIA", "Meituan", "港交所", "恒生指数", "Alibaba"};
+    private static final JsonFactory JSON = new JsonFactory();
+
+    @Param({"10", "100", "1000", "10000"})
+    public int rows;
+
+    private String jsonGrid;
+    private String html;
+    private ParsedTable table;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        StringBuilder grid = new StringBuilder("[");
+        StringBuilder markup = new StringBuilder("<table><thead><tr>");
+        for (int c = 0; c < COLUMNS; c++) markup.append("<th>Column ").append(c).append("</th>");
+        markup.append("</tr></thead><tbody>");
+        for (int r = 0; r <= rows; r++) {
+            if (r > 0) grid.append(',');
+            grid.append('[');
+            if (r > 0) markup.append("<tr>");
+            for (int c = 0; c < COLUMNS; c++) {
+                String value = r == 0 ? "Column " + c : cell(random, c);
+                if (c > 0) grid.append(',');
+                grid.append('"').append(value).append('"');
+                if (r > 0) markup.append("<td>").append(value).append("</td>");
+            }
+            grid.append(']');
+            if (r > 0) markup.append("</tr>");
+        }
+        jsonGrid = grid.append(']').toString();
+        html = markup.append("</tbody></table>").toString();
+        table = TableParsers.fromJsonGrid(jsonGrid);
+        table.index().select(1, false, null); // 预热 index，select 的测量不含构建
+    }
+
+    @Benchmark
+    public ParsedTable parseJsonGrid() {
+        return TableParsers.fromJsonGrid(jsonGrid);
+    }
+
+    @Benchmark
+    public ParsedTable parseHtml() {
+        return TableParsers.fromHtml(html);
+    }
+
+    @Benchmark
+    public String serialize() throws IOException {
+        StringWriter out = new StringWriter(jsonGrid.length());
+        try (JsonGenerator gen = JSON.createGenerator(out)) {
+            ParsedTableSerializer.write(table, gen);
+        }
+        return out.toString();
+    }
+
+    /** 第一次排序某列的成本：新 index + 该列的排列 */
+    @Benchmark
+    public int[] buildIndexAndSort() {
+        return new TableIndex(table).select(1, false, null);
+    }
+
+    @Benchmark
+    public int[] sortedSelect() {
+        return table.index().select(2, true, null);
+    }
+
+    @Benchmark
+    public int[] filteredSelect() {
+        return table.index().select(1, false, "hsb");
+    }
+
+    private static String cell(Random random, int column) {
+        switch (column) {
+            case 0: return WORDS[random.nextInt(WORDS.length)];
+            case 1: return WORDS[random.nextInt(WORDS.length)] + " " + random.nextInt(1000);
+            case 5: return random.nextInt(10) == 0 ? "" : (random.nextInt(2000) - 1000) / 100.0 + "%";
+            default: return String.format(Locale.ROOT, "%,.2f", random.nextDouble() * 30000);
+        }
+    }
+}
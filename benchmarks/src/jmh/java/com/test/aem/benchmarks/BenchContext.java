@@ -0,0 +1,32 @@
+package com.test.aem.benchmarks;
+
+import io.wcm.testing.mock.aem.context.AemContextImpl;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
+
+/**
+ * In-memory AEM stand-in for JMH. The JUnit AemContext is driven by its
+ * extension, so benchmarks call setUp/tearDown from their @Setup/@TearDown.
+ */
+public final class BenchContext extends AemContextImpl {
+
+    public BenchContext() {
+        setResourceResolverType(ResourceResolverType.RESOURCERESOLVER_MOCK);
+    }
+
+    public BenchContext start() {
+        setUp();
+        return this;
+    }
+
+    public void stop() {
+        tearDown();
+    }
+
+    /** A fresh request per invocation, so request-scoped caches do not leak between invocations. */
+    public MockSlingHttpServletRequest newRequest(String resourcePath) {
+        MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(resourceResolver(), bundleContext());
+        request.setResource(resourceResolver().getResource(resourcePath));
+        return request;
+    }
+}
@@ -0,0 +1,131 @@
+package com.test.aem.benchmarks;
+
+import com.myproject.core.models.CustomTableModel;
+import com.myproject.core.models.SpaDynamicTable;
+import com.myproject.core.tables.TableModelCacheImpl;
+import com.mysite.core.models.impl.ContactCardImpl;
+import com.test.aem.core.services.impl.RenderProfilerImpl;
+import com.yourproject.core.models.FlexibleContainer;
+import com.yourproject.core.services.impl.SubtreeJsonCacheImpl;
+import org.apache.sling.models.factory.ModelFactory;
+import org.apache.sling.models.jacksonexporter.impl.JacksonExporter;
+import org.apache.sling.models.jacksonexporter.impl.ResourceModuleProvider;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full model.json export through the Jackson exporter, the path a SPA page
+ * request takes for each component: adaptation plus serialization.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExportBenchmark {
+
+    private static final int COLUMNS = 6;
+
+    @Param({"10", "100", "1000"})
+    public int rows;
+
+    private BenchContext context;
+    private ModelFactory modelFactory;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new BenchContext().start();
+        context.registerInjectActivateService(new ResourceModuleProvider());
+        context.registerInjectActivateService(new JacksonExporter());
+        context.registerInjectActivateService(new RenderProfilerImpl());
+        context.registerInjectActivateService(new TableModelCacheImpl());
+        context.registerInjectActivateService(new SubtreeJsonCacheImpl());
+        context.addModelsForClasses(FlexibleContainer.class, ContactCardImpl.class,
+                CustomTableModel.class, SpaDynamicTable.class);
+        modelFactory = context.getService(ModelFactory.class);
+
+        context.create().resource("/content/bench/container",
+                "sling:resourceType", FlexibleContainer.RESOURCE_TYPE, "layoutDirection", "row");
+        for (int i = 0; i < 8; i++) {
+            context.create().resource("/content/bench/container/items/item" + i,
+                    "sling:resourceType", "mysite/components/contact-card");
+        }
+        context.create().resource("/content/bench/contact",
+                "sling:resourceType", "mysite/components/contact-card",
+                "title", "Investor Relations", "text", "<p>ir@example.com</p>", "fileReference", "/content/dam/bench/ir.png");
+
+        context.create().resource("/content/bench/customtable",
+                "sling:resourceType", "my-project/components/custom-table", "tableData", jsonGrid(rows));
+
+        context.create().resource("/content/bench/spatable",
+                "sling:resourceType", "my-project/components/spa-dynamic-table", "tableCaption", "Constituents");
+        for (int r = 0; r < rows; r++) {
+            String row = "/content/bench/spatable/rows/item" + r;
+            context.create().resource(row);
+            for (int c = 0; c < COLUMNS; c++) {
+                context.create().resource(row + "/cols/item" + c, "text", "r" + r + "c" + c);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.stop();
+    }
+
+    @Benchmark
+    public String flexibleContainer() throws Exception {
+        return export("/content/bench/container", FlexibleContainer.class);
+    }
+
+    @Benchmark
+    public String contactCard() throws Exception {
+        return export("/content/bench/contact", ContactCardImpl.class);
+    }
+
+    @Benchmark
+    public String customTable() throws Exception {
+        return export("/content/bench/customtable", CustomTableModel.class);
+    }
+
+    @Benchmark
+    public String spaDynamicTable() throws Exception {
+        return export("/content/bench/spatable", SpaDynamicTable.class);
+    }
+
+    private String export(String path, Class<?> modelClass) throws Exception {
+        MockSlingHttpServletRequest request = context.newRequest(path);
+        Object model = modelFactory.createModel(request, modelClass);
+        return modelFactory.exportModel(model, "jackson", String.class, Collections.emptyMap());
+    }
+
+    private static String jsonGrid(int rows) {
+        StringBuilder grid = new StringBuilder("[");
+        for (int r = 0; r <= rows; r++) {
+            if (r > 0) grid.append(',');
+            grid.append('[');
+            for (int c = 0; c < COLUMNS; c++) {
+                if (c > 0) grid.append(',');
+                grid.append('"').append(r == 0 ? "Column " + c : "r" + r + "c" + c).append('"');
+            }
+            grid.append(']');
+        }
+        return grid.append(']').toString();
+    }
+}
@@ -0,0 +1,75 @@
+package com.test.aem.benchmarks;
+
+import com.test.aem.core.beans.IndexData;
+import com.test.aem.core.services.MarketDataService;
+import com.test.aem.core.services.impl.MarketDataClientImpl;
+import com.test.aem.core.services.resilience.CallFailedException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caller-side latency of MarketDataClient against a degraded stub feed, with
+ * more callers than bulkhead permits. With a healthy feed the cost is the
+ * hand-off to the call pool; with a slow or hanging feed, calls must return
+ * within the deadline and then, once the circuit opens, immediately.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+public class MarketDataClientBenchmark {
+
+    @Param({"healthy", "slow", "flaky", "hanging"})
+    public String feed;
+
+    private BenchContext context;
+    private MarketDataClientImpl client;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        StubMarketFeed stub = new StubMarketFeed();
+        switch (feed) {
+            case "slow": stub.latency(500); break;     // past the 200 ms deadline below
+            case "flaky": stub.latency(20).failureRate(0.5); break;
+            case "hanging": stub.hang(true); break;
+            default: break;
+        }
+        context = new BenchContext().start();
+        context.registerService(MarketDataService.class, stub.wrap(MarketFixtures.marketDataService()));
+        client = context.registerInjectActivateService(new MarketDataClientImpl(),
+                "callTimeoutMillis", 200L, "maxConcurrentCalls", 4, "failureThreshold", 5, "openMillis", 1000L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.stop();
+    }
+
+    @Benchmark
+    public void currentIndexData(Blackhole blackhole) {
+        try {
+            IndexData data = client.getCurrentIndexData("HSI");
+            blackhole.consume(data);
+        } catch (CallFailedException e) {
+            blackhole.consume(e.getReason());
+        }
+    }
+}
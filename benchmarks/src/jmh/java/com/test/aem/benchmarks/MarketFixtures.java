@@ -0,0 +1,163 @@
+package com.test.aem.benchmarks;
+
+import com.test.aem.core.beans.ChartData;
+import com.test.aem.core.beans.ChartPoint;
+import com.test.aem.core.beans.IndexData;
+import com.test.aem.core.beans.MarketSummary;
+import com.test.aem.core.beans.NewsItem;
+import com.test.aem.core.services.MarketDataService;
+import com.test.aem.core.services.NewsService;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Deterministic market data at realistic sizes. The mocked services answer
+ * immediately, so the benchmarks measure the models and caches, not a feed.
+ */
+public final class MarketFixtures {
+
+    public static final String[] TIMEFRAMES = {"1D", "5D", "1M", "3M", "6M", "1Y", "5Y"};
+
+    private static final long MINUTE = 60_000L;
+    private static final long DAY = 24 * 60 * MINUTE;
+
+    private MarketFixtures() {
+    }
+
+    public static MarketDataService marketDataService() {
+        MarketDataService service = mock(MarketDataService.class);
+        when(service.getCurrentIndexData(anyString())).thenAnswer(call -> indexData(call.getArgument(0)));
+        when(service.getMarketSummary(anyList())).thenAnswer(call -> {
+            List<String> codes = call.getArgument(0);
+            List<MarketSummary> summaries = new ArrayList<>(codes.size());
+            Random random = new Random(codes.hashCode());
+            for (String code : codes) {
+                summaries.add(summary(code, random));
+            }
+            return summaries;
+        });
+        when(service.getMajorIndicesSummary()).thenAnswer(call -> summaries(5, 7));
+        when(service.getChartData(anyString(), anyString())).thenAnswer(call -> chart(call.getArgument(0), call.getArgument(1)));
+        when(service.sortMarketData(anyList(), anyString())).thenAnswer(call -> sort(call.getArgument(0), call.getArgument(1)));
+        return service;
+    }
+
+    /**
+     * Stand-in for MarketDataService.sortMarketData, whose implementation is not in
+     * this tree: a sorted copy with BigDecimal comparators, which is what the
+     * views replace per render. The views keep whatever order the real service returns.
+     */
+    public static List<MarketSummary> sort(List<MarketSummary> summaries, String sortBy) {
+        List<MarketSummary> copy = new ArrayList<>(summaries);
+        copy.sort(comparator(sortBy));
+        return copy;
+    }
+
+    private static Comparator<MarketSummary> comparator(String sortBy) {
+        switch (sortBy) {
+            case "value": return byNumber(MarketSummary::getCurrentValue);
+            case "change": return byNumber(MarketSummary::getChange);
+            case "volume": return byNumber(MarketSummary::getVolume);
+            default: return Comparator.comparing(MarketSummary::getIndexName, Comparator.nullsLast(Comparator.naturalOrder()));
+        }
+    }
+
+    private static Comparator<MarketSummary> byNumber(Function<MarketSummary, BigDecimal> getter) {
+        return Comparator.comparing(getter, Comparator.nullsLast(Comparator.<BigDecimal>reverseOrder()));
+    }
+
+    public static NewsService newsService() {
+        NewsService service = mock(NewsService.class);
+        when(service.getNews(anyString(), anyString(), anyInt())).thenAnswer(call -> news(call.getArgument(2)));
+        return service;
+    }
+
+    public static IndexData indexData(String code) {
+        IndexData data = new IndexData(code, "Index " + code);
+        data.setCurrentValue(new BigDecimal("17234.560000"));
+        data.setChange(new BigDecimal("-123.450000"));
+        data.setChangePercent(new BigDecimal("-0.710000"));
+        data.setVolume(new BigDecimal("1234567890.1234"));
+        data.setHigh(new BigDecimal("17400.120000"));
+        data.setLow(new BigDecimal("17100.030000"));
+        data.setLastUpdate(LocalDateTime.of(2026, 1, 15, 10, 30));
+        data.setStatus("OPEN");
+        return data;
+    }
+
+    // MarketSummary is assumed to be a bean shaped like IndexData (no-arg constructor and setters)
+    public static List<MarketSummary> summaries(int count, long seed) {
+        Random random = new Random(seed);
+        List<MarketSummary> summaries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            summaries.add(summary("IDX" + i, random));
+        }
+        return summaries;
+    }
+
+    private static MarketSummary summary(String code, Random random) {
+        MarketSummary summary = new MarketSummary();
+        summary.setIndexCode(code);
+        summary.setIndexName("Index " + Integer.toString(random.nextInt(1 << 20), 36));
+        summary.setCurrentValue(BigDecimal.valueOf(1000 + random.nextInt(30000), 2));
+        summary.setChange(BigDecimal.valueOf(random.nextInt(20000) - 10000, 2));
+        summary.setVolume(BigDecimal.valueOf(random.nextInt(Integer.MAX_VALUE), 0));
+        return summary;
+    }
+
+    // Intraday minute bars for 1D/5D, daily bars otherwise
+    public static ChartData chart(String code, String period) {
+        int points;
+        long step;
+        switch (period) {
+            case "1D": points = 330; step = MINUTE; break;
+            case "5D": points = 5 * 330; step = MINUTE; break;
+            case "1M": points = 22; step = DAY; break;
+            case "3M": points = 66; step = DAY; break;
+            case "6M": points = 130; step = DAY; break;
+            case "1Y": points = 250; step = DAY; break;
+            default: points = 1250; step = DAY; break;
+        }
+        Random random = new Random(code.hashCode() * 31L + period.hashCode());
+        List<ChartPoint> series = new ArrayList<>(points);
+        long time = 1_767_225_600_000L - points * step;
+        double close = 17000;
+        for (int i = 0; i < points; i++, time += step) {
+            double open = close;
+            close = open + random.nextGaussian() * 20;
+            series.add(new ChartPoint(time, open, Math.max(open, close) + 5, Math.min(open, close) - 5, close,
+                    1_000_000 + random.nextInt(1_000_000)));
+        }
+        return new ChartData(code, period, series);
+    }
+
+    public static List<NewsItem> news(int count) {
+        List<NewsItem> items = new ArrayList<>(count);
+        long now = 1_767_225_600_000L;
+        for (int i = 0; i < count; i++) {
+            NewsItem item = new NewsItem();
+            item.setId("n" + i);
+            item.setTitle("Headline " + i);
+            item.setExcerpt("Excerpt " + i);
+            item.setUrl("/news/" + i);
+            item.setCategory("market");
+            item.setLanguage("en");
+            item.setPublishDate(new Date(now - i * 3_600_000L));
+            items.add(item);
+        }
+        return items;
+    }
+}
@@ -0,0 +1,106 @@
+package com.test.aem.benchmarks;
+
+import com.test.aem.core.models.ChartComponentModel;
+import com.test.aem.core.models.IndexCardModel;
+import com.test.aem.core.models.MarketDataModel;
+import com.test.aem.core.models.NewsListModel;
+import com.test.aem.core.services.MarketDataService;
+import com.test.aem.core.services.NewsService;
+import com.test.aem.core.services.impl.DependencyRegistryImpl;
+import com.test.aem.core.services.impl.IndexSnapshotCacheImpl;
+import com.test.aem.core.services.impl.JsonFragmentCacheImpl;
+import com.test.aem.core.services.impl.MarketDataClientImpl;
+import com.test.aem.core.services.impl.NewsFeedCacheImpl;
+import com.test.aem.core.services.impl.RenderProfilerImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @PostConstruct cost of the market models against warm snapshot caches,
+ * which is the steady state on publish. The profiler parameter measures the
+ * overhead of the render profiler when switched on.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MarketModelBenchmark {
+
+    @Param({"1D", "5D", "1M", "3M", "6M", "1Y", "5Y"})
+    public String timeframe;
+
+    @Param({"line", "candlestick"})
+    public String chartType;
+
+    @Param({"false", "true"})
+    public boolean profiler;
+
+    private BenchContext context;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new BenchContext().start();
+        context.registerService(MarketDataService.class, MarketFixtures.marketDataService());
+        context.registerService(NewsService.class, MarketFixtures.newsService());
+        context.registerInjectActivateService(new MarketDataClientImpl());
+        context.registerInjectActivateService(new RenderProfilerImpl(), "enabled", profiler);
+        context.registerInjectActivateService(new JsonFragmentCacheImpl());
+        context.registerInjectActivateService(new DependencyRegistryImpl());
+        context.registerInjectActivateService(new IndexSnapshotCacheImpl());
+        context.registerInjectActivateService(new NewsFeedCacheImpl());
+        context.addModelsForClasses(IndexCardModel.class, MarketDataModel.class, NewsListModel.class, ChartComponentModel.class);
+
+        context.create().resource("/content/bench/card", "indexCode", "HSI", "refreshInterval", "30000");
+        context.create().resource("/content/bench/market",
+                "selectedIndices", new String[]{"HSI", "HSCEI", "HSTECH", "HSCI", "VHSI"}, "sortBy", "change");
+        context.create().resource("/content/bench/news", "category", "market", "language", "en", "maxItems", 10);
+        context.create().resource("/content/bench/chart", "indexCode", "HSI", "timeframe", timeframe,
+                "chartType", chartType, "width", "1200");
+
+        // First adaptation loads every snapshot; the measured calls then read warm caches
+        indexCard();
+        marketData();
+        newsList();
+        chart();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.stop();
+    }
+
+    @Benchmark
+    public IndexCardModel indexCard() {
+        return context.newRequest("/content/bench/card").adaptTo(IndexCardModel.class);
+    }
+
+    @Benchmark
+    public MarketDataModel marketData() {
+        return context.newRequest("/content/bench/market").adaptTo(MarketDataModel.class);
+    }
+
+    @Benchmark
+    public NewsListModel newsList() {
+        return context.newRequest("/content/bench/news").adaptTo(NewsListModel.class);
+    }
+
+    @Benchmark
+    public ChartComponentModel chart() {
+        return context.newRequest("/content/bench/chart").adaptTo(ChartComponentModel.class);
+    }
+}
@@ -0,0 +1,65 @@
+package com.test.aem.benchmarks;
+
+import com.test.aem.core.beans.MarketSummary;
+import com.test.aem.core.services.cache.SortedSummaryView;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MarketDataModel sorting: picking a view of the precomputed SortedSummaryView
+ * against calling sortMarketData per request. Both use the
+ * {@link MarketFixtures#sort} stand-in for the service's sort.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MarketSummarySortBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int size;
+
+    @Param({"name", "value", "change", "volume"})
+    public String sortBy;
+
+    private List<MarketSummary> summaries;
+    private SortedSummaryView view;
+
+    @Setup
+    public void setUp() {
+        summaries = MarketFixtures.summaries(size, 42);
+        view = SortedSummaryView.of(summaries, MarketFixtures::sort);
+    }
+
+    /** Per-render cost once the view for the current data refresh exists. */
+    @Benchmark
+    public List<MarketSummary> precomputedView() {
+        return view.sortedBy(sortBy);
+    }
+
+    /** Paid once per data refresh. */
+    @Benchmark
+    public SortedSummaryView buildView() {
+        return SortedSummaryView.of(summaries, MarketFixtures::sort);
+    }
+
+    /** What every render paid before the view existed. */
+    @Benchmark
+    public List<MarketSummary> sortPerRequest() {
+        return MarketFixtures.sort(summaries, sortBy);
+    }
+}
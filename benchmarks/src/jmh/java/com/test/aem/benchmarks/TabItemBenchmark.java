@@ -0,0 +1,101 @@
+package com.test.aem.benchmarks;
+
+import com.myproject.core.models.tabs.ContentFragmentCacheImpl;
+import com.myproject.core.models.tabs.TabComponentImpl;
+import com.myproject.core.models.tabs.TabItemImpl;
+import com.test.aem.core.services.impl.DependencyRegistryImpl;
+import com.test.aem.core.services.impl.RenderProfilerImpl;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TabItemImpl.getCfDataList with 1-50 fragments per tab, with the shared
+ * ContentFragmentCache warm and after an invalidation of /content/dam.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TabItemBenchmark {
+
+    @Param({"1", "10", "50"})
+    public int fragments;
+
+    @Param({"warm", "cold"})
+    public String cache;
+
+    @Param({"all", "projected"})
+    public String projection;
+
+    private BenchContext context;
+    private ContentFragmentCacheImpl contentFragmentCache;
+    private Resource tab;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new BenchContext().start();
+        context.registerInjectActivateService(new RenderProfilerImpl());
+        context.registerInjectActivateService(new DependencyRegistryImpl());
+        contentFragmentCache = context.registerInjectActivateService(new ContentFragmentCacheImpl());
+        context.addModelsForClasses(TabComponentImpl.class, TabItemImpl.class);
+
+        String[] paths = new String[fragments];
+        for (int i = 0; i < fragments; i++) {
+            paths[i] = "/content/dam/bench/cf" + i;
+            Map<String, Object> elements = new LinkedHashMap<>();
+            elements.put("title", "Fragment " + i);
+            elements.put("summary", "Short summary for fragment " + i);
+            elements.put("body", "<p>" + String.join(" ", Collections.nCopies(200, "lorem")) + "</p>");
+            elements.put("disclaimer", String.join(" ", Collections.nCopies(100, "ipsum")));
+            context.create().contentFragmentStructured(paths[i], elements);
+        }
+
+        Map<String, Object> tabProperties = new LinkedHashMap<>();
+        tabProperties.put("tabTitle", "Tab");
+        tabProperties.put("cfPaths", paths);
+        if ("projected".equals(projection)) {
+            tabProperties.put("elementNames", new String[]{"title", "summary"});
+        }
+        context.create().resource("/content/bench/tabs", "sling:resourceType", "my-app/components/customtabs");
+        tab = context.create().resource("/content/bench/tabs/tabs/item0", tabProperties);
+    }
+
+    @Setup(Level.Invocation)
+    public void invalidate() {
+        if ("cold".equals(cache)) {
+            contentFragmentCache.onChange(Collections.singletonList(
+                    new ResourceChange(ResourceChange.ChangeType.CHANGED, "/content/dam/bench", false)));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.stop();
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> cfDataList() {
+        return tab.adaptTo(TabItemImpl.class).getCfDataList();
+    }
+}
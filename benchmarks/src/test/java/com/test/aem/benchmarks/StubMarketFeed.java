@@ -0,0 +1,68 @@
+package com.test.aem.benchmarks;
+
+import com.test.aem.core.services.MarketDataService;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * MarketDataService that answers from a delegate (a Mockito mock, or
+ * {@code MarketFixtures.marketDataService()} in benchmarks) after an injectable delay, and
+ * fails a configurable share of calls. Settings can change while a benchmark
+ * or test runs, e.g. to take the feed down and bring it back. Lives with the
+ * tests so the client tests and the JMH source set share it.
+ */
+public final class StubMarketFeed {
+
+    private volatile long latencyMillis;
+    private volatile double failureRate;
+    private volatile boolean hang;
+    private final AtomicInteger calls = new AtomicInteger();
+
+    public StubMarketFeed latency(long millis) {
+        this.latencyMillis = millis;
+        return this;
+    }
+
+    public StubMarketFeed failureRate(double rate) {
+        this.failureRate = rate;
+        return this;
+    }
+
+    /** Calls block until interrupted, like a feed that accepts connections but never answers. */
+    public StubMarketFeed hang(boolean hang) {
+        this.hang = hang;
+        return this;
+    }
+
+    /** Calls that reached the feed, counted before any delay or failure. */
+    public int calls() {
+        return calls.get();
+    }
+
+    public MarketDataService wrap(MarketDataService delegate) {
+        return (MarketDataService) Proxy.newProxyInstance(MarketDataService.class.getClassLoader(),
+                new Class<?>[]{MarketDataService.class}, (proxy, method, args) -> {
+                    if (method.getDeclaringClass() == Object.class) {
+                        return method.invoke(delegate, args);
+                    }
+                    calls.incrementAndGet();
+                    if (hang) {
+                        Thread.sleep(Long.MAX_VALUE);
+                    }
+                    if (latencyMillis > 0) {
+                        Thread.sleep(latencyMillis);
+                    }
+                    if (failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+                        throw new IllegalStateException("Stub feed failure in " + method.getName());
+                    }
+                    try {
+                        return method.invoke(delegate, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+}
@@ -0,0 +1,195 @@
+package com.test.aem.core.services.impl;
+
+import com.test.aem.benchmarks.StubMarketFeed;
+import com.test.aem.core.beans.IndexData;
+import com.test.aem.core.services.MarketDataService;
+import com.test.aem.core.services.resilience.CallFailedException;
+import org.apache.sling.testing.mock.osgi.junit5.OsgiContext;
+import org.apache.sling.testing.mock.osgi.junit5.OsgiContextExtension;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Circuit breaker, bulkhead and deadline transitions of MarketDataClientImpl
+ * against {@link StubMarketFeed}. Deadlines and the open duration are short so
+ * every transition happens within a few hundred milliseconds.
+ */
+@ExtendWith(OsgiContextExtension.class)
+class MarketDataClientImplTest {
+
+    private static final String CODE = "HSI";
+    private static final long CALL_TIMEOUT = 300;
+    private static final long OPEN_MILLIS = 200;
+    private static final int THRESHOLD = 3;
+    private static final int MAX_CONCURRENT = 2;
+
+    private final OsgiContext context = new OsgiContext();
+    private final StubMarketFeed feed = new StubMarketFeed();
+    private final IndexData data = new IndexData(CODE, "Hang Seng Index");
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+
+    private MarketDataClientImpl client;
+
+    @BeforeEach
+    void setUp() {
+        MarketDataService delegate = mock(MarketDataService.class);
+        when(delegate.getCurrentIndexData(CODE)).thenReturn(data);
+        context.registerService(MarketDataService.class, feed.wrap(delegate));
+        client = context.registerInjectActivateService(new MarketDataClientImpl(),
+                "callTimeoutMillis", CALL_TIMEOUT, "maxConcurrentCalls", MAX_CONCURRENT,
+                "failureThreshold", THRESHOLD, "openMillis", OPEN_MILLIS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        feed.hang(false);
+        callers.shutdownNow();
+    }
+
+    @Test
+    void opensAfterThresholdFailuresAndRejectsWithoutCallingTheFeed() {
+        feed.failureRate(1);
+        for (int i = 0; i < THRESHOLD; i++) {
+            assertEquals(CallFailedException.Reason.FAILED, reason(this::call));
+        }
+        assertEquals("OPEN", client.getStats().getState());
+
+        CallFailedException rejected = assertThrows(CallFailedException.class, this::call);
+        assertEquals(CallFailedException.Reason.CIRCUIT_OPEN, rejected.getReason());
+        assertTrue(rejected.isRejected());
+        assertEquals(THRESHOLD, feed.calls());
+        assertEquals(1, client.getStats().getRejectedOpen());
+    }
+
+    @Test
+    void staysClosedWhenASuccessBreaksTheFailureRun() {
+        feed.failureRate(1);
+        for (int i = 0; i < THRESHOLD - 1; i++) {
+            reason(this::call);
+        }
+        feed.failureRate(0);
+        assertSame(data, call());
+        feed.failureRate(1);
+        for (int i = 0; i < THRESHOLD - 1; i++) {
+            reason(this::call);
+        }
+        assertEquals("CLOSED", client.getStats().getState());
+    }
+
+    @Test
+    void letsASingleProbeThroughAndClosesWhenItSucceeds() throws Exception {
+        open();
+        waitOpenDuration();
+        feed.failureRate(0).latency(CALL_TIMEOUT / 2);
+
+        CompletableFuture<IndexData> probe = CompletableFuture.supplyAsync(this::call, callers);
+        await(() -> feed.calls() == THRESHOLD + 1);
+        assertEquals("HALF_OPEN", client.getStats().getState());
+        // Only the probe reaches the feed while it is in flight
+        assertEquals(CallFailedException.Reason.CIRCUIT_OPEN, reason(this::call));
+
+        assertSame(data, probe.get(CALL_TIMEOUT * 2, TimeUnit.MILLISECONDS));
+        assertEquals("CLOSED", client.getStats().getState());
+        assertEquals(THRESHOLD + 1, feed.calls());
+        assertEquals(1L, client.getStats().getTransitions().get("HALF_OPEN->CLOSED"));
+    }
+
+    @Test
+    void reopensWhenTheProbeFails() {
+        open();
+        waitOpenDuration();
+
+        assertEquals(CallFailedException.Reason.FAILED, reason(this::call));
+        assertEquals("OPEN", client.getStats().getState());
+        assertEquals(CallFailedException.Reason.CIRCUIT_OPEN, reason(this::call));
+        assertEquals(THRESHOLD + 1, feed.calls());
+        assertEquals(1L, client.getStats().getTransitions().get("HALF_OPEN->OPEN"));
+    }
+
+    @Test
+    void rejectsAtOnceWhenTheBulkheadIsFull() {
+        feed.hang(true);
+        for (int i = 0; i < MAX_CONCURRENT; i++) {
+            CompletableFuture.runAsync(() -> reason(this::call), callers);
+        }
+        await(() -> feed.calls() == MAX_CONCURRENT);
+
+        long start = System.nanoTime();
+        assertEquals(CallFailedException.Reason.BULKHEAD_FULL, reason(this::call));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < CALL_TIMEOUT / 2);
+        assertEquals(MAX_CONCURRENT, feed.calls());
+        assertEquals(1, client.getStats().getRejectedFull());
+    }
+
+    @Test
+    void timesOutAtTheDeadlineAndFreesThePermit() {
+        feed.hang(true);
+
+        long start = System.nanoTime();
+        assertEquals(CallFailedException.Reason.TIMEOUT, reason(this::call));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsed >= CALL_TIMEOUT && elapsed < CALL_TIMEOUT * 3, "returned after " + elapsed + " ms");
+        assertEquals(1, client.getStats().getTimeouts());
+
+        // The cancelled call is interrupted, so its permit comes back and later calls get through
+        await(() -> client.getStats().getActiveCalls() == 0);
+        feed.hang(false);
+        assertSame(data, call());
+    }
+
+    private IndexData call() {
+        return client.getCurrentIndexData(CODE);
+    }
+
+    private void open() {
+        feed.failureRate(1);
+        for (int i = 0; i < THRESHOLD; i++) {
+            reason(this::call);
+        }
+        assertEquals("OPEN", client.getStats().getState());
+    }
+
+    private static void waitOpenDuration() {
+        try {
+            Thread.sleep(OPEN_MILLIS + 50);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(e);
+        }
+    }
+
+    private static CallFailedException.Reason reason(Runnable call) {
+        return assertThrows(CallFailedException.class, call::run).getReason();
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Condition not met within 5 s");
+            }
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(e);
+            }
+        }
+    }
+}
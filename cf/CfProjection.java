@@ -0,0 +1,63 @@
+package com.myproject.core.models.tabs;
+
+import org.apache.sling.api.resource.ValueMap;
+
+import java.util.*;
+
+// CF 元素投影：只读取、只输出前端真正用到的字段
+// 配置来源：Tab 节点优先，其次是 customtabs 组件节点
+public final class CfProjection {
+
+    public static final CfProjection ALL = new CfProjection(null, 0, null);
+
+    private final Set<String> elementNames; // null 表示全部元素
+    private final int maxTextLength;        // 0 表示不截断
+    private final String variationName;     // null 表示 master
+
+    private CfProjection(Set<String> elementNames, int maxTextLength, String variationName) {
+        this.elementNames = elementNames;
+        this.maxTextLength = maxTextLength;
+        this.variationName = variationName;
+    }
+
+    public static CfProjection from(ValueMap tabProperties, ValueMap componentProperties) {
+        String[] names = pick(tabProperties, componentProperties, "elementNames", String[].class);
+        Integer maxLength = pick(tabProperties, componentProperties, "maxTextLength", Integer.class);
+        String variation = pick(tabProperties, componentProperties, "variationName", String.class);
+
+        Set<String> elementNames = null;
+        if (names != null && names.length > 0) {
+            elementNames = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(names)));
+        }
+        if (elementNames == null && (maxLength == null || maxLength <= 0) && (variation == null || variation.isEmpty())) {
+            return ALL;
+        }
+        return new CfProjection(elementNames, maxLength != null ? Math.max(0, maxLength) : 0,
+                variation != null && !variation.isEmpty() ? variation : null);
+    }
+
+    public Set<String> getElementNames() { return elementNames; }
+    public int getMaxTextLength() { return maxTextLength; }
+    public String getVariationName() { return variationName; }
+
+    // 只截断纯文本；截断富文本会破坏 HTML 结构
+    public Object limit(Object content, String contentType) {
+        if (maxTextLength > 0 && content instanceof String && "text/plain".equals(contentType)
+                && ((String) content).length() > maxTextLength) {
+            return ((String) content).substring(0, maxTextLength);
+        }
+        return content;
+    }
+
+    // 作为缓存 key 的一部分，不同投影的结果分开缓存
+    public String key() {
+        if (this == ALL) return "*";
+        return (elementNames != null ? String.join(",", elementNames) : "*") + ";" + maxTextLength + ";"
+                + (variationName != null ? variationName : "");
+    }
+
+    private static <T> T pick(ValueMap primary, ValueMap fallback, String name, Class<T> type) {
+        T value = primary != null ? primary.get(name, type) : null;
+        return value != null ? value : (fallback != null ? fallback.get(name, type) : null);
+    }
+}
@@ -0,0 +1,300 @@
+package com.myproject.core.models.tabs;
+
+import com.adobe.cq.dam.cfm.ContentElement;
+import com.adobe.cq.dam.cfm.ContentFragment;
+import com.adobe.cq.dam.cfm.ContentVariation;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+// 1. CF 数据缓存接口：供 TabItemImpl 等组件复用
+public interface ContentFragmentCache {
+
+    // 按路径批量获取 CF 数据，返回格式与 TabItemImpl.getCfDataList 一致
+    default List<Map<String, Object>> getCfDataList(ResourceResolver resourceResolver, String[] cfPaths) {
+        return getCfDataList(resourceResolver, cfPaths, CfProjection.ALL);
+    }
+
+    // 按投影只抽取需要的元素
+    List<Map<String, Object>> getCfDataList(ResourceResolver resourceResolver, String[] cfPaths, CfProjection projection);
+
+    // 每个 CF（按路径 + 投影）最近一次抽取的耗时和输出大小
+    Map<String, FragmentStats> getStats();
+
+    final class FragmentStats {
+        private final double extractMillis;
+        private final int payloadBytes;
+        private final int elementCount;
+
+        FragmentStats(double extractMillis, int payloadBytes, int elementCount) {
+            this.extractMillis = extractMillis;
+            this.payloadBytes = payloadBytes;
+            this.elementCount = elementCount;
+        }
+
+        public double getExtractMillis() { return extractMillis; }
+        public int getPayloadBytes() { return payloadBytes; }
+        public int getElementCount() { return elementCount; }
+    }
+}
+
+// 2. 实现：按 "路径 + 最后修改时间" 缓存抽取好的 Elements，未命中的并行抽取
+@Component(
+    service = {ContentFragmentCache.class, ResourceChangeListener.class},
+    immediate = true,
+    property = {
+        ResourceChangeListener.PATHS + "=/content/dam",
+        ResourceChangeListener.CHANGES + "=CHANGED",
+        ResourceChangeListener.CHANGES + "=REMOVED"
+    }
+)
+public class ContentFragmentCacheImpl implements ContentFragmentCache, ResourceChangeListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ContentFragmentCacheImpl.class);
+
+    // 需要在 Service User Mapping 中配置该 subservice，只需 /content/dam 的读权限
+    private static final String SUBSERVICE = "cf-reader";
+    private static final int MAX_ENTRIES = 5000;
+    private static final long PARALLEL_TIMEOUT_MS = 5000;
+
+    // 占位：路径存在，但不是有效的 CF
+    private static final Map<String, Object> NOT_A_FRAGMENT = Collections.emptyMap();
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Reference
+    private ResourceResolverFactory resolverFactory;
+
+    // key：CF 路径 + "|" + 投影；满了只淘汰最久没用过的一条，热点 CF 不会因为一次清空全部重新抽取
+    // 访问顺序的 LinkedHashMap 在 get 时也会改结构，所以读写都要加锁，遍历时手动锁 map 本身
+    private final Map<String, Entry> entries = lru(MAX_ENTRIES, true);
+    private final Map<String, FragmentStats> stats = lru(MAX_ENTRIES, false);
+    private ExecutorService pool;
+
+    @Activate
+    protected void activate() {
+        pool = Executors.newFixedThreadPool(8, runnable -> {
+            Thread thread = new Thread(runnable, "cf-extract");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        pool.shutdownNow();
+        entries.clear();
+        stats.clear();
+    }
+
+    @Override
+    public List<Map<String, Object>> getCfDataList(ResourceResolver resourceResolver, String[] cfPaths, CfProjection projection) {
+        List<Map<String, Object>> cfList = new ArrayList<>();
+        if (cfPaths == null || cfPaths.length == 0) return cfList;
+
+        // 第一轮：用当前请求的 resolver 检查资源（同时保证访问权限），命中缓存的直接使用
+        Map<String, Map<String, Object>> elementsByPath = new HashMap<>();
+        Map<String, Long> misses = new LinkedHashMap<>();
+        for (String path : cfPaths) {
+            Resource cfResource = resourceResolver.getResource(path);
+            if (cfResource == null) continue; // 资源已被删除
+            long lastModified = lastModified(cfResource);
+            Entry entry = entries.get(cacheKey(path, projection));
+            if (entry != null && entry.lastModified == lastModified) {
+                elementsByPath.put(path, entry.elements);
+            } else {
+                misses.put(path, lastModified);
+            }
+        }
+
+        // 第二轮：未命中的并行抽取，整个 Tab 的耗时约等于最慢的一个 CF
+        elementsByPath.putAll(extract(resourceResolver, misses, projection));
+
+        for (String path : cfPaths) {
+            Map<String, Object> cfWrapper = new HashMap<>();
+            cfWrapper.put("path", path); // 保留原始路径，方便前端做提示
+            Map<String, Object> elements = elementsByPath.get(path);
+            if (elements != null && elements != NOT_A_FRAGMENT) {
+                cfWrapper.put("elements", elements);
+                cfWrapper.put("isValid", true);
+            } else {
+                cfWrapper.put("isValid", false);
+            }
+            cfList.add(cfWrapper);
+        }
+        return cfList;
+    }
+
+    // CF 被修改或删除时清掉对应缓存（变更通常发生在 jcr:content/data/... 子节点上）
+    @Override
+    public void onChange(List<ResourceChange> changes) {
+        for (ResourceChange change : changes) {
+            String changed = change.getPath();
+            synchronized (entries) {
+                entries.values().removeIf(e -> changed.equals(e.path) || changed.startsWith(e.path + "/"));
+            }
+        }
+    }
+
+    // 返回快照，调用方遍历时不用持锁
+    @Override
+    public Map<String, FragmentStats> getStats() {
+        synchronized (stats) {
+            return Collections.unmodifiableMap(new LinkedHashMap<>(stats));
+        }
+    }
+
+    private Map<String, Map<String, Object>> extract(ResourceResolver resourceResolver, Map<String, Long> misses,
+                                                     CfProjection projection) {
+        Map<String, Map<String, Object>> result = new HashMap<>();
+        if (misses.isEmpty()) return result;
+
+        // 只有一个未命中时没必要切线程
+        if (misses.size() == 1) {
+            Map.Entry<String, Long> miss = misses.entrySet().iterator().next();
+            result.put(miss.getKey(), extractAndCache(resourceResolver, miss.getKey(), miss.getValue(), projection));
+            return result;
+        }
+
+        // ResourceResolver 不是线程安全的，每个任务用自己的 service resolver
+        Map<String, Future<Map<String, Object>>> futures = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> miss : misses.entrySet()) {
+            futures.put(miss.getKey(), pool.submit(() -> {
+                try (ResourceResolver serviceResolver = resolverFactory.getServiceResourceResolver(
+                        Collections.singletonMap(ResourceResolverFactory.SUBSERVICE, SUBSERVICE))) {
+                    return extractAndCache(serviceResolver, miss.getKey(), miss.getValue(), projection);
+                }
+            }));
+        }
+
+        long deadline = System.currentTimeMillis() + PARALLEL_TIMEOUT_MS;
+        for (Map.Entry<String, Future<Map<String, Object>>> future : futures.entrySet()) {
+            String path = future.getKey();
+            try {
+                long remaining = Math.max(0, deadline - System.currentTimeMillis());
+                Map<String, Object> elements = future.getValue().get(remaining, TimeUnit.MILLISECONDS);
+                // service user 读不到时，以当前请求的 resolver 为准
+                result.put(path, elements != null ? elements : extractAndCache(resourceResolver, path, misses.get(path), projection));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.getValue().cancel(true);
+                result.put(path, extractAndCache(resourceResolver, path, misses.get(path), projection));
+            } catch (ExecutionException | TimeoutException e) {
+                // 【容错机制】service user 未配置或超时，退回到当前请求的 resolver 顺序抽取
+                LOG.debug("Parallel extraction failed for {}, falling back to request resolver", path, e);
+                future.getValue().cancel(true);
+                result.put(path, extractAndCache(resourceResolver, path, misses.get(path), projection));
+            }
+        }
+        return result;
+    }
+
+    private Map<String, Object> extractAndCache(ResourceResolver resolver, String path, long lastModified,
+                                                CfProjection projection) {
+        long start = System.nanoTime();
+        Map<String, Object> elements = extractElements(resolver.getResource(path), projection);
+        if (elements != null) {
+            String key = cacheKey(path, projection);
+            entries.put(key, new Entry(path, lastModified, elements));
+            recordStats(key, start, elements);
+        }
+        return elements;
+    }
+
+    // 抽取逻辑与原 TabItemImpl 相同，但只读取投影允许的元素；结果不可变，可在请求之间共享
+    private static Map<String, Object> extractElements(Resource cfResource, CfProjection projection) {
+        if (cfResource == null) return null;
+        ContentFragment fragment = cfResource.adaptTo(ContentFragment.class);
+        if (fragment == null) return NOT_A_FRAGMENT;
+
+        Map<String, Object> elementsMap = new HashMap<>();
+        if (projection.getElementNames() != null) {
+            // 白名单之外的元素根本不会从仓库读取
+            for (String name : projection.getElementNames()) {
+                if (fragment.hasElement(name)) {
+                    putElement(elementsMap, fragment.getElement(name), projection);
+                }
+            }
+        } else {
+            Iterator<ContentElement> elements = fragment.getElements();
+            while (elements.hasNext()) {
+                putElement(elementsMap, elements.next(), projection);
+            }
+        }
+        return Collections.unmodifiableMap(elementsMap);
+    }
+
+    private static void putElement(Map<String, Object> elementsMap, ContentElement element, CfProjection projection) {
+        Object content = element.getContent(); // 获取字段值
+        String contentType = element.getValue().getContentType();
+        if (projection.getVariationName() != null) {
+            ContentVariation variation = element.getVariation(projection.getVariationName());
+            if (variation != null) { // 没有该变体时退回 master
+                content = variation.getContent();
+                contentType = variation.getValue().getContentType();
+            }
+        }
+        Map<String, Object> elementProps = new HashMap<>();
+        elementProps.put("value", projection.limit(content, contentType));
+        elementProps.put("dataType", contentType);
+        elementsMap.put(element.getName(), Collections.unmodifiableMap(elementProps));
+    }
+
+    // 只在未命中时统计，命中缓存不产生额外开销
+    private void recordStats(String key, long startNanos, Map<String, Object> elements) {
+        double millis = (System.nanoTime() - startNanos) / 1_000_000.0;
+        int bytes;
+        try {
+            bytes = MAPPER.writeValueAsBytes(elements).length;
+        } catch (JsonProcessingException e) {
+            bytes = -1;
+        }
+        stats.put(key, new FragmentStats(millis, bytes, elements.size()));
+        LOG.debug("Extracted CF {} in {} ms, {} elements, {} bytes", key, millis, elements.size(), bytes);
+    }
+
+    // accessOrder 为 true 时按最近访问淘汰，否则按最近写入淘汰
+    private static <V> Map<String, V> lru(int maxEntries, boolean accessOrder) {
+        return Collections.synchronizedMap(new LinkedHashMap<String, V>(16, 0.75f, accessOrder) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    private static String cacheKey(String path, CfProjection projection) {
+        return path + "|" + projection.key();
+    }
+
+    private static long lastModified(Resource cfResource) {
+        Resource content = cfResource.getChild("jcr:content");
+        Calendar modified = content != null ? content.getValueMap().get("jcr:lastModified", Calendar.class) : null;
+        return modified != null ? modified.getTimeInMillis() : 0L;
+    }
+
+    private static final class Entry {
+        final String path;
+        final long lastModified;
+        final Map<String, Object> elements;
+
+        Entry(String path, long lastModified, Map<String, Object> elements) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.elements = elements;
+        }
+    }
+}
@@ -1,10 +1,21 @@
-import React, { useState } from 'react';
+import React, { useEffect, useState } from 'react';
 import { MapTo } from '@adobe/aem-react-editable-components';
 import { AuthoringUtils } from '@adobe/aem-spa-page-model-manager'; // 引入 AEM 作者模式工具
 import ContentFragmentComponent from './ContentFragmentComponent';
 
 const TabComponent = ({ tabs }) => {
   const [activeTab, setActiveTab] = useState(0);
+  // 延迟加载的 Tab 数据，按序号缓存，切换回来不重复请求
+  const [loadedTabs, setLoadedTabs] = useState({});
+
+  useEffect(() => {
+    const tab = tabs && tabs[activeTab];
+    if (!tab || !tab.cfDataUrl || loadedTabs[activeTab]) return;
+    fetch(tab.cfDataUrl)
+      .then(res => res.json())
+      .then(data => setLoadedTabs(prev => ({ ...prev, [activeTab]: data.cfDataList || [] })))
+      .catch(() => setLoadedTabs(prev => ({ ...prev, [activeTab]: [] })));
+  }, [tabs, activeTab, loadedTabs]);
 
   // 如果没有配置任何 tabs，在编辑模式下给个占位符，否则返回 null
   if (!tabs || tabs.length === 0) {
@@ -13,8 +24,11 @@ const TabComponent = ({ tabs }) => {
     ) : null;
   }
 
-  // 安全获取当前激活的 Tab
-  const currentTab = tabs[activeTab];
+  // 安全获取当前激活的 Tab（延迟加载的 Tab 用请求回来的数据）
+  const currentTab = tabs[activeTab] && tabs[activeTab].cfDataUrl
+    ? { ...tabs[activeTab], cfDataList: loadedTabs[activeTab] }
+    : tabs[activeTab];
+  const isLoading = currentTab && currentTab.cfDataUrl && !currentTab.cfDataList;
 
   return (
     <div className="custom-tab-wrapper">
@@ -33,6 +47,8 @@ const TabComponent = ({ tabs }) => {
 
       {/* 2. Tab 面板内容 */}
       <div className="tab-panels">
+        {isLoading && <div className="tab-loading">Loading...</div>}
+
         {currentTab && currentTab.cfDataList && currentTab.cfDataList.map((cfData, index) => {
           
           // 【容错机制 2】如果 CF 无效（被删除或配置错误）
@@ -58,7 +74,7 @@ const TabComponent = ({ tabs }) => {
         })}
 
         {/* 边缘情况：如果该 Tab 下没有配置任何 CF 路径 */}
-        {(!currentTab.cfDataList || currentTab.cfDataList.length === 0) && AuthoringUtils.isInEditor() && (
+        {!isLoading && (!currentTab.cfDataList || currentTab.cfDataList.length === 0) && AuthoringUtils.isInEditor() && (
           <div className="cq-placeholder">当前 Tab 暂未配置任何 Content Fragment</div>
         )}
       </div>
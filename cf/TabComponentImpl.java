@@ -1,12 +1,19 @@
-import com.adobe.cq.dam.cfm.ContentFragment;
-import com.adobe.cq.dam.cfm.ContentElement;
+package com.myproject.core.models.tabs;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.test.aem.core.services.DependencyRegistry;
+import com.test.aem.core.services.RenderProfiler;
+import com.test.aem.core.services.invalidation.Dependency;
+import com.test.aem.core.services.profiling.ModelTimer;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.models.annotations.Model;
 import org.apache.sling.models.annotations.injectorspecific.ChildResource;
+import org.apache.sling.models.annotations.injectorspecific.OSGiService;
 import org.apache.sling.models.annotations.injectorspecific.SlingObject;
 import org.apache.sling.models.annotations.injectorspecific.ValueMapValue;
 
+import javax.annotation.PostConstruct;
 import java.util.*;
 
 // 1. 父组件 Model
@@ -16,6 +23,23 @@ public class TabComponentImpl {
     @ChildResource(name = "tabs")
     private List<TabItemImpl> tabs; // 获取所有 Tab 节点
 
+    @ValueMapValue
+    private boolean lazyLoad; // 对话框勾选后，只有第一个 Tab 随页面 JSON 输出 CF 数据
+
+    @SlingObject
+    private Resource resource;
+
+    @PostConstruct
+    protected void init() {
+        if (!lazyLoad || tabs == null) return;
+        // 隐藏的 Tab 只输出标题和 CF 路径，数据在访客点开时通过 TabContentServlet 单独请求
+        for (int i = 1; i < tabs.size(); i++) {
+            tabs.get(i).defer(resource.getPath() + "." + TabContentServlet.SELECTOR + "." + i + ".json");
+        }
+    }
+
+    public boolean isLazyLoad() { return lazyLoad; }
+
     public List<TabItemImpl> getTabs() {
         return tabs != null ? tabs : Collections.emptyList();
     }
@@ -23,6 +47,7 @@ public class TabComponentImpl {
 
 // 2. 每一个 Tab 的 Model
 @Model(adaptables = Resource.class)
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class TabItemImpl {
 
     @ValueMapValue
@@ -34,46 +59,63 @@ public class TabItemImpl {
     @SlingObject
     private ResourceResolver resourceResolver;
 
+    @OSGiService
+    private ContentFragmentCache contentFragmentCache;
+
+    @OSGiService
+    private RenderProfiler renderProfiler;
+
+    @OSGiService
+    private DependencyRegistry dependencyRegistry;
+
+    @SlingObject
+    private Resource resource;
+
+    private List<Map<String, Object>> cfDataList;
+
+    private CfProjection projection;
+
+    private String cfDataUrl; // 非空表示该 Tab 延迟加载
+
     public String getTabTitle() { return tabTitle; }
 
+    // 延迟加载的 Tab 才输出路径和数据地址，前端据此按需请求
+    public String[] getCfPaths() { return cfDataUrl != null ? cfPaths : null; }
+
+    public String getCfDataUrl() { return cfDataUrl; }
+
+    void defer(String url) { this.cfDataUrl = url; }
+
+    // Tab 节点 -> tabs 节点 -> customtabs 组件节点，Tab 上的配置优先
+    @PostConstruct
+    protected void init() {
+        Resource tabs = resource.getParent();
+        Resource component = tabs != null ? tabs.getParent() : null;
+        projection = CfProjection.from(resource.getValueMap(), component != null ? component.getValueMap() : null);
+    }
+
     // 核心逻辑：获取当前 Tab 下所有有效的 CF 数据
+    // 同一个 Model 实例只抽取一次；跨请求的缓存和并行加载由 ContentFragmentCache 负责
     public List<Map<String, Object>> getCfDataList() {
-        List<Map<String, Object>> cfList = new ArrayList<>();
-
-        if (cfPaths == null || cfPaths.length == 0) return cfList;
-
-        for (String path : cfPaths) {
-            Map<String, Object> cfWrapper = new HashMap<>();
-            cfWrapper.put("path", path); // 保留原始路径，方便前端做提示
-
-            // 【容错机制 1】尝试获取资源，如果作者删除了 CF，这里 res 就是 null
-            Resource cfResource = resourceResolver.getResource(path);
-            
-            if (cfResource != null) {
-                // 将资源适配为 AEM 的 ContentFragment API
-                ContentFragment fragment = cfResource.adaptTo(ContentFragment.class);
-                if (fragment != null) {
-                    // 提取 Elements 数据，按前端需要的格式组装
-                    Map<String, Object> elementsMap = new HashMap<>();
-                    Iterator<ContentElement> elements = fragment.getElements();
-                    while (elements.hasNext()) {
-                        ContentElement element = elements.next();
-                        Map<String, Object> elementProps = new HashMap<>();
-                        elementProps.put("value", element.getContent()); // 获取字段值
-                        elementProps.put("dataType", element.getValue().getContentType());
-                        elementsMap.put(element.getName(), elementProps);
-                    }
-                    cfWrapper.put("elements", elementsMap);
-                    cfWrapper.put("isValid", true);
-                } else {
-                    cfWrapper.put("isValid", false); // 路径存在，但不是有效的 CF
+        if (cfDataUrl != null) return null; // 首屏不读取隐藏 Tab 的 CF
+        return loadCfDataList();
+    }
+
+    // 供 TabContentServlet 使用：无论是否延迟，都返回完整数据
+    List<Map<String, Object>> loadCfDataList() {
+        if (cfDataList == null) {
+            // 记录页面依赖的 CF，CF 修改后只刷新这些页面的 Dispatcher 缓存
+            if (cfPaths != null) {
+                for (String path : cfPaths) {
+                    dependencyRegistry.record(resource, Dependency.fragment(path));
                 }
-            } else {
-                cfWrapper.put("isValid", false); // 资源已被删除
             }
-
-            cfList.add(cfWrapper);
+            // 抽取发生在 getter 里，所以计时也放在这里；items 记录的是 CF 路径数，命中缓存时不读仓库
+            try (ModelTimer timer = renderProfiler.start(TabItemImpl.class, resource)) {
+                cfDataList = timer.call(() -> contentFragmentCache.getCfDataList(resourceResolver, cfPaths, projection));
+                timer.items(cfPaths != null ? cfPaths.length : 0);
+            }
         }
-        return cfList;
+        return cfDataList;
     }
 }
\ No newline at end of file
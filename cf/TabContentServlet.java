@@ -0,0 +1,69 @@
+package com.myproject.core.models.tabs;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.osgi.service.component.annotations.Component;
+
+import javax.servlet.Servlet;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.*;
+
+// 延迟加载 Tab 的数据接口：GET <组件路径>.tab.<序号>.json
+// 只用 selector + 扩展名、不带查询参数，Dispatcher 可以按 URL 分别缓存每个 Tab
+@Component(
+    service = Servlet.class,
+    property = {
+        "sling.servlet.resourceTypes=my-app/components/customtabs",
+        "sling.servlet.selectors=" + TabContentServlet.SELECTOR,
+        "sling.servlet.extensions=json",
+        "sling.servlet.methods=GET"
+    }
+)
+public class TabContentServlet extends SlingSafeMethodsServlet {
+
+    static final String SELECTOR = "tab";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Override
+    protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException {
+        String[] selectors = request.getRequestPathInfo().getSelectors();
+        int index;
+        try {
+            index = Integer.parseInt(selectors.length > 1 ? selectors[1] : "");
+        } catch (NumberFormatException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+
+        Resource tabsResource = request.getResource().getChild("tabs");
+        Resource tabResource = null;
+        if (tabsResource != null && index >= 0) {
+            Iterator<Resource> children = tabsResource.listChildren();
+            for (int i = 0; children.hasNext(); i++) {
+                Resource child = children.next();
+                if (i == index) {
+                    tabResource = child;
+                    break;
+                }
+            }
+        }
+        TabItemImpl tab = tabResource != null ? tabResource.adaptTo(TabItemImpl.class) : null;
+        if (tab == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("tabTitle", tab.getTabTitle());
+        payload.put("cfDataList", tab.loadCfDataList());
+
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        MAPPER.writeValue(response.getWriter(), payload);
+    }
+}
@@ -2,10 +2,17 @@ package com.myproject.core.models;
 
 import com.adobe.cq.export.json.ComponentExporter;
 import com.adobe.cq.export.json.ExporterConstants;
+import com.day.cq.wcm.api.WCMMode;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.myproject.core.tables.ParsedTable;
+import com.myproject.core.tables.TableModelCache;
 import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.resource.Resource;
 import org.apache.sling.models.annotations.Default;
 import org.apache.sling.models.annotations.Exporter;
 import org.apache.sling.models.annotations.Model;
+import org.apache.sling.models.annotations.injectorspecific.OSGiService;
+import org.apache.sling.models.annotations.injectorspecific.SlingObject;
 import org.apache.sling.models.annotations.injectorspecific.ValueMapValue;
 
 @Model(
@@ -14,6 +21,7 @@ import org.apache.sling.models.annotations.injectorspecific.ValueMapValue;
     resourceType = DynamicTable.RESOURCE_TYPE
 )
 @Exporter(name = ExporterConstants.SLING_MODEL_EXPORTER_NAME, extensions = ExporterConstants.SLING_MODEL_EXTENSION)
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class DynamicTable implements ComponentExporter {
 
     static final String RESOURCE_TYPE = "my-project/components/dynamic-table";
@@ -22,13 +30,27 @@ public class DynamicTable implements ComponentExporter {
     @Default(values = "")
     private String tableContent;
 
-    // Getter 暴露给前端 JSON
+    @SlingObject
+    private SlingHttpServletRequest request;
+
+    @SlingObject
+    private Resource resource;
+
+    @OSGiService
+    private TableModelCache tableModelCache;
+
+    // Getter 暴露给前端 JSON（只在编辑模式下输出，tiptap 编辑器需要原始 HTML）
     public String getTableContent() {
-        return tableContent;
+        return WCMMode.fromRequest(request) != WCMMode.DISABLED ? tableContent : null;
+    }
+
+    // 发布端直接按行列渲染，不再加载编辑器解析 HTML
+    public ParsedTable getTable() {
+        return tableModelCache.get(resource, "tableContent", TableModelCache.Format.HTML);
     }
 
     @Override
     public String getExportedType() {
         return RESOURCE_TYPE;
     }
-}
\ No newline at end of file
+}
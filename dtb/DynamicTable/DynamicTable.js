@@ -58,8 +58,35 @@ const MenuBar = ({ editor }) => {
   );
 };
 
-// 3. 主组件
-const DynamicTable = (props) => {
+// 3. 发布端：直接渲染服务端解析好的行列，不加载编辑器
+const renderCell = (cell, header, key) => {
+  const data = typeof cell === 'string' ? { v: cell } : cell;
+  const Tag = (data.header !== undefined ? data.header : header) ? 'th' : 'td';
+  return (
+    <Tag
+      key={key}
+      colSpan={data.colspan}
+      rowSpan={data.rowspan}
+      style={data.bg ? { backgroundColor: data.bg } : undefined}
+      dangerouslySetInnerHTML={{ __html: data.v }}
+    />
+  );
+};
+
+const StaticTable = ({ table }) => (
+  <div className="dynamic-table-wrapper">
+    <table>
+      <tbody>
+        {table.rows.map((row, r) => (
+          <tr key={r}>{row.map((cell, c) => renderCell(cell, r < table.headerRows, c))}</tr>
+        ))}
+      </tbody>
+    </table>
+  </div>
+);
+
+// 4. 编辑器组件
+const DynamicTableEditor = (props) => {
   const { cqPath, tableContent } = props;
 
   // 定义保存函数 (防抖 1秒)
@@ -121,15 +148,20 @@ const DynamicTable = (props) => {
   );
 };
 
-// 4. AEM Edit Config
+// 5. 只有编辑模式才会下发 tableContent
+const DynamicTable = (props) => (
+  props.tableContent || !props.table ? <DynamicTableEditor {...props} /> : <StaticTable table={props.table} />
+);
+
+// 6. AEM Edit Config
 const DynamicTableEditConfig = {
   emptyLabel: 'Dynamic Table Component',
   isEmpty: function(props) {
-    return !props.tableContent;
+    return !props.tableContent && (!props.table || props.table.rows.length === 0);
   }
 };
 
-// 5. 映射组件
+// 7. 映射组件
 MapTo('my-project/components/dynamic-table')(DynamicTable, DynamicTableEditConfig);
 
 export default DynamicTable;
\ No newline at end of file
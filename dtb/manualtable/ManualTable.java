@@ -2,19 +2,19 @@ package com.myproject.core.models;
 
 import com.adobe.cq.export.json.ComponentExporter;
 import com.adobe.cq.export.json.ExporterConstants;
+import com.myproject.core.services.StyleOptionRegistry;
+import com.myproject.core.servlets.TableRowsServlet;
+import com.test.aem.core.services.RenderProfiler;
+import com.test.aem.core.services.profiling.ModelTimer;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.resource.Resource;
-import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.models.annotations.Default;
 import org.apache.sling.models.annotations.Exporter;
 import org.apache.sling.models.annotations.Model;
+import org.apache.sling.models.annotations.injectorspecific.OSGiService;
 import org.apache.sling.models.annotations.injectorspecific.SlingObject;
 import org.apache.sling.models.annotations.injectorspecific.ValueMapValue;
 
-import javax.annotation.PostConstruct;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -26,50 +26,35 @@ import java.util.Map;
 @Exporter(name = ExporterConstants.SLING_MODEL_EXPORTER_NAME, extensions = ExporterConstants.SLING_MODEL_EXTENSION)
 public class ManualTable implements ComponentExporter {
 
+    // 样式配置所在路径，实际开发中可以换成组件 Policy 下的同类节点
+    static final String STYLES_PATH = "/apps/my-project/components/manualtable/_cq_dialog/content/items/tabs/items/properties/items/styles/features";
+
     @ValueMapValue
     @Default(values = "")
     private String tableData;
 
     @SlingObject
-    private ResourceResolver resourceResolver;
+    private Resource resource;
 
-    // 用于存储样式选项列表
-    private List<Map<String, String>> allowedStyles = new ArrayList<>();
+    // 样式选项只随部署变化，由 StyleOptionRegistry 缓存，/apps 有变更时自动刷新，渲染时不再遍历仓库
+    @OSGiService
+    private StyleOptionRegistry styleOptionRegistry;
 
-    @PostConstruct
-    protected void init() {
-        // 核心逻辑：读取样式配置
-        // 路径可以是：
-        // 1. 当前组件 Policy 的路径 (最佳实践)
-        // 2. 这里的例子：为了演示，我们硬编码去读一个公共的 Text 组件配置，或者你自己组件 dialog 下的配置
-        // 假设样式配置在：/apps/my-project/components/manualtable/cq:dialog/content/items/tabs/items/properties/items/styles/features
-        // 实际开发中，建议把这个路径抽取为 OSGi 配置
-        
-        String stylesPath = "/apps/my-project/components/manualtable/_cq_dialog/content/items/tabs/items/properties/items/styles/features";
-        Resource styleResource = resourceResolver.getResource(stylesPath);
+    @OSGiService
+    private RenderProfiler renderProfiler;
 
-        if (styleResource != null) {
-            Iterator<Resource> children = styleResource.listChildren();
-            while (children.hasNext()) {
-                Resource styleItem = children.next();
-                String label = styleItem.getValueMap().get("text", String.class);
-                String cssName = styleItem.getValueMap().get("cssName", String.class);
+    public String getTableData() { return tableData; }
 
-                if (label != null && cssName != null) {
-                    Map<String, String> map = new HashMap<>();
-                    map.put("label", label);
-                    map.put("value", cssName);
-                    allowedStyles.add(map);
-                }
-            }
+    // 导出给前端；这里只计样式查询的耗时，model.json 的字节数由导出过滤器统计
+    public List<Map<String, String>> getAllowedStyles() {
+        try (ModelTimer timer = renderProfiler.start(ManualTable.class, resource)) {
+            return timer.call(() -> styleOptionRegistry.getOptions(STYLES_PATH));
         }
     }
 
-    public String getTableData() { return tableData; }
-
-    // 导出给前端
-    public List<Map<String, String>> getAllowedStyles() {
-        return allowedStyles;
+    // 分页 / 排序 / 过滤接口的前缀，前端拼上 ".p1.n20.json" 等 selector，见 TableRowsServlet
+    public String getRowsUrl() {
+        return resource.getPath() + "." + TableRowsServlet.SELECTOR;
     }
 
     @Override
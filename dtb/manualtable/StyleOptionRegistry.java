@@ -0,0 +1,14 @@
+package com.myproject.core.services;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 样式选项注册表：按配置路径（dialog 的 styles/features 节点或 policy 下的同类节点）缓存 {label, value} 列表。
+ * 选项只会随部署变化，/apps 下有变更时自动失效。返回的列表不可修改，可以在组件之间共享。
+ * 选项由 service user 读取，与当前请求的权限无关。
+ */
+public interface StyleOptionRegistry {
+
+    List<Map<String, String>> getOptions(String path);
+}
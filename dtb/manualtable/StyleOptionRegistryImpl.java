@@ -0,0 +1,98 @@
+package com.myproject.core.services.impl;
+
+import com.myproject.core.services.StyleOptionRegistry;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+@Component(
+    service = {StyleOptionRegistry.class, ResourceChangeListener.class},
+    immediate = true,
+    property = {
+        ResourceChangeListener.PATHS + "=/apps",
+        ResourceChangeListener.PATHS + "=/conf",
+        ResourceChangeListener.CHANGES + "=ADDED",
+        ResourceChangeListener.CHANGES + "=CHANGED",
+        ResourceChangeListener.CHANGES + "=REMOVED"
+    }
+)
+public class StyleOptionRegistryImpl implements StyleOptionRegistry, ResourceChangeListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StyleOptionRegistryImpl.class);
+
+    // 需要在 Service User Mapping 中配置该 subservice，只需 /apps 和 /conf 的读权限
+    private static final String SUBSERVICE = "style-options-reader";
+
+    @Reference
+    private ResourceResolverFactory resolverFactory;
+
+    private final ConcurrentMap<String, List<Map<String, String>>> options = new ConcurrentHashMap<>();
+
+    @Deactivate
+    protected void deactivate() {
+        options.clear();
+    }
+
+    @Override
+    public List<Map<String, String>> getOptions(String path) {
+        List<Map<String, String>> cached = options.get(path);
+        if (cached != null) return cached;
+
+        // 缓存结果在所有访客之间共享，所以用 service resolver 读取，而不是第一个请求者的 resolver：
+        // 否则权限不足的请求会把空列表缓存下来。路径确实不存在时才缓存空列表，部署后由 onChange 清掉
+        List<Map<String, String>> loaded;
+        try (ResourceResolver serviceResolver = resolverFactory.getServiceResourceResolver(
+                Collections.singletonMap(ResourceResolverFactory.SUBSERVICE, SUBSERVICE))) {
+            loaded = load(serviceResolver.getResource(path));
+        } catch (LoginException e) {
+            LOG.error("Service user for subservice {} is not configured", SUBSERVICE, e);
+            return Collections.emptyList(); // 不缓存，配置好之后下一次请求即可恢复
+        }
+        List<Map<String, String>> previous = options.putIfAbsent(path, loaded);
+        return previous != null ? previous : loaded;
+    }
+
+    // 部署时整个组件目录会被替换，所以变更路径可能是配置路径本身、其子节点或其祖先
+    @Override
+    public void onChange(List<ResourceChange> changes) {
+        for (ResourceChange change : changes) {
+            String changed = change.getPath();
+            options.keySet().removeIf(path -> path.equals(changed)
+                    || path.startsWith(changed + "/") || changed.startsWith(path + "/"));
+        }
+    }
+
+    private static List<Map<String, String>> load(Resource styleResource) {
+        if (styleResource == null) return Collections.emptyList();
+        List<Map<String, String>> loaded = new ArrayList<>();
+        for (Resource styleItem : styleResource.getChildren()) {
+            ValueMap properties = styleItem.getValueMap();
+            String label = properties.get("text", String.class);
+            String cssName = properties.get("cssName", String.class);
+            if (label != null && cssName != null) {
+                Map<String, String> map = new HashMap<>();
+                map.put("label", label);
+                map.put("value", cssName);
+                loaded.add(Collections.unmodifiableMap(map));
+            }
+        }
+        return Collections.unmodifiableList(loaded);
+    }
+}
@@ -3,11 +3,26 @@ import { MapTo } from '@adobe/aem-react-editable-components';
 import { ResponsiveGrid } from '@adobe/aem-react-editable-components';
 import './SpaDynamicTable.css';
 
+// 与 TableRowsServlet 的规范写法一致：支持的页大小之一，query 先归一化再 base64url（无 padding）
+const PAGE_SIZE = 20;
+const MAX_QUERY_LENGTH = 100;
+
+const normalizeQuery = (text) => text.trim().replace(/\s+/g, ' ').toLowerCase();
+
+const encodeQuery = (text) => {
+    const bytes = new TextEncoder().encode(text);
+    let binary = '';
+    bytes.forEach(b => { binary += String.fromCharCode(b); });
+    return btoa(binary).replace(/\+/g, '-').replace(/\//g, '_').replace(/=+$/, '');
+};
+
 const SpaDynamicTable = (props) => {
     const {
         tableHeaders = [],
         tableCaption,
         rows = [],       // 来自 Sling Model 的初始行数据
+        nextRowsUrl,     // 发布端配置了 rowLimit 时，剩余行的分段地址
+        rowsUrl,         // 分页 / 排序 / 过滤接口前缀，见 TableRowsServlet
         pagePath,
         itemPath,        // 当前组件的 JCR 路径
         isInEditor       // 是否在 AEM 编辑器模式
@@ -16,10 +31,66 @@ const SpaDynamicTable = (props) => {
     // 本地状态，用于实现 UI 的即时响应 (Optimistic Update)
     const [localRows, setLocalRows] = useState(rows);
 
+    const [nextUrl, setNextUrl] = useState(nextRowsUrl);
+    const [loadingMore, setLoadingMore] = useState(false);
+
+    // 排序 / 过滤：结果来自 rowsUrl 接口，只返回原始行号，单元格组件仍按行号渲染
+    const [sort, setSort] = useState(null);      // { column, desc }
+    const [query, setQuery] = useState('');
+    const [page, setPage] = useState(1);
+    const [view, setView] = useState(null);      // 接口返回的 { rowIds, page, pageCount, total }
+    const queryEnabled = !isInEditor && !!rowsUrl;
+
     // 当 Props 更新时（例如 Dialog 修改后），同步本地状态
     useEffect(() => {
         setLocalRows(rows);
-    }, [rows]);
+        setNextUrl(nextRowsUrl);
+    }, [rows, nextRowsUrl]);
+
+    useEffect(() => {
+        const text = normalizeQuery(query);
+        if (!queryEnabled || (!sort && !text)) {
+            setView(null);
+            return undefined;
+        }
+        let cancelled = false;
+        // 只能拼规范写法，否则接口返回 404
+        let url = `${rowsUrl}.p${page}.n${PAGE_SIZE}`;
+        if (sort) url += `.c${sort.column}.${sort.desc ? 'desc' : 'asc'}`;
+        if (text) url += `.q${encodeQuery(text)}`;
+        fetch(`${url}.json`)
+            .then(res => (res.ok ? res.json() : null))
+            .then(data => { if (!cancelled) setView(data); })
+            .catch(error => console.error("Error querying rows:", error));
+        return () => { cancelled = true; };
+    }, [queryEnabled, rowsUrl, sort, query, page]);
+
+    const handleSort = (column) => {
+        if (!queryEnabled) return;
+        setPage(1);
+        setSort(prev => (prev && prev.column === column ? { column, desc: !prev.desc } : { column, desc: false }));
+    };
+
+    const handleQuery = (event) => {
+        setPage(1);
+        setQuery(event.target.value.slice(0, MAX_QUERY_LENGTH));
+    };
+
+    // 追加下一段行数据（rowstream 接口，每段 rowLimit 行）
+    const handleLoadMore = async () => {
+        if (!nextUrl || loadingMore) return;
+        setLoadingMore(true);
+        try {
+            const res = await fetch(nextUrl);
+            const data = await res.json();
+            setLocalRows(prev => [...prev, ...(data.rows || [])]);
+            setNextUrl(data.next);
+        } catch (error) {
+            console.error("Error loading rows:", error);
+        } finally {
+            setLoadingMore(false);
+        }
+    };
 
     /**
      * 添加新行
@@ -72,8 +143,20 @@ const SpaDynamicTable = (props) => {
         );
     }
 
+    // 有排序 / 过滤结果时按接口返回的行号显示，否则按本地行顺序
+    const columnCount = tableHeaders.length > 0 ? tableHeaders.length : 2;
+    const visibleRows = view
+        ? (view.rowIds || []).map(id => ({ id, row: localRows[id] || { cols: Array.from({ length: columnCount }) } }))
+        : localRows.map((row, id) => ({ id, row }));
+
     return (
         <div className="spa-dynamic-table-wrapper">
+            {queryEnabled && (
+                <div className="spa-table-toolbar">
+                    <input type="search" className="spa-table-search" placeholder="Search"
+                           value={query} onChange={handleQuery} />
+                </div>
+            )}
             {isInEditor && (
                 <div className="spa-table-toolbar">
                     <button className="btn-add-row" onClick={handleAddRow}>+ Add Row</button>
@@ -88,7 +171,12 @@ const SpaDynamicTable = (props) => {
                     <thead>
                         <tr>
                             {tableHeaders.map((header, index) => (
-                                <th key={index}>{header}</th>
+                                <th key={index}
+                                    className={queryEnabled ? 'spa-table-sortable' : undefined}
+                                    aria-sort={sort && sort.column === index ? (sort.desc ? 'descending' : 'ascending') : undefined}
+                                    onClick={() => handleSort(index)}>
+                                    {header}
+                                </th>
                             ))}
                         </tr>
                     </thead>
@@ -96,7 +184,7 @@ const SpaDynamicTable = (props) => {
 
                 {/* 渲染数据行 */}
                 <tbody>
-                    {localRows.map((row, rowIndex) => {
+                    {visibleRows.map(({ id: rowIndex, row }) => {
                         // 处理后端数据可能为 Map 或 Array 的情况
                         // 假设后端结构是 row -> cols (ChildResource)
                         // 这里我们需要获取 cols 下的子节点列表
@@ -132,6 +220,20 @@ const SpaDynamicTable = (props) => {
                     })}
                 </tbody>
             </table>
+
+            {view && view.pageCount > 1 && (
+                <div className="spa-table-pager">
+                    <button disabled={view.page <= 1} onClick={() => setPage(view.page - 1)}>Previous</button>
+                    <span>{view.page} / {view.pageCount}</span>
+                    <button disabled={view.page >= view.pageCount} onClick={() => setPage(view.page + 1)}>Next</button>
+                </div>
+            )}
+
+            {!view && nextUrl && (
+                <button className="btn-load-more" onClick={handleLoadMore} disabled={loadingMore}>
+                    {loadingMore ? 'Loading...' : 'Load more'}
+                </button>
+            )}
         </div>
     );
 };
@@ -2,12 +2,16 @@ package com.myproject.core.models;
 
 import com.adobe.cq.export.json.ComponentExporter;
 import com.adobe.cq.export.json.ExporterConstants;
+import com.day.cq.wcm.api.WCMMode;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.myproject.core.servlets.SpaTableRowStreamServlet;
+import com.myproject.core.servlets.TableRowsServlet;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.models.annotations.DefaultInjectionStrategy;
 import org.apache.sling.models.annotations.Exporter;
 import org.apache.sling.models.annotations.Model;
-import org.apache.sling.models.annotations.injectorspecific.ChildResource;
+import org.apache.sling.models.annotations.injectorspecific.SlingObject;
 import org.apache.sling.models.annotations.injectorspecific.ValueMapValue;
 
 import java.util.Collections;
@@ -31,10 +35,20 @@ public class SpaDynamicTable implements ComponentExporter {
     @ValueMapValue
     private List<String> tableHeaders;
 
+    // 发布端首屏最多输出多少行，其余通过 nextRowsUrl 分段获取；0 或不配置表示全部输出
+    @ValueMapValue
+    private int rowLimit;
+
+    @SlingObject
+    private SlingHttpServletRequest request;
+
     // 2. 动态生成的子节点 (用于确定有多少行)
     // 结构预期: 当前节点 -> rows -> item0, item1...
-    @ChildResource(name = "rows")
-    private List<Resource> rows;
+    // 不再注入 List<Resource>，由 SpaTableRows 在序列化时逐行遍历
+    @SlingObject
+    private Resource resource;
+
+    private SpaTableRows rows;
 
     public String getTableCaption() {
         return tableCaption;
@@ -44,8 +58,28 @@ public class SpaDynamicTable implements ComponentExporter {
         return tableHeaders != null ? tableHeaders : Collections.emptyList();
     }
 
-    public List<Resource> getRows() {
-        return rows != null ? rows : Collections.emptyList();
+    public SpaTableRows getRows() {
+        if (rows == null) {
+            rows = new SpaTableRows(resource.getChild("rows"), 0, effectiveRowLimit());
+        }
+        return rows;
+    }
+
+    // 还有未输出的行时才有值
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public String getNextRowsUrl() {
+        int limit = effectiveRowLimit();
+        return getRows().hasMore() ? SpaTableRowStreamServlet.url(resource, limit) : null;
+    }
+
+    // 分页 / 排序 / 过滤接口的前缀，前端拼上 ".p1.n20.json" 等 selector，见 TableRowsServlet
+    public String getRowsUrl() {
+        return resource.getPath() + "." + TableRowsServlet.SELECTOR;
+    }
+
+    // 编辑模式下新增行依赖完整的行数，不做限制
+    private int effectiveRowLimit() {
+        return rowLimit > 0 && WCMMode.fromRequest(request) == WCMMode.DISABLED ? rowLimit : 0;
     }
 
     @Override
@@ -0,0 +1,82 @@
+package com.myproject.core.servlets;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.myproject.core.models.SpaTableRows;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.osgi.service.component.annotations.Component;
+
+import javax.servlet.Servlet;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+
+/**
+ * SpaDynamicTable 的后续行：{table}.rowstream.{offset}.json
+ * 每次最多返回 rowLimit 行（未配置时用 DEFAULT_LIMIT），next 为下一段的 URL，没有更多时为 null。
+ * offset 只接受规范的十进制写法，且必须是 limit 的整数倍、落在已有行内（0 除外），
+ * 其他 offset 返回 404，和 TableRowsServlet 一样，Dispatcher 只会缓存真实存在的分段。
+ */
+@Component(
+    service = Servlet.class,
+    property = {
+        "sling.servlet.resourceTypes=my-project/components/spa-dynamic-table",
+        "sling.servlet.selectors=" + SpaTableRowStreamServlet.SELECTOR,
+        "sling.servlet.extensions=json",
+        "sling.servlet.methods=GET"
+    }
+)
+public class SpaTableRowStreamServlet extends SlingSafeMethodsServlet {
+
+    public static final String SELECTOR = "rowstream";
+    public static final int DEFAULT_LIMIT = 50;
+
+    private static final Pattern OFFSET = Pattern.compile("0|[1-9][0-9]{0,6}");
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    @Override
+    protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException {
+        String[] selectors = request.getRequestPathInfo().getSelectors();
+        if (selectors.length != 2 || !OFFSET.matcher(selectors[1]).matches()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        Resource table = request.getResource();
+        int offset = Integer.parseInt(selectors[1]);
+        int limit = limit(table);
+        SpaTableRows rows = new SpaTableRows(table.getChild("rows"), offset, limit);
+        if (offset % limit != 0 || (offset > 0 && !rows.hasRows())) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        response.setContentType("application/json");
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        try (JsonGenerator gen = JSON.createGenerator(response.getWriter())) {
+            gen.writeStartObject();
+            gen.writeFieldName("rows");
+            rows.write(gen);
+            if (rows.hasMore()) {
+                gen.writeStringField("next", url(table, offset + limit));
+            } else {
+                gen.writeNullField("next");
+            }
+            gen.writeEndObject();
+        }
+    }
+
+    public static int limit(Resource table) {
+        int limit = table.getValueMap().get("rowLimit", 0);
+        return limit > 0 ? limit : DEFAULT_LIMIT;
+    }
+
+    public static String url(Resource table, int offset) {
+        return table.getPath() + "." + SELECTOR + "." + offset + ".json";
+    }
+}
@@ -0,0 +1,116 @@
+package com.myproject.core.models;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import org.apache.sling.api.resource.Resource;
+
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * SpaDynamicTable 的行：序列化时才遍历 rows 节点，每行直接写进 JsonGenerator，
+ * 不会把所有行先放进 List，内存占用与行数无关。
+ * 输出结构与前端新增行时的 mock 一致：[{"name":"item0","cols":[{"name":"item0",...}]}]
+ */
+@JsonSerialize(using = SpaTableRows.Serializer.class)
+public final class SpaTableRows {
+
+    private final Resource rowsResource; // 可能为 null（还没有行）
+    private final int offset;
+    private final int limit;             // 0 表示不限制
+
+    public SpaTableRows(Resource rowsResource, int offset, int limit) {
+        this.rowsResource = rowsResource;
+        this.offset = offset;
+        this.limit = limit;
+    }
+
+    // offset 处有没有行；只数子节点，不读属性
+    public boolean hasRows() {
+        if (rowsResource == null) return false;
+        Iterator<Resource> rows = rowsResource.listChildren();
+        return skip(rows, offset) && rows.hasNext();
+    }
+
+    // offset + limit 之后还有没有行；只数子节点，不读属性
+    public boolean hasMore() {
+        if (limit <= 0 || rowsResource == null) return false;
+        Iterator<Resource> rows = rowsResource.listChildren();
+        return skip(rows, offset + limit) && rows.hasNext();
+    }
+
+    public void write(JsonGenerator gen) throws IOException {
+        gen.writeStartArray();
+        if (rowsResource != null) {
+            Iterator<Resource> rows = rowsResource.listChildren();
+            if (skip(rows, offset)) {
+                for (int written = 0; rows.hasNext() && (limit <= 0 || written < limit); written++) {
+                    writeRow(rows.next(), gen);
+                }
+            }
+        }
+        gen.writeEndArray();
+    }
+
+    private static void writeRow(Resource row, JsonGenerator gen) throws IOException {
+        gen.writeStartObject();
+        writeProperties(row, gen);
+        gen.writeArrayFieldStart("cols");
+        Resource cols = row.getChild("cols");
+        if (cols != null) {
+            // 单元格里的组件由 ResponsiveGrid 按路径从页面模型渲染，这里只需要单元格本身
+            for (Resource col : cols.getChildren()) {
+                gen.writeStartObject();
+                writeProperties(col, gen);
+                gen.writeEndObject();
+            }
+        }
+        gen.writeEndArray();
+        gen.writeEndObject();
+    }
+
+    // 只输出作者可编辑的简单属性，跳过 jcr: 系统属性
+    private static void writeProperties(Resource resource, JsonGenerator gen) throws IOException {
+        gen.writeStringField("name", resource.getName());
+        for (Map.Entry<String, Object> property : resource.getValueMap().entrySet()) {
+            String name = property.getKey();
+            Object value = property.getValue();
+            if (name.startsWith("jcr:") || "name".equals(name) || "cols".equals(name)) continue;
+            if (value instanceof String) {
+                gen.writeStringField(name, (String) value);
+            } else if (value instanceof Boolean) {
+                gen.writeBooleanField(name, (Boolean) value);
+            } else if (value instanceof Long || value instanceof Integer) {
+                gen.writeNumberField(name, ((Number) value).longValue());
+            } else if (value instanceof Number) {
+                gen.writeNumberField(name, ((Number) value).doubleValue());
+            } else if (value instanceof Calendar) {
+                gen.writeNumberField(name, ((Calendar) value).getTimeInMillis());
+            }
+        }
+    }
+
+    private static boolean skip(Iterator<Resource> rows, int count) {
+        for (int i = 0; i < count; i++) {
+            if (!rows.hasNext()) return false;
+            rows.next();
+        }
+        return true;
+    }
+
+    public static class Serializer extends StdSerializer<SpaTableRows> {
+
+        public Serializer() {
+            super(SpaTableRows.class);
+        }
+
+        @Override
+        public void serialize(SpaTableRows rows, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            rows.write(gen);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.yourproject.core.services;
+
+import com.adobe.cq.export.json.ComponentExporter;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.resource.Resource;
+
+/**
+ * Exported JSON of container children, kept per child path until something in
+ * the child's subtree changes. Editing one child only re-exports that child
+ * and the containers above it; its siblings are reused as they are.
+ */
+public interface SubtreeJsonCache {
+
+    /**
+     * The child as a container item: a cached JSON fragment when its subtree is
+     * unchanged and cacheable, otherwise its own live ComponentExporter model.
+     *
+     * @param request the current request, or null when the container was adapted from a resource
+     * @return null when the child has no exporter model
+     */
+    ComponentExporter export(SlingHttpServletRequest request, Resource child);
+
+    /** True for items served from, or just stored in, the cache. */
+    boolean isCached(ComponentExporter item);
+}
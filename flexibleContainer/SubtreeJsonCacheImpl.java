@@ -0,0 +1,202 @@
+package com.yourproject.core.services.impl;
+
+import com.adobe.cq.export.json.ComponentExporter;
+import com.day.cq.wcm.api.WCMMode;
+import com.fasterxml.jackson.annotation.JsonValue;
+import com.fasterxml.jackson.databind.util.RawValue;
+import com.yourproject.core.models.FlexibleContainer;
+import com.yourproject.core.services.SubtreeJsonCache;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.apache.sling.models.factory.ExportException;
+import org.apache.sling.models.factory.MissingExporterException;
+import org.apache.sling.models.factory.ModelFactory;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publish-only: in the editor every export is live, so authors always see
+ * their last change. Instead of walking a subtree for its newest modification
+ * time on every request, entries are dropped by change events: a change at a
+ * path evicts that path, everything below it and every ancestor, so an entry
+ * that survives is exactly the one its path and subtree modification time
+ * would have selected.
+ */
+@Component(
+    service = {SubtreeJsonCache.class, ResourceChangeListener.class},
+    immediate = true,
+    property = {
+        ResourceChangeListener.PATHS + "=/content",
+        ResourceChangeListener.CHANGES + "=ADDED",
+        ResourceChangeListener.CHANGES + "=CHANGED",
+        ResourceChangeListener.CHANGES + "=REMOVED"
+    }
+)
+@Designate(ocd = SubtreeJsonCacheImpl.Config.class)
+public class SubtreeJsonCacheImpl implements SubtreeJsonCache, ResourceChangeListener {
+
+    @ObjectClassDefinition(name = "Flexible Container - Subtree JSON Cache")
+    public @interface Config {
+
+        @AttributeDefinition(name = "Enabled")
+        boolean enabled() default true;
+
+        @AttributeDefinition(name = "Cacheable resource types",
+                description = "Components whose JSON depends only on their own subtree. Anything reading live data, "
+                        + "DAM assets, other pages or /apps (e.g. manualtable's allowedStyles) must not be listed; "
+                        + "containers are cached only when every item is.")
+        String[] cacheableTypes() default {
+            FlexibleContainer.RESOURCE_TYPE,
+            "mysite/components/contact-card",
+            "my-project/components/contact-modal",
+            "my-project/components/custom-table",
+            "my-project/components/dynamic-table",
+            "my-project/components/spa-dynamic-table"
+        };
+
+        @AttributeDefinition(name = "Max entries")
+        int maxEntries() default 10000;
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(SubtreeJsonCacheImpl.class);
+    private static final String EXPORTER = "jackson";
+
+    @Reference
+    private ModelFactory modelFactory;
+
+    // Sorted by path so a subtree is one range: [path + "/", path + "0")
+    private final ConcurrentNavigableMap<String, Fragment> fragments = new ConcurrentSkipListMap<>();
+    // Bumped by every eviction; an export that overlapped one is not stored
+    private final AtomicLong generation = new AtomicLong();
+
+    private volatile boolean enabled;
+    private volatile Set<String> cacheableTypes = Collections.emptySet();
+    private volatile int maxEntries;
+
+    @Activate
+    protected void activate(Config config) {
+        modified(config);
+    }
+
+    @Modified
+    protected void modified(Config config) {
+        enabled = config.enabled();
+        cacheableTypes = new HashSet<>(Arrays.asList(config.cacheableTypes()));
+        maxEntries = config.maxEntries();
+        clear();
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        clear();
+    }
+
+    @Override
+    public ComponentExporter export(SlingHttpServletRequest request, Resource child) {
+        if (request == null) {
+            return child.adaptTo(ComponentExporter.class);
+        }
+        if (!enabled || WCMMode.fromRequest(request) != WCMMode.DISABLED) {
+            return live(request, child);
+        }
+
+        Fragment cached = fragments.get(child.getPath());
+        if (cached != null) {
+            return cached;
+        }
+        long startGeneration = generation.get();
+        ComponentExporter model = live(request, child);
+        if (model == null || !cacheableTypes.contains(child.getResourceType())) {
+            return model;
+        }
+        // A container is only as cacheable as its items; asking also resolves them through this cache
+        if (model instanceof FlexibleContainer && !((FlexibleContainer) model).isSubtreeCached()) {
+            return model;
+        }
+        try {
+            Fragment fragment = new Fragment(modelFactory.exportModel(model, EXPORTER, String.class, Collections.emptyMap()),
+                    child.getResourceType());
+            if (generation.get() == startGeneration) {
+                if (fragments.size() >= maxEntries) {
+                    clear();
+                }
+                fragments.put(child.getPath(), fragment);
+            }
+            return fragment;
+        } catch (ExportException | MissingExporterException e) {
+            LOG.debug("Could not export {}, serving the live model", child.getPath(), e);
+            return model;
+        }
+    }
+
+    @Override
+    public boolean isCached(ComponentExporter item) {
+        return item instanceof Fragment;
+    }
+
+    @Override
+    public void onChange(List<ResourceChange> changes) {
+        for (ResourceChange change : changes) {
+            evict(change.getPath());
+        }
+    }
+
+    private ComponentExporter live(SlingHttpServletRequest request, Resource child) {
+        return modelFactory.getModelFromWrappedRequest(request, child, ComponentExporter.class);
+    }
+
+    private void evict(String path) {
+        generation.incrementAndGet();
+        fragments.remove(path);
+        fragments.subMap(path + "/", path + "0").clear();
+        for (int slash = path.lastIndexOf('/'); slash > 0; slash = path.lastIndexOf('/', slash - 1)) {
+            fragments.remove(path.substring(0, slash));
+        }
+    }
+
+    private void clear() {
+        generation.incrementAndGet();
+        fragments.clear();
+    }
+
+    /** Already-serialized item, written into the parent's :items as is. */
+    static final class Fragment implements ComponentExporter {
+
+        private final RawValue json;
+        private final String exportedType;
+
+        Fragment(String json, String exportedType) {
+            this.json = new RawValue(json);
+            this.exportedType = exportedType;
+        }
+
+        @JsonValue
+        public RawValue getJson() {
+            return json;
+        }
+
+        @Override
+        public String getExportedType() {
+            return exportedType;
+        }
+    }
+}
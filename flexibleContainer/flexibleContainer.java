@@ -1,36 +1,48 @@
 package com.yourproject.core.models;
 
 import com.adobe.cq.export.json.ComponentExporter;
+import com.adobe.cq.export.json.ContainerExporter;
 import com.adobe.cq.export.json.ExporterConstants;
 import com.adobe.cq.wcm.core.components.models.Container;
 import com.adobe.cq.wcm.core.components.models.ListItem;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.test.aem.core.services.RenderProfiler;
+import com.test.aem.core.services.profiling.ModelTimer;
+import com.yourproject.core.services.SubtreeJsonCache;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.models.annotations.DefaultInjectionStrategy;
 import org.apache.sling.models.annotations.Exporter;
 import org.apache.sling.models.annotations.Model;
 import org.apache.sling.models.annotations.injectorspecific.ChildResource;
+import org.apache.sling.models.annotations.injectorspecific.OSGiService;
+import org.apache.sling.models.annotations.injectorspecific.Self;
 import org.apache.sling.models.annotations.injectorspecific.ValueMapValue;
 import org.apache.sling.models.annotations.injectorspecific.SlingObject;
 
 import javax.annotation.PostConstruct;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Model(
     adaptables = {SlingHttpServletRequest.class, Resource.class},
-    adapters = {FlexibleContainer.class, ComponentExporter.class},
+    adapters = {FlexibleContainer.class, ComponentExporter.class, ContainerExporter.class},
     resourceType = FlexibleContainer.RESOURCE_TYPE,
     defaultInjectionStrategy = DefaultInjectionStrategy.OPTIONAL
 )
 @Exporter(name = ExporterConstants.SLING_MODEL_EXPORTER_NAME, extensions = ExporterConstants.SLING_MODEL_EXTENSION)
-public class FlexibleContainer implements ComponentExporter {
+public class FlexibleContainer implements ContainerExporter {
 
     public static final String RESOURCE_TYPE = "yourproject/components/flexiblecontainer";
 
     @SlingObject
     private Resource resource;
 
+    @Self
+    private SlingHttpServletRequest request; // null when adapted from a Resource
+
     @ValueMapValue
     private String backgroundColor;
 
@@ -61,12 +73,24 @@ public class FlexibleContainer implements ComponentExporter {
     @ChildResource
     private List<Resource> items;
 
+    @OSGiService
+    private RenderProfiler renderProfiler;
+
+    @OSGiService
+    private SubtreeJsonCache subtreeJsonCache;
+
     private String containerId;
 
+    private Map<String, ComponentExporter> exportedItems;
+    private boolean subtreeCached;
+
     @PostConstruct
     private void init() {
-        // Generate unique container ID for editing purposes
-        containerId = "container-" + resource.getPath().hashCode();
+        try (ModelTimer timer = renderProfiler.start(FlexibleContainer.class, resource)) {
+            // Generate unique container ID for editing purposes
+            containerId = "container-" + resource.getPath().hashCode();
+            timer.items(items != null ? items.size() : 0);
+        }
     }
 
     @JsonProperty("backgroundColor")
@@ -119,11 +143,45 @@ public class FlexibleContainer implements ComponentExporter {
         return containerId;
     }
 
-    @JsonProperty("items")
+    // For HTL; the SPA reads the exported :items instead of raw resources
+    @JsonIgnore
     public List<Resource> getItems() {
         return items;
     }
 
+    // Each item is exported through its own model, or reused from the subtree cache when unchanged
+    @Override
+    public Map<String, ? extends ComponentExporter> getExportedItems() {
+        if (exportedItems == null) {
+            Map<String, ComponentExporter> exported = new LinkedHashMap<>();
+            boolean cached = true;
+            if (items != null) {
+                for (Resource item : items) {
+                    ComponentExporter model = subtreeJsonCache.export(request, item);
+                    if (model != null) {
+                        exported.put(item.getName(), model);
+                        cached &= subtreeJsonCache.isCached(model);
+                    }
+                }
+            }
+            exportedItems = exported;
+            subtreeCached = cached;
+        }
+        return exportedItems;
+    }
+
+    @Override
+    public String[] getExportedItemsOrder() {
+        return getExportedItems().keySet().toArray(new String[0]);
+    }
+
+    // True when every item came from the subtree cache, i.e. this container may be cached whole
+    @JsonIgnore
+    public boolean isSubtreeCached() {
+        getExportedItems();
+        return subtreeCached;
+    }
+
     @JsonProperty("isEmpty")
     public boolean isEmpty() {
         return items == null || items.isEmpty();
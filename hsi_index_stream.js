@@ -0,0 +1,195 @@
+/* =============================================================================
+   HSI INDEX CARD - LIVE UPDATES
+   apps/hsi/clientlibs/indexcard/js/indexstream.js
+   =============================================================================
+   Opens one EventSource per page for every index card with realTimeUpdate on
+   (GET /bin/hsi/indexstream?codes=...). "snapshot" events carry the full index,
+   "delta" events only the fields that changed. When the node refuses the stream
+   (503 at its connection limit), or the browser has no EventSource, the page
+   polls GET /bin/hsi/indexstream.json?codes=... every shortest authored
+   refreshInterval and tries the stream again every STREAM_RETRY_POLLS polls.
+   ============================================================================= */
+(function () {
+    'use strict';
+
+    var DEFAULT_RETRY_MILLIS = 30000;
+    var STREAM_RETRY_POLLS = 10;
+
+    function formatNumber(value, fractionDigits) {
+        return Number(value).toLocaleString('en-US', {
+            minimumFractionDigits: fractionDigits,
+            maximumFractionDigits: fractionDigits
+        });
+    }
+
+    function signed(value) {
+        return (value >= 0 ? '+' : '') + formatNumber(value, 2);
+    }
+
+    // lastUpdate is the bean's LocalDateTime as the mapper writes it: an ISO string, a
+    // [y, M, d, h, m, s] array, or a bean with year/monthValue/... depending on its modules
+    function toParts(value) {
+        if (typeof value === 'string') {
+            var m = /^(\d{4})-(\d{2})-(\d{2})T(\d{2}):(\d{2})(?::(\d{2}))?/.exec(value);
+            return m ? [+m[1], +m[2], +m[3], +m[4], +m[5], +(m[6] || 0)] : null;
+        }
+        if (Array.isArray(value) && value.length >= 5) {
+            return [value[0], value[1], value[2], value[3], value[4], value[5] || 0];
+        }
+        if (value && typeof value === 'object' && value.year) {
+            return [value.year, value.monthValue, value.dayOfMonth, value.hour, value.minute, value.second || 0];
+        }
+        return null;
+    }
+
+    // Same pattern as the HTL template: dd MMM yyyy HH:mm:ss, in the exchange's local time as sent
+    function formatTime(value) {
+        var months = ['Jan', 'Feb', 'Mar', 'Apr', 'May', 'Jun', 'Jul', 'Aug', 'Sep', 'Oct', 'Nov', 'Dec'];
+        var p = toParts(value);
+        function pad(n) { return n < 10 ? '0' + n : '' + n; }
+        return p ? pad(p[2]) + ' ' + months[p[1] - 1] + ' ' + p[0] + ' ' + pad(p[3]) + ':' + pad(p[4]) + ':' + pad(p[5]) : null;
+    }
+
+    function setField(card, field, text) {
+        var el = card.querySelector('[data-field="' + field + '"]');
+        if (el) {
+            el.textContent = text;
+        }
+    }
+
+    function apply(card, data) {
+        if (data.currentValue != null) {
+            setField(card, 'currentValue', formatNumber(data.currentValue, 2));
+        }
+        if (data.change != null) {
+            setField(card, 'change', signed(data.change));
+        }
+        if (data.changePercent != null) {
+            setField(card, 'changePercent', '(' + signed(data.changePercent) + '%)');
+        }
+        if (data.high != null) {
+            setField(card, 'high', formatNumber(data.high, 2));
+        }
+        if (data.low != null) {
+            setField(card, 'low', formatNumber(data.low, 2));
+        }
+        if (data.volume != null) {
+            setField(card, 'volume', formatNumber(data.volume, 0));
+        }
+        var lastUpdate = data.lastUpdate != null ? formatTime(data.lastUpdate) : null;
+        if (lastUpdate) {
+            setField(card, 'lastUpdate', lastUpdate);
+        }
+        if (data.changeDirection) {
+            var indicators = card.querySelector('.change-indicators');
+            if (indicators) {
+                indicators.className = 'change-indicators ' + data.changeDirection;
+            }
+        }
+        if (data.status) {
+            var status = card.querySelector('.index-status');
+            if (status) {
+                status.setAttribute('data-status', data.status);
+                var text = status.querySelector('.status-text');
+                if (text) {
+                    text.textContent = data.status;
+                }
+            }
+        }
+    }
+
+    function update(cardsByCode, data) {
+        var cards = data && cardsByCode[data.indexCode] || [];
+        for (var i = 0; i < cards.length; i++) {
+            apply(cards[i], data);
+        }
+    }
+
+    function query(cardsByCode) {
+        return '?codes=' + encodeURIComponent(Object.keys(cardsByCode).join(','));
+    }
+
+    // Plain polling of the current snapshots; hands back to the stream after `remaining` polls
+    function poll(baseUrl, cardsByCode, retryMillis, remaining) {
+        var request = new XMLHttpRequest();
+        request.open('GET', baseUrl + '.json' + query(cardsByCode));
+        request.onload = function () {
+            if (request.status !== 200) {
+                return;
+            }
+            var snapshots;
+            try {
+                snapshots = JSON.parse(request.responseText);
+            } catch (e) {
+                return;
+            }
+            for (var i = 0; i < snapshots.length; i++) {
+                update(cardsByCode, snapshots[i]);
+            }
+        };
+        request.send();
+        setTimeout(function () {
+            if (remaining > 1) {
+                poll(baseUrl, cardsByCode, retryMillis, remaining - 1);
+            } else {
+                connect(baseUrl, cardsByCode, retryMillis);
+            }
+        }, retryMillis);
+    }
+
+    function connect(baseUrl, cardsByCode, retryMillis) {
+        if (!window.EventSource) {
+            poll(baseUrl, cardsByCode, retryMillis, Infinity);
+            return;
+        }
+        var source = new EventSource(baseUrl + query(cardsByCode));
+
+        function onEvent(event) {
+            var data;
+            try {
+                data = JSON.parse(event.data);
+            } catch (e) {
+                return;
+            }
+            update(cardsByCode, data);
+        }
+
+        source.addEventListener('snapshot', onEvent);
+        source.addEventListener('delta', onEvent);
+        source.onerror = function () {
+            // CLOSED means the server refused the stream; CONNECTING is the browser's own reconnect
+            if (source.readyState === EventSource.CLOSED) {
+                poll(baseUrl, cardsByCode, retryMillis, STREAM_RETRY_POLLS);
+            }
+        };
+    }
+
+    function init() {
+        var cards = document.querySelectorAll('.hsi-index-card[data-real-time="true"][data-stream-url]');
+        var cardsByCode = {};
+        var baseUrl = null;
+        var retryMillis = Number.MAX_VALUE;
+        for (var i = 0; i < cards.length; i++) {
+            var card = cards[i];
+            var code = card.getAttribute('data-index-code');
+            if (!code) {
+                continue;
+            }
+            (cardsByCode[code] = cardsByCode[code] || []).push(card);
+            baseUrl = baseUrl || card.getAttribute('data-stream-url').split('?')[0];
+            var interval = parseInt(card.getAttribute('data-refresh-interval'), 10);
+            if (interval > 0 && interval < retryMillis) {
+                retryMillis = interval;
+            }
+        }
+        if (baseUrl) {
+            connect(baseUrl, cardsByCode, retryMillis !== Number.MAX_VALUE ? retryMillis : DEFAULT_RETRY_MILLIS);
+        }
+    }
+
+    if (document.readyState === 'loading') {
+        document.addEventListener('DOMContentLoaded', init);
+    } else {
+        init();
+    }
+})();
@@ -12,10 +12,16 @@ import org.apache.sling.models.annotations.injectorspecific.ValueMapValue;
 import org.apache.sling.models.annotations.injectorspecific.OSGiService;
 import org.apache.sling.models.annotations.DefaultInjectionStrategy;
 import org.apache.sling.models.annotations.PostConstruct;
-import com.test.aem.core.services.MarketDataService;
+import org.apache.sling.models.annotations.injectorspecific.SlingObject;
+import com.test.aem.core.services.DependencyRegistry;
+import com.test.aem.core.services.IndexSnapshotCache;
+import com.test.aem.core.services.JsonFragmentCache;
+import com.test.aem.core.services.RenderProfiler;
+import com.test.aem.core.services.cache.Snapshot;
+import com.test.aem.core.services.invalidation.Dependency;
+import com.test.aem.core.services.profiling.ModelTimer;
+import com.test.aem.core.beans.CompactIndexSnapshot;
 import com.test.aem.core.beans.IndexData;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 @Model(adaptables = {SlingHttpServletRequest.class, Resource.class}, 
        defaultInjectionStrategy = DefaultInjectionStrategy.OPTIONAL)
@@ -43,21 +49,42 @@ public class IndexCardModel {
     private String refreshInterval;
     
     @OSGiService
-    private MarketDataService marketDataService;
+    private IndexSnapshotCache indexSnapshotCache;
+    
+    @OSGiService
+    private JsonFragmentCache jsonFragmentCache;
+    
+    @OSGiService
+    private RenderProfiler renderProfiler;
+    
+    @OSGiService
+    private DependencyRegistry dependencyRegistry;
+    
+    @SlingObject
+    private Resource resource;
     
     private IndexData indexData;
     private String indexDataJson;
+    private String changeDirection = "neutral";
     
     @PostConstruct
     protected void init() {
         if (indexCode != null && !indexCode.isEmpty()) {
-            try {
-                indexData = marketDataService.getCurrentIndexData(indexCode);
-                ObjectMapper mapper = new ObjectMapper();
-                indexDataJson = mapper.writeValueAsString(indexData);
+            // Recorded before the read, so a page rendered while the feed is down is flushed once data arrives
+            dependencyRegistry.record(resource, Dependency.index(indexCode));
+            try (ModelTimer timer = renderProfiler.start(IndexCardModel.class, resource)) {
+                Snapshot<CompactIndexSnapshot> snapshot = timer.call(() -> indexSnapshotCache.getCompactIndexSnapshot(indexCode, getRefreshIntervalMillis()));
+                CompactIndexSnapshot compact = snapshot.getValue();
+                // Copied once per snapshot version and shared by every render; HTL only reads it
+                indexData = compact.getIndexData();
+                changeDirection = compact.getChangeDirection();
+                indexDataJson = jsonFragmentCache.toJson("index", indexCode, snapshot.getVersion(), compact);
+                timer.jsonBytes(indexDataJson);
             } catch (Exception e) {
                 // Log error and set default values
-                indexData = new IndexData();
+                if (indexData == null) {
+                    indexData = new IndexData();
+                }
                 indexDataJson = "{}";
             }
         }
@@ -73,6 +100,16 @@ public class IndexCardModel {
     public String getRefreshInterval() { return refreshInterval != null ? refreshInterval : "30000"; }
     public IndexData getIndexData() { return indexData; }
     public String getIndexDataJson() { return indexDataJson; }
+    public String getChangeDirection() { return changeDirection; }
+    public String getStreamUrl() { return realTimeUpdate && indexCode != null ? "/bin/hsi/indexstream?codes=" + indexCode : null; }
+    
+    private long getRefreshIntervalMillis() {
+        try {
+            return Long.parseLong(getRefreshInterval().trim());
+        } catch (NumberFormatException e) {
+            return 30000;
+        }
+    }
 }
 
 // MarketDataModel.java
@@ -83,9 +120,13 @@ import org.apache.sling.api.resource.Resource;
 import org.apache.sling.models.annotations.Model;
 import org.apache.sling.models.annotations.injectorspecific.ValueMapValue;
 import org.apache.sling.models.annotations.injectorspecific.OSGiService;
+import org.apache.sling.models.annotations.injectorspecific.SlingObject;
 import org.apache.sling.models.annotations.DefaultInjectionStrategy;
 import org.apache.sling.models.annotations.PostConstruct;
-import com.test.aem.core.services.MarketDataService;
+import com.test.aem.core.services.IndexSnapshotCache;
+import com.test.aem.core.services.RenderProfiler;
+import com.test.aem.core.services.cache.MarketSummaryRequestScope;
+import com.test.aem.core.services.profiling.ModelTimer;
 import com.test.aem.core.beans.MarketSummary;
 import java.util.List;
 import java.util.Arrays;
@@ -107,23 +148,36 @@ public class MarketDataModel {
     private String sortBy; // name, value, change, volume
     
     @OSGiService
-    private MarketDataService marketDataService;
+    private IndexSnapshotCache indexSnapshotCache;
+    
+    @OSGiService
+    private RenderProfiler renderProfiler;
+    
+    @SlingObject
+    private SlingHttpServletRequest request; // null when adapted from a Resource
+    
+    @SlingObject
+    private Resource resource;
     
     private List<MarketSummary> marketData;
     
     @PostConstruct
     protected void init() {
-        try {
+        try (ModelTimer timer = renderProfiler.start(MarketDataModel.class, resource)) {
             if (selectedIndices != null && selectedIndices.length > 0) {
-                marketData = marketDataService.getMarketSummary(Arrays.asList(selectedIndices));
+                List<String> indexCodes = Arrays.asList(selectedIndices);
+                // Components on the same page share the summaries already resolved for this render
+                marketData = timer.call(() -> request != null
+                        ? MarketSummaryRequestScope.get(request).resolve(indexCodes, indexSnapshotCache::getMarketSummary)
+                        : indexSnapshotCache.getMarketSummary(indexCodes));
             } else {
                 // Default to major indices
-                marketData = marketDataService.getMajorIndicesSummary();
+                marketData = timer.call(indexSnapshotCache::getMajorIndicesSummary);
             }
             
-            // Sort data based on sortBy parameter
+            // MarketDataService's order for this key, computed once per data refresh instead of per request
             if (sortBy != null && marketData != null) {
-                marketData = marketDataService.sortMarketData(marketData, sortBy);
+                marketData = indexSnapshotCache.getSummaryView(marketData).sortedBy(sortBy);
             }
         } catch (Exception e) {
             // Log error and initialize empty list
@@ -149,9 +203,18 @@ import org.apache.sling.models.annotations.injectorspecific.ValueMapValue;
 import org.apache.sling.models.annotations.injectorspecific.OSGiService;
 import org.apache.sling.models.annotations.DefaultInjectionStrategy;
 import org.apache.sling.models.annotations.PostConstruct;
+import org.apache.sling.models.annotations.injectorspecific.SlingObject;
+import com.test.aem.core.services.DependencyRegistry;
+import com.test.aem.core.services.NewsFeedCache;
 import com.test.aem.core.services.NewsService;
+import com.test.aem.core.services.RenderProfiler;
+import com.test.aem.core.services.cache.NewsWindow;
+import com.test.aem.core.services.invalidation.Dependency;
+import com.test.aem.core.services.profiling.ModelTimer;
+import com.test.aem.core.beans.FormattedNewsItem;
 import com.test.aem.core.beans.NewsItem;
 import java.util.List;
+import java.util.Locale;
 
 @Model(adaptables = {SlingHttpServletRequest.class, Resource.class}, 
        defaultInjectionStrategy = DefaultInjectionStrategy.OPTIONAL)
@@ -178,19 +241,51 @@ public class NewsListModel {
     @OSGiService
     private NewsService newsService;
     
+    @OSGiService
+    private NewsFeedCache newsFeedCache;
+    
+    @OSGiService
+    private RenderProfiler renderProfiler;
+    
+    @OSGiService
+    private DependencyRegistry dependencyRegistry;
+    
+    @SlingObject
+    private Resource resource;
+    
     private List<NewsItem> newsItems;
+    private List<FormattedNewsItem> newsEntries;
     
     @PostConstruct
     protected void init() {
-        try {
+        try (ModelTimer timer = renderProfiler.start(NewsListModel.class, resource)) {
             int itemLimit = maxItems > 0 ? maxItems : 10;
             String newsCategory = category != null ? category : "all";
             String newsLanguage = language != null ? language : "en";
+            if (itemLimit <= newsFeedCache.getWindowSize()) {
+                // Lists longer than the window are not refreshed in the background, so nothing would flush them
+                dependencyRegistry.record(resource, Dependency.news(newsCategory, newsLanguage));
+            }
             
-            newsItems = newsService.getNews(newsCategory, newsLanguage, itemLimit);
+            // Any maxItems within the shared window is a prefix of it; larger lists go to the service
+            NewsWindow window = timer.call(() -> itemLimit <= newsFeedCache.getWindowSize()
+                    ? newsFeedCache.getWindow(newsCategory, newsLanguage)
+                    : NewsWindow.of(newsService.getNews(newsCategory, newsLanguage, itemLimit)));
+            newsItems = window.prefix(itemLimit);
+            newsEntries = formatEntries(window, itemLimit, "zh".equals(newsLanguage) ? Locale.CHINESE : Locale.ENGLISH);
         } catch (Exception e) {
             // Log error and initialize empty list
             newsItems = List.of();
+            newsEntries = List.of();
+        }
+    }
+    
+    private List<FormattedNewsItem> formatEntries(NewsWindow window, int itemLimit, Locale locale) {
+        try {
+            return window.prefix(itemLimit, getDateFormat(), locale);
+        } catch (IllegalArgumentException e) {
+            // Invalid authored pattern
+            return window.prefix(itemLimit, "dd MMM yyyy", locale);
         }
     }
     
@@ -202,6 +297,7 @@ public class NewsListModel {
     public boolean isShowDate() { return showDate; }
     public String getDateFormat() { return dateFormat != null ? dateFormat : "dd MMM yyyy"; }
     public List<NewsItem> getNewsItems() { return newsItems; }
+    public List<FormattedNewsItem> getNewsEntries() { return newsEntries; }
 }
 
 // ChartComponentModel.java
@@ -214,9 +310,16 @@ import org.apache.sling.models.annotations.injectorspecific.ValueMapValue;
 import org.apache.sling.models.annotations.injectorspecific.OSGiService;
 import org.apache.sling.models.annotations.DefaultInjectionStrategy;
 import org.apache.sling.models.annotations.PostConstruct;
-import com.test.aem.core.services.MarketDataService;
+import com.test.aem.core.services.DependencyRegistry;
+import com.test.aem.core.services.IndexSnapshotCache;
+import com.test.aem.core.services.JsonFragmentCache;
+import org.apache.sling.models.annotations.injectorspecific.SlingObject;
+import com.test.aem.core.services.RenderProfiler;
+import com.test.aem.core.services.cache.ChartDownsampler;
+import com.test.aem.core.services.cache.Snapshot;
+import com.test.aem.core.services.invalidation.Dependency;
+import com.test.aem.core.services.profiling.ModelTimer;
 import com.test.aem.core.beans.ChartData;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 @Model(adaptables = {SlingHttpServletRequest.class, Resource.class}, 
        defaultInjectionStrategy = DefaultInjectionStrategy.OPTIONAL)
@@ -234,6 +337,9 @@ public class ChartComponentModel {
     @ValueMapValue
     private String height;
     
+    @ValueMapValue
+    private String width; // px, from the dialog; drives the server-side point budget
+    
     @ValueMapValue
     private boolean showVolume;
     
@@ -244,20 +350,37 @@ public class ChartComponentModel {
     private String theme; // light, dark
     
     @OSGiService
-    private MarketDataService marketDataService;
+    private IndexSnapshotCache indexSnapshotCache;
+    
+    @OSGiService
+    private JsonFragmentCache jsonFragmentCache;
+    
+    @OSGiService
+    private RenderProfiler renderProfiler;
+    
+    @OSGiService
+    private DependencyRegistry dependencyRegistry;
+    
+    @SlingObject
+    private Resource resource;
     
     private ChartData chartData;
     private String chartDataJson;
     
     @PostConstruct
     protected void init() {
-        try {
+        try (ModelTimer timer = renderProfiler.start(ChartComponentModel.class, resource)) {
             if (indexCode != null && !indexCode.isEmpty()) {
                 String period = timeframe != null ? timeframe : "1M";
-                chartData = marketDataService.getChartData(indexCode, period);
-                
-                ObjectMapper mapper = new ObjectMapper();
-                chartDataJson = mapper.writeValueAsString(chartData);
+                // Every resolution is cut from the full-resolution chart, which is what gets watched
+                dependencyRegistry.record(resource, Dependency.chart(indexCode, period));
+                // Never ship more points than the chart can draw
+                int maxPoints = ChartDownsampler.targetPoints(width, getChartType());
+                Snapshot<ChartData> snapshot = timer.call(() -> indexSnapshotCache.getChartSnapshot(indexCode, period, getChartType(), maxPoints));
+                chartData = snapshot.getValue();
+                chartDataJson = jsonFragmentCache.toJson("chart", indexCode + "|" + period + "|" + getChartType() + "|" + maxPoints,
+                        snapshot.getVersion(), chartData);
+                timer.jsonBytes(chartDataJson);
             }
         } catch (Exception e) {
             // Log error and set default values
@@ -270,6 +393,7 @@ public class ChartComponentModel {
     public String getChartType() { return chartType != null ? chartType : "line"; }
     public String getTimeframe() { return timeframe != null ? timeframe : "1M"; }
     public String getHeight() { return height != null ? height : "400px"; }
+    public String getWidth() { return width; }
     public boolean isShowVolume() { return showVolume; }
     public boolean isShowIndicators() { return showIndicators; }
     public String getTheme() { return theme != null ? theme : "light"; }
@@ -287,7 +411,13 @@ import org.apache.sling.models.annotations.injectorspecific.ValueMapValue;
 import org.apache.sling.models.annotations.injectorspecific.SlingObject;
 import org.apache.sling.models.annotations.DefaultInjectionStrategy;
 import org.apache.sling.models.annotations.PostConstruct;
+import org.apache.sling.models.annotations.injectorspecific.OSGiService;
 import com.day.cq.wcm.api.Page;
+import com.test.aem.core.services.NavigationTreeService;
+import com.test.aem.core.services.navigation.NavigationNode;
+import com.test.aem.core.services.navigation.NavigationTree;
+import java.util.Collections;
+import java.util.List;
 
 @Model(adaptables = {SlingHttpServletRequest.class, Resource.class}, 
        defaultInjectionStrategy = DefaultInjectionStrategy.OPTIONAL)
@@ -311,8 +441,12 @@ public class HeaderModel {
     @SlingObject
     private SlingHttpServletRequest request;
     
+    @OSGiService
+    private NavigationTreeService navigationTreeService;
+    
     private String currentLanguage;
     private String currentPath;
+    private NavigationTree navigationTree;
     
     @PostConstruct
     protected void init() {
@@ -321,6 +455,8 @@ public class HeaderModel {
             currentPath = currentPage.getPath();
             currentLanguage = currentPage.getLanguage(false).getLanguage();
         }
+        // Shared per language root; only the highlighted paths depend on this page
+        navigationTree = navigationTreeService.getTree(primaryNavigationRoot, currentLanguage);
     }
     
     // Getters
@@ -331,6 +467,14 @@ public class HeaderModel {
     public String getPrimaryNavigationRoot() { return primaryNavigationRoot; }
     public String getCurrentLanguage() { return currentLanguage; }
     public String getCurrentPath() { return currentPath; }
+    
+    public List<NavigationNode> getNavigation() {
+        return navigationTree != null ? navigationTree.getRoot().getChildren() : Collections.emptyList();
+    }
+    
+    public List<String> getActivePaths() {
+        return navigationTree != null ? navigationTree.activePaths(currentPath) : Collections.emptyList();
+    }
 }
 
 // =============================================================================
@@ -408,4 +552,357 @@ public class IndexData {
         if (isNegativeChange()) return "down";
         return "neutral";
     }
-}
\ No newline at end of file
+}
+// MarketStatus.java
+package com.test.aem.core.beans;
+
+import java.util.Locale;
+
+public enum MarketStatus {
+    OPEN, CLOSED, PRE_MARKET, AFTER_MARKET;
+
+    /**
+     * Lenient about case, spaces and hyphens; null for values the feed adds later
+     * (a lunch break, a halt). Callers keep the feed's own text for those.
+     */
+    public static MarketStatus fromValue(String value) {
+        if (value == null) {
+            return null;
+        }
+        String name = value.trim().toUpperCase(Locale.ROOT).replace('-', '_').replace(' ', '_');
+        for (MarketStatus status : values()) {
+            if (status.name().equals(name)) {
+                return status;
+            }
+        }
+        return null;
+    }
+}
+
+// CompactIndexSnapshot.java
+package com.test.aem.core.beans;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.ZoneId;
+
+/**
+ * Immutable view of one {@link IndexData} snapshot version, built once per
+ * version. It holds a private copy of the IndexData for HTL, plus the numbers
+ * as longs scaled by 10^PRICE_SCALE (volume by 10^VOLUME_SCALE) so the JSON
+ * writer and the push hub can format and compare them without BigDecimal.
+ * Nothing is rounded: a value with more decimals than its scale, or too large
+ * for a long, is stored as {@link #INEXACT} and read from the copy instead.
+ * Missing values are stored as {@link #NULL}.
+ */
+@JsonSerialize(using = CompactIndexSnapshotSerializer.class)
+public final class CompactIndexSnapshot {
+
+    public static final int PRICE_SCALE = 6;
+    public static final int VOLUME_SCALE = 4;
+    public static final long NULL = Long.MIN_VALUE;
+    public static final long INEXACT = Long.MIN_VALUE + 1;
+    public static final ZoneId MARKET_ZONE = ZoneId.of("Asia/Hong_Kong");
+
+    private final IndexData data;
+    private final long currentValue;
+    private final long change;
+    private final long changePercent;
+    private final long volume;
+    private final long high;
+    private final long low;
+    private final MarketStatus status;
+    private final int direction; // 1 up, -1 down, 0 neutral
+
+    private CompactIndexSnapshot(IndexData data) {
+        this.data = data;
+        this.currentValue = scale(data.getCurrentValue(), PRICE_SCALE);
+        this.change = scale(data.getChange(), PRICE_SCALE);
+        this.changePercent = scale(data.getChangePercent(), PRICE_SCALE);
+        this.volume = scale(data.getVolume(), VOLUME_SCALE);
+        this.high = scale(data.getHigh(), PRICE_SCALE);
+        this.low = scale(data.getLow(), PRICE_SCALE);
+        this.status = MarketStatus.fromValue(data.getStatus());
+        this.direction = data.getChange() != null ? data.getChange().signum() : 0;
+    }
+
+    /** Copies the values of data, so later changes to that bean do not show through. */
+    public static CompactIndexSnapshot from(IndexData data) {
+        IndexData copy = new IndexData(data.getIndexCode(), data.getIndexName());
+        copy.setCurrentValue(data.getCurrentValue());
+        copy.setChange(data.getChange());
+        copy.setChangePercent(data.getChangePercent());
+        copy.setVolume(data.getVolume());
+        copy.setHigh(data.getHigh());
+        copy.setLow(data.getLow());
+        copy.setLastUpdate(data.getLastUpdate());
+        copy.setStatus(data.getStatus());
+        return new CompactIndexSnapshot(copy);
+    }
+
+    /**
+     * The values exactly as the feed sent them. Shared by every render of this
+     * version, so it is read, never modified.
+     */
+    public IndexData getIndexData() { return data; }
+
+    public String getIndexCode() { return data.getIndexCode(); }
+    public String getIndexName() { return data.getIndexName(); }
+    public long getCurrentValue() { return currentValue; }
+    public long getChange() { return change; }
+    public long getChangePercent() { return changePercent; }
+    public long getVolume() { return volume; }
+    public long getHigh() { return high; }
+    public long getLow() { return low; }
+
+    /** Null when the feed sends a status the enum does not know; {@link #getStatusText()} still has it. */
+    public MarketStatus getStatus() { return status; }
+    public String getStatusText() { return data.getStatus(); }
+
+    public int getDirection() { return direction; }
+    public boolean isPositiveChange() { return direction > 0; }
+    public boolean isNegativeChange() { return direction < 0; }
+
+    public String getChangeDirection() {
+        return direction > 0 ? "up" : direction < 0 ? "down" : "neutral";
+    }
+
+    /** Compares two fields by value, on the scaled longs when both are exact. */
+    public static boolean sameValue(long previous, BigDecimal previousExact, long current, BigDecimal currentExact) {
+        if (previous != INEXACT && current != INEXACT) {
+            return previous == current;
+        }
+        return previousExact != null && currentExact != null
+                ? previousExact.compareTo(currentExact) == 0 : previousExact == currentExact;
+    }
+
+    private static long scale(BigDecimal value, int scale) {
+        if (value == null) {
+            return NULL;
+        }
+        try {
+            long scaled = value.setScale(scale, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+            return scaled == NULL || scaled == INEXACT ? INEXACT : scaled;
+        } catch (ArithmeticException e) {
+            return INEXACT;
+        }
+    }
+}
+
+// CompactIndexSnapshotSerializer.java
+package com.test.aem.core.beans;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import java.io.IOException;
+import java.math.BigDecimal;
+
+/**
+ * Writes the same fields as IndexData, formatting scaled longs straight into a
+ * char buffer so no BigDecimal or boxed number is created. lastUpdate goes
+ * through the mapper like every other LocalDateTime, so its format is the one
+ * the bean has always had.
+ */
+public class CompactIndexSnapshotSerializer extends StdSerializer<CompactIndexSnapshot> {
+
+    public CompactIndexSnapshotSerializer() {
+        super(CompactIndexSnapshot.class);
+    }
+
+    @Override
+    public void serialize(CompactIndexSnapshot value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        char[] buffer = new char[24]; // long digits, sign and decimal point
+        IndexData data = value.getIndexData();
+        gen.writeStartObject();
+        gen.writeStringField("indexCode", value.getIndexCode());
+        gen.writeStringField("indexName", value.getIndexName());
+        writeScaled(gen, "currentValue", value.getCurrentValue(), CompactIndexSnapshot.PRICE_SCALE, data.getCurrentValue(), buffer);
+        writeScaled(gen, "change", value.getChange(), CompactIndexSnapshot.PRICE_SCALE, data.getChange(), buffer);
+        writeScaled(gen, "changePercent", value.getChangePercent(), CompactIndexSnapshot.PRICE_SCALE, data.getChangePercent(), buffer);
+        writeScaled(gen, "volume", value.getVolume(), CompactIndexSnapshot.VOLUME_SCALE, data.getVolume(), buffer);
+        writeScaled(gen, "high", value.getHigh(), CompactIndexSnapshot.PRICE_SCALE, data.getHigh(), buffer);
+        writeScaled(gen, "low", value.getLow(), CompactIndexSnapshot.PRICE_SCALE, data.getLow(), buffer);
+        provider.defaultSerializeField("lastUpdate", data.getLastUpdate(), gen);
+        gen.writeStringField("status", value.getStatusText());
+        gen.writeBooleanField("positiveChange", value.isPositiveChange());
+        gen.writeBooleanField("negativeChange", value.isNegativeChange());
+        gen.writeStringField("changeDirection", value.getChangeDirection());
+        gen.writeEndObject();
+    }
+
+    /** Writes the scaled long, or the exact value when it did not fit its scale. */
+    public static void writeScaled(JsonGenerator gen, String field, long unscaled, int scale, BigDecimal exact, char[] buffer)
+            throws IOException {
+        gen.writeFieldName(field);
+        if (unscaled == CompactIndexSnapshot.NULL) {
+            gen.writeNull();
+            return;
+        }
+        if (unscaled == CompactIndexSnapshot.INEXACT) {
+            gen.writeNumber(exact);
+            return;
+        }
+        int start = format(unscaled, scale, buffer);
+        gen.writeNumber(buffer, start, buffer.length - start);
+    }
+
+    // Fills the buffer from the end and returns the first used index; trailing fraction zeros are dropped
+    public static int format(long unscaled, int scale, char[] buffer) {
+        boolean negative = unscaled < 0;
+        long remaining = negative ? -unscaled : unscaled; // NULL and INEXACT never reach here
+        int pos = buffer.length;
+        boolean significant = false;
+        for (int i = 0; i < scale; i++) {
+            int digit = (int) (remaining % 10);
+            remaining /= 10;
+            if (digit != 0 || significant) {
+                buffer[--pos] = (char) ('0' + digit);
+                significant = true;
+            }
+        }
+        if (significant) {
+            buffer[--pos] = '.';
+        }
+        do {
+            buffer[--pos] = (char) ('0' + remaining % 10);
+            remaining /= 10;
+        } while (remaining != 0);
+        if (negative) {
+            buffer[--pos] = '-';
+        }
+        return pos;
+    }
+}
+
+// ChartData.java
+package com.test.aem.core.beans;
+
+import java.util.List;
+
+public class ChartData {
+    private String indexCode;
+    private String period; // 1D, 5D, 1M, 3M, 6M, 1Y, 5Y
+    private List<ChartPoint> points;
+    
+    public ChartData() {}
+    
+    public ChartData(String indexCode, String period, List<ChartPoint> points) {
+        this.indexCode = indexCode;
+        this.period = period;
+        this.points = points;
+    }
+    
+    public String getIndexCode() { return indexCode; }
+    public void setIndexCode(String indexCode) { this.indexCode = indexCode; }
+    
+    public String getPeriod() { return period; }
+    public void setPeriod(String period) { this.period = period; }
+    
+    public List<ChartPoint> getPoints() { return points; }
+    public void setPoints(List<ChartPoint> points) { this.points = points; }
+}
+
+// ChartPoint.java
+package com.test.aem.core.beans;
+
+public class ChartPoint {
+    private long timestamp; // epoch millis
+    private double open;
+    private double high;
+    private double low;
+    private double close;
+    private long volume;
+    
+    public ChartPoint() {}
+    
+    public ChartPoint(long timestamp, double open, double high, double low, double close, long volume) {
+        this.timestamp = timestamp;
+        this.open = open;
+        this.high = high;
+        this.low = low;
+        this.close = close;
+        this.volume = volume;
+    }
+    
+    public long getTimestamp() { return timestamp; }
+    public void setTimestamp(long timestamp) { this.timestamp = timestamp; }
+    
+    public double getOpen() { return open; }
+    public void setOpen(double open) { this.open = open; }
+    
+    public double getHigh() { return high; }
+    public void setHigh(double high) { this.high = high; }
+    
+    public double getLow() { return low; }
+    public void setLow(double low) { this.low = low; }
+    
+    public double getClose() { return close; }
+    public void setClose(double close) { this.close = close; }
+    
+    public long getVolume() { return volume; }
+    public void setVolume(long volume) { this.volume = volume; }
+}
+
+// NewsItem.java
+package com.test.aem.core.beans;
+
+import java.util.Date;
+
+public class NewsItem {
+    private String id;
+    private String title;
+    private String excerpt;
+    private String url;
+    private String category; // market, indices, announcements
+    private String language; // en, zh
+    private Date publishDate;
+    
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+    
+    public String getTitle() { return title; }
+    public void setTitle(String title) { this.title = title; }
+    
+    public String getExcerpt() { return excerpt; }
+    public void setExcerpt(String excerpt) { this.excerpt = excerpt; }
+    
+    public String getUrl() { return url; }
+    public void setUrl(String url) { this.url = url; }
+    
+    public String getCategory() { return category; }
+    public void setCategory(String category) { this.category = category; }
+    
+    public String getLanguage() { return language; }
+    public void setLanguage(String language) { this.language = language; }
+    
+    public Date getPublishDate() { return publishDate; }
+    public void setPublishDate(Date publishDate) { this.publishDate = publishDate; }
+}
+
+// FormattedNewsItem.java
+package com.test.aem.core.beans;
+
+import java.util.Date;
+
+/** Read-only view of a NewsItem with its date already formatted for one pattern. */
+public final class FormattedNewsItem {
+    private final NewsItem item;
+    private final String formattedDate;
+    private final String isoDate;
+    
+    public FormattedNewsItem(NewsItem item, String formattedDate, String isoDate) {
+        this.item = item;
+        this.formattedDate = formattedDate;
+        this.isoDate = isoDate;
+    }
+    
+    public String getTitle() { return item.getTitle(); }
+    public String getExcerpt() { return item.getExcerpt(); }
+    public String getUrl() { return item.getUrl(); }
+    public String getCategory() { return item.getCategory(); }
+    public Date getPublishDate() { return item.getPublishDate(); }
+    public String getFormattedDate() { return formattedDate; }
+    public String getIsoDate() { return isoDate; }
+}
@@ -0,0 +1,5588 @@
+// =============================================================================
+// SERVICES FOR HSI COMPONENTS
+// =============================================================================
+
+// Snapshot.java
+package com.test.aem.core.services.cache;
+
+/**
+ * Immutable value held by a {@link SnapshotStore}. The version changes every
+ * time the key is reloaded, so it can be used to key derived caches.
+ */
+public final class Snapshot<V> {
+
+    private final V value;
+    private final long loadedAt;
+    private final long version;
+
+    public Snapshot(V value, long loadedAt, long version) {
+        this.value = value;
+        this.loadedAt = loadedAt;
+        this.version = version;
+    }
+
+    public V getValue() { return value; }
+    public long getLoadedAt() { return loadedAt; }
+    public long getVersion() { return version; }
+    public long getAgeMillis() { return System.currentTimeMillis() - loadedAt; }
+}
+
+// SnapshotStats.java
+package com.test.aem.core.services.cache;
+
+public final class SnapshotStats {
+
+    private final String key;
+    private final long hits;
+    private final long misses;
+    private final long staleServes;
+    private final long failures;
+    private final long ageMillis;
+
+    public SnapshotStats(String key, long hits, long misses, long staleServes, long failures, long ageMillis) {
+        this.key = key;
+        this.hits = hits;
+        this.misses = misses;
+        this.staleServes = staleServes;
+        this.failures = failures;
+        this.ageMillis = ageMillis;
+    }
+
+    public String getKey() { return key; }
+    public long getHits() { return hits; }
+    public long getMisses() { return misses; }
+    public long getStaleServes() { return staleServes; }
+    public long getFailures() { return failures; }
+    public long getAgeMillis() { return ageMillis; } // -1 when nothing is loaded yet
+}
+
+// SnapshotUnavailableException.java
+package com.test.aem.core.services.cache;
+
+public class SnapshotUnavailableException extends RuntimeException {
+
+    public SnapshotUnavailableException(String store, String key, Throwable cause) {
+        super("No " + store + " snapshot available for " + key, cause);
+    }
+}
+
+// SnapshotListener.java
+package com.test.aem.core.services.cache;
+
+/** Notified on the loader thread after a key has been reloaded; must not block. */
+public interface SnapshotListener<V> {
+
+    void onSnapshot(String key, Snapshot<V> previous, Snapshot<V> current);
+}
+
+// SnapshotStore.java
+package com.test.aem.core.services.cache;
+
+import com.test.aem.core.services.resilience.CallFailedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Shared keyed snapshot store. Reads never lock: a fresh snapshot is returned
+ * as-is, an expired one is served stale while a single background reload runs,
+ * and a miss waits for the one in-flight load of that key.
+ */
+public final class SnapshotStore<V> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SnapshotStore.class);
+
+    private final String name;
+    private final AsyncLoader<V> loader;
+
+    private final ConcurrentMap<String, Snapshot<V>> snapshots = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CompletableFuture<Snapshot<V>>> inFlight = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, KeyStats> keys = new ConcurrentHashMap<>();
+    private final AtomicLong versions = new AtomicLong();
+    private final List<SnapshotListener<V>> listeners = new CopyOnWriteArrayList<>();
+    // Restored from a checkpoint and not reloaded yet
+    private final Set<String> restored = ConcurrentHashMap.newKeySet();
+
+    private volatile long refreshMillis = 30000;
+    private volatile long maxStaleMillis = 300000;
+    private volatile long loadTimeoutMillis = 5000;
+    private volatile long idleEvictMillis = 3600000;
+
+    public SnapshotStore(String name, Function<String, V> loader, Executor executor) {
+        this(name, key -> CompletableFuture.supplyAsync(() -> loader.apply(key), executor));
+    }
+
+    private SnapshotStore(String name, AsyncLoader<V> loader) {
+        this.name = name;
+        this.loader = loader;
+    }
+
+    /** Store whose loader completes on its own threads, e.g. a batching client. */
+    public static <V> SnapshotStore<V> async(String name, Function<String, CompletableFuture<V>> loader) {
+        return new SnapshotStore<>(name, loader::apply);
+    }
+
+    public void configure(long refreshMillis, long maxStaleMillis, long loadTimeoutMillis, long idleEvictMillis) {
+        this.refreshMillis = refreshMillis;
+        this.maxStaleMillis = Math.max(maxStaleMillis, refreshMillis);
+        this.loadTimeoutMillis = loadTimeoutMillis;
+        this.idleEvictMillis = idleEvictMillis;
+    }
+
+    public String getName() { return name; }
+
+    public V get(String key) {
+        return getSnapshot(key, 0).getValue();
+    }
+
+    /**
+     * @param requestedRefreshMillis refresh interval asked for by the caller (e.g. an
+     *                               authored refreshInterval); 0 uses the store default
+     */
+    public Snapshot<V> getSnapshot(String key, long requestedRefreshMillis) {
+        long now = System.currentTimeMillis();
+        KeyStats stats = keys.computeIfAbsent(key, k -> new KeyStats());
+        stats.touch(now, requestedRefreshMillis);
+
+        Snapshot<V> snapshot = snapshots.get(key);
+        if (snapshot != null) {
+            long age = now - snapshot.getLoadedAt();
+            if (age < stats.refreshMillis(refreshMillis)) {
+                stats.hits.increment();
+                return snapshot;
+            }
+            if (age < maxStaleMillis || restored.contains(key)) {
+                // Stale-while-revalidate: the reload is single-flight, the caller does not wait
+                stats.staleServes.increment();
+                load(key);
+                return snapshot;
+            }
+        }
+
+        stats.misses.increment();
+        try {
+            return load(key).get(loadTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SnapshotUnavailableException(name, key, e);
+        } catch (ExecutionException | TimeoutException e) {
+            if (snapshot != null) {
+                // Feed is down or slow: an old value still beats an empty component
+                stats.staleServes.increment();
+                return snapshot;
+            }
+            throw new SnapshotUnavailableException(name, key, e);
+        }
+    }
+
+    /**
+     * Starts a load for the key if a read would have to wait for one (nothing
+     * cached, or older than the max stale age), without waiting for it.
+     */
+    public void prefetch(String key) {
+        Snapshot<V> snapshot = snapshots.get(key);
+        if (snapshot == null || snapshot.getAgeMillis() >= maxStaleMillis) {
+            load(key);
+        }
+    }
+
+    public void addListener(SnapshotListener<V> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(SnapshotListener<V> listener) {
+        listeners.remove(listener);
+    }
+
+    /** Returns the current snapshot without loading or counting a read. */
+    public Snapshot<V> peek(String key) {
+        return snapshots.get(key);
+    }
+
+    /** Copy of every current snapshot, for checkpointing. */
+    public Map<String, Snapshot<V>> getSnapshots() {
+        return new HashMap<>(snapshots);
+    }
+
+    /**
+     * Seeds a key from a checkpoint with its original load time. Until its first
+     * reload completes it is served stale whatever its age, and the next tick
+     * reloads it in the background. Keys already loaded are left alone.
+     */
+    public void restore(String key, V value, long loadedAt) {
+        if (snapshots.putIfAbsent(key, new Snapshot<>(value, loadedAt, versions.incrementAndGet())) == null) {
+            keys.computeIfAbsent(key, k -> new KeyStats()).lastAccess = System.currentTimeMillis();
+            restored.add(key);
+        }
+    }
+
+    /**
+     * Driven by the owner's scheduler: reloads every key whose snapshot is older than
+     * its refresh interval and drops keys nobody has read for the idle period.
+     */
+    public void tick() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, KeyStats> entry : keys.entrySet()) {
+            String key = entry.getKey();
+            KeyStats stats = entry.getValue();
+            if (now - stats.lastAccess > idleEvictMillis) {
+                keys.remove(key, stats);
+                snapshots.remove(key);
+                restored.remove(key);
+                continue;
+            }
+            Snapshot<V> snapshot = snapshots.get(key);
+            if (snapshot == null || now - snapshot.getLoadedAt() >= stats.refreshMillis(refreshMillis)) {
+                load(key);
+            }
+        }
+    }
+
+    public List<SnapshotStats> getStats() {
+        List<SnapshotStats> result = new ArrayList<>(keys.size());
+        for (Map.Entry<String, KeyStats> entry : keys.entrySet()) {
+            KeyStats stats = entry.getValue();
+            Snapshot<V> snapshot = snapshots.get(entry.getKey());
+            result.add(new SnapshotStats(entry.getKey(), stats.hits.sum(), stats.misses.sum(),
+                    stats.staleServes.sum(), stats.failures.sum(), snapshot != null ? snapshot.getAgeMillis() : -1));
+        }
+        return result;
+    }
+
+    private CompletableFuture<Snapshot<V>> load(String key) {
+        CompletableFuture<Snapshot<V>> existing = inFlight.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        CompletableFuture<Snapshot<V>> future = new CompletableFuture<>();
+        existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            return existing;
+        }
+        CompletableFuture<V> value;
+        try {
+            value = loader.load(key);
+        } catch (RuntimeException e) {
+            // e.g. RejectedExecutionException while the component is shutting down
+            value = CompletableFuture.failedFuture(e);
+        }
+        value.whenComplete((loaded, error) -> complete(key, future, loaded, error));
+        return future;
+    }
+
+    private void complete(String key, CompletableFuture<Snapshot<V>> future, V value, Throwable error) {
+        try {
+            if (error == null && value == null) {
+                error = new IllegalStateException("Loader returned no value");
+            }
+            if (error != null) {
+                KeyStats stats = keys.get(key);
+                if (stats != null) {
+                    stats.failures.increment();
+                }
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                if (cause instanceof CallFailedException && ((CallFailedException) cause).isRejected()) {
+                    // Open circuit or full bulkhead: the upstream was not called, the last snapshot is served
+                    LOG.debug("Skipped {} snapshot load for {}: {}", name, key, cause.getMessage());
+                } else {
+                    LOG.warn("Failed to load {} snapshot for {}", name, key, error);
+                }
+                future.completeExceptionally(error);
+                return;
+            }
+            Snapshot<V> snapshot = new Snapshot<>(value, System.currentTimeMillis(), versions.incrementAndGet());
+            Snapshot<V> previous = snapshots.put(key, snapshot);
+            restored.remove(key);
+            future.complete(snapshot);
+            for (SnapshotListener<V> listener : listeners) {
+                try {
+                    listener.onSnapshot(key, previous, snapshot);
+                } catch (RuntimeException e) {
+                    LOG.warn("{} snapshot listener failed for {}", name, key, e);
+                }
+            }
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    private interface AsyncLoader<V> {
+        CompletableFuture<V> load(String key);
+    }
+
+    private static final class KeyStats {
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final LongAdder staleServes = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        // Smallest interval any caller asked for; 0 means "use the store default"
+        final AtomicLong requestedRefresh = new AtomicLong(Long.MAX_VALUE);
+        volatile long lastAccess;
+
+        void touch(long now, long requested) {
+            lastAccess = now;
+            if (requested > 0 && requested < requestedRefresh.get()) {
+                requestedRefresh.accumulateAndGet(requested, Math::min);
+            }
+        }
+
+        long refreshMillis(long defaultMillis) {
+            long requested = requestedRefresh.get();
+            return requested != Long.MAX_VALUE ? requested : defaultMillis;
+        }
+    }
+}
+
+// CoalescingStats.java
+package com.test.aem.core.services.cache;
+
+public final class CoalescingStats {
+
+    private final long batches;
+    private final long requestedKeys;
+    private final long upstreamKeys;
+    private final int maxBatchSize;
+
+    public CoalescingStats(long batches, long requestedKeys, long upstreamKeys, int maxBatchSize) {
+        this.batches = batches;
+        this.requestedKeys = requestedKeys;
+        this.upstreamKeys = upstreamKeys;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public long getBatches() { return batches; }
+    public long getRequestedKeys() { return requestedKeys; }
+    public long getUpstreamKeys() { return upstreamKeys; }
+    public int getMaxBatchSize() { return maxBatchSize; }
+
+    public double getAverageBatchSize() {
+        return batches > 0 ? (double) upstreamKeys / batches : 0;
+    }
+
+    /** Keys asked for per key sent upstream; 1.0 means nothing was coalesced. */
+    public double getCoalescingRatio() {
+        return upstreamKeys > 0 ? (double) requestedKeys / upstreamKeys : 0;
+    }
+}
+
+// BatchCoalescer.java
+package com.test.aem.core.services.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Collects single-key requests for a short window and sends them upstream as
+ * one batch. A key already waiting in a batch or in flight is not sent again.
+ */
+public final class BatchCoalescer<V> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchCoalescer.class);
+
+    private final String name;
+    private final Function<List<String>, Map<String, V>> upstream;
+    private final ScheduledExecutorService scheduler;
+    private final Executor executor;
+
+    private final Object lock = new Object();
+    private Batch<V> open; // guarded by lock
+    private final ConcurrentMap<String, CompletableFuture<V>> pending = new ConcurrentHashMap<>();
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder requestedKeys = new LongAdder();
+    private final LongAdder upstreamKeys = new LongAdder();
+    private final AtomicInteger maxBatchSize = new AtomicInteger();
+
+    private volatile long windowMillis = 5;
+    private volatile int batchLimit = 50;
+
+    public BatchCoalescer(String name, Function<List<String>, Map<String, V>> upstream,
+                          ScheduledExecutorService scheduler, Executor executor) {
+        this.name = name;
+        this.upstream = upstream;
+        this.scheduler = scheduler;
+        this.executor = executor;
+    }
+
+    public void configure(long windowMillis, int batchLimit) {
+        this.windowMillis = windowMillis;
+        this.batchLimit = Math.max(1, batchLimit);
+    }
+
+    public CompletableFuture<V> request(String key) {
+        requestedKeys.increment();
+        CompletableFuture<V> existing = pending.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        Batch<V> full = null;
+        CompletableFuture<V> future;
+        synchronized (lock) {
+            existing = pending.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            if (open == null) {
+                Batch<V> batch = new Batch<>();
+                // Scheduled before it is opened: a rejected flush throws here, with no future left waiting
+                scheduler.schedule(() -> flush(batch), windowMillis, TimeUnit.MILLISECONDS);
+                open = batch;
+            }
+            future = new CompletableFuture<>();
+            open.futures.put(key, future);
+            pending.put(key, future);
+            if (open.futures.size() >= batchLimit) {
+                full = open;
+                open = null;
+            }
+        }
+        if (full != null) {
+            dispatch(full);
+        }
+        return future;
+    }
+
+    public CoalescingStats getStats() {
+        return new CoalescingStats(batches.sum(), requestedKeys.sum(), upstreamKeys.sum(), maxBatchSize.get());
+    }
+
+    private void flush(Batch<V> batch) {
+        synchronized (lock) {
+            if (open != batch) {
+                return; // already sent because it reached the batch limit
+            }
+            open = null;
+        }
+        // Keep the scheduler thread free for other windows while upstream is called
+        dispatch(batch);
+    }
+
+    private void dispatch(Batch<V> batch) {
+        try {
+            executor.execute(() -> send(batch));
+        } catch (RejectedExecutionException e) {
+            // Shutting down or saturated: fail the waiting readers now instead of leaving them to time out
+            LOG.debug("Could not send {} batch of {} keys", name, batch.futures.size(), e);
+            fail(batch, e);
+        }
+    }
+
+    private void fail(Batch<V> batch, Throwable error) {
+        for (Map.Entry<String, CompletableFuture<V>> entry : batch.futures.entrySet()) {
+            entry.getValue().completeExceptionally(error);
+            pending.remove(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void send(Batch<V> batch) {
+        List<String> keys = new ArrayList<>(batch.futures.keySet());
+        batches.increment();
+        upstreamKeys.add(keys.size());
+        maxBatchSize.accumulateAndGet(keys.size(), Math::max);
+        LOG.debug("Sending {} batch of {} keys", name, keys.size());
+        try {
+            Map<String, V> results = upstream.apply(keys);
+            for (Map.Entry<String, CompletableFuture<V>> entry : batch.futures.entrySet()) {
+                V value = results != null ? results.get(entry.getKey()) : null;
+                if (value != null) {
+                    entry.getValue().complete(value);
+                } else {
+                    entry.getValue().completeExceptionally(
+                            new IllegalStateException("No " + name + " result for " + entry.getKey()));
+                }
+            }
+        } catch (RuntimeException e) {
+            for (CompletableFuture<V> future : batch.futures.values()) {
+                future.completeExceptionally(e);
+            }
+        } finally {
+            for (Map.Entry<String, CompletableFuture<V>> entry : batch.futures.entrySet()) {
+                pending.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private static final class Batch<V> {
+        final Map<String, CompletableFuture<V>> futures = new LinkedHashMap<>();
+    }
+}
+
+// MarketSummaryRequestScope.java
+package com.test.aem.core.services.cache;
+
+import com.test.aem.core.beans.MarketSummary;
+import javax.servlet.ServletRequest;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Summaries resolved during one render, kept as a request attribute. Components
+ * asking for overlapping index lists share one lookup and see the same values.
+ */
+public final class MarketSummaryRequestScope {
+
+    private static final String ATTRIBUTE = MarketSummaryRequestScope.class.getName();
+
+    // Models of one request may resolve from parallel threads
+    private final ConcurrentMap<String, MarketSummary> resolved = new ConcurrentHashMap<>();
+    // Codes the loader had no summary for; not asked again during this render
+    private final Set<String> unavailable = ConcurrentHashMap.newKeySet();
+
+    public static MarketSummaryRequestScope get(ServletRequest request) {
+        MarketSummaryRequestScope scope = (MarketSummaryRequestScope) request.getAttribute(ATTRIBUTE);
+        if (scope == null) {
+            scope = new MarketSummaryRequestScope();
+            request.setAttribute(ATTRIBUTE, scope);
+        }
+        return scope;
+    }
+
+    /** Summaries in the order of the codes; codes without a summary are left out. */
+    public List<MarketSummary> resolve(List<String> indexCodes, Function<List<String>, List<MarketSummary>> loader) {
+        List<String> missing = new ArrayList<>();
+        for (String code : new LinkedHashSet<>(indexCodes)) {
+            if (!resolved.containsKey(code) && !unavailable.contains(code)) {
+                missing.add(code);
+            }
+        }
+        if (!missing.isEmpty()) {
+            // Matched by index code: the loader skips codes it has nothing for
+            for (MarketSummary summary : loader.apply(missing)) {
+                if (summary != null && summary.getIndexCode() != null) {
+                    resolved.put(summary.getIndexCode(), summary);
+                }
+            }
+            for (String code : missing) {
+                if (!resolved.containsKey(code)) {
+                    unavailable.add(code);
+                }
+            }
+        }
+        List<MarketSummary> result = new ArrayList<>(indexCodes.size());
+        for (String code : indexCodes) {
+            MarketSummary summary = resolved.get(code);
+            if (summary != null) {
+                result.add(summary);
+            }
+        }
+        return result;
+    }
+}
+
+// SortedSummaryView.java
+package com.test.aem.core.services.cache;
+
+import com.test.aem.core.beans.MarketSummary;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * A list of market summaries with the order for every supported sortBy key
+ * computed once, so components pick a view instead of sorting per request.
+ * The ordering is not defined here: each view is what the given sorter
+ * (MarketDataService.sortMarketData) returns for that key.
+ */
+public final class SortedSummaryView {
+
+    public static final String[] SORT_KEYS = {"name", "value", "change", "volume"};
+
+    private final List<MarketSummary> source;
+    private final Map<String, List<MarketSummary>> views;
+
+    private SortedSummaryView(List<MarketSummary> source, Map<String, List<MarketSummary>> views) {
+        this.source = source;
+        this.views = views;
+    }
+
+    public static SortedSummaryView of(List<MarketSummary> summaries,
+                                       BiFunction<List<MarketSummary>, String, List<MarketSummary>> sorter) {
+        List<MarketSummary> source = Collections.unmodifiableList(new ArrayList<>(summaries));
+        Map<String, List<MarketSummary>> views = new HashMap<>(8);
+        for (String key : SORT_KEYS) {
+            // The sorter gets its own copy, since it may sort in place; the view is shared, so it is copied back
+            List<MarketSummary> sorted = sorter.apply(new ArrayList<>(source), key);
+            views.put(key, sorted != null ? Collections.unmodifiableList(new ArrayList<>(sorted)) : source);
+        }
+        return new SortedSummaryView(source, views);
+    }
+
+    /** Unknown keys keep the order the summaries were requested in. */
+    public List<MarketSummary> sortedBy(String sortBy) {
+        List<MarketSummary> view = sortBy != null ? views.get(sortBy) : null;
+        return view != null ? view : source;
+    }
+
+    /** True when this view was built from exactly these summary instances. */
+    public boolean isViewOf(List<MarketSummary> summaries) {
+        if (summaries.size() != source.size()) {
+            return false;
+        }
+        for (int i = 0; i < summaries.size(); i++) {
+            if (summaries.get(i) != source.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
+
+// PriceSeries.java
+package com.test.aem.core.services.cache;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Append-only columnar OHLCV series; only the last bar can be replaced. A single
+ * writer appends under the instance lock; readers take an immutable {@link Slice}
+ * and never block. Slots past a slice's end may be written later but are never
+ * read through it.
+ */
+public final class PriceSeries {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private volatile State state = new State(new long[INITIAL_CAPACITY], new double[INITIAL_CAPACITY],
+            new double[INITIAL_CAPACITY], new double[INITIAL_CAPACITY], new double[INITIAL_CAPACITY],
+            new long[INITIAL_CAPACITY], 0);
+
+    /**
+     * Appends a bar. A bar with the last bar's timestamp replaces it, so the
+     * in-progress bar keeps updating; older bars are ignored.
+     */
+    public synchronized boolean append(long timestamp, double open, double high, double low, double close, long volume) {
+        State current = state;
+        int size = current.size;
+        if (size > 0 && timestamp == current.timestamps[size - 1]) {
+            return replaceLast(current, open, high, low, close, volume);
+        }
+        if (size > 0 && timestamp < current.timestamps[size - 1]) {
+            return false;
+        }
+        State target = size < current.timestamps.length ? current : current.copy(0, size, size * 2);
+        target.timestamps[size] = timestamp;
+        target.open[size] = open;
+        target.high[size] = high;
+        target.low[size] = low;
+        target.close[size] = close;
+        target.volume[size] = volume;
+        state = target.withSize(size + 1);
+        return true;
+    }
+
+    // The slot is visible through existing slices, so the bar is written to a copy, never in place
+    private boolean replaceLast(State current, double open, double high, double low, double close, long volume) {
+        int last = current.size - 1;
+        if (current.open[last] == open && current.high[last] == high && current.low[last] == low
+                && current.close[last] == close && current.volume[last] == volume) {
+            return false;
+        }
+        State target = current.copy(0, current.size, current.timestamps.length);
+        target.open[last] = open;
+        target.high[last] = high;
+        target.low[last] = low;
+        target.close[last] = close;
+        target.volume[last] = volume;
+        state = target;
+        return true;
+    }
+
+    /** Drops every bar older than the timestamp. */
+    public synchronized void retainFrom(long timestamp) {
+        State current = state;
+        int from = current.indexOf(timestamp);
+        if (from > 0) {
+            int remaining = current.size - from;
+            state = current.copy(from, remaining, Math.max(INITIAL_CAPACITY, remaining * 2));
+        }
+    }
+
+    public Slice slice(long fromInclusive) {
+        State current = state;
+        return new Slice(current, current.indexOf(fromInclusive), current.size);
+    }
+
+    public Slice all() {
+        State current = state;
+        return new Slice(current, 0, current.size);
+    }
+
+    public int size() {
+        return state.size;
+    }
+
+    public void writeTo(CheckpointFile.Output out) throws IOException {
+        Slice slice = all();
+        out.writeInt(slice.size());
+        for (int i = 0; i < slice.size(); i++) {
+            out.writeLong(slice.timestamp(i));
+            out.writeDouble(slice.open(i));
+            out.writeDouble(slice.high(i));
+            out.writeDouble(slice.low(i));
+            out.writeDouble(slice.close(i));
+            out.writeLong(slice.volume(i));
+        }
+    }
+
+    public void readFrom(CheckpointFile.Input in) {
+        int bars = in.readInt();
+        for (int i = 0; i < bars; i++) {
+            append(in.readLong(), in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble(), in.readLong());
+        }
+    }
+
+    public static final class Slice {
+
+        private final State state;
+        private final int from;
+        private final int to;
+
+        Slice(State state, int from, int to) {
+            this.state = state;
+            this.from = from;
+            this.to = to;
+        }
+
+        public int size() { return to - from; }
+        public long timestamp(int i) { return state.timestamps[from + i]; }
+        public double open(int i) { return state.open[from + i]; }
+        public double high(int i) { return state.high[from + i]; }
+        public double low(int i) { return state.low[from + i]; }
+        public double close(int i) { return state.close[from + i]; }
+        public long volume(int i) { return state.volume[from + i]; }
+    }
+
+    private static final class State {
+        final long[] timestamps;
+        final double[] open;
+        final double[] high;
+        final double[] low;
+        final double[] close;
+        final long[] volume;
+        final int size;
+
+        State(long[] timestamps, double[] open, double[] high, double[] low, double[] close, long[] volume, int size) {
+            this.timestamps = timestamps;
+            this.open = open;
+            this.high = high;
+            this.low = low;
+            this.close = close;
+            this.volume = volume;
+            this.size = size;
+        }
+
+        State withSize(int newSize) {
+            return new State(timestamps, open, high, low, close, volume, newSize);
+        }
+
+        State copy(int from, int length, int capacity) {
+            return new State(
+                    Arrays.copyOfRange(timestamps, from, from + capacity),
+                    Arrays.copyOfRange(open, from, from + capacity),
+                    Arrays.copyOfRange(high, from, from + capacity),
+                    Arrays.copyOfRange(low, from, from + capacity),
+                    Arrays.copyOfRange(close, from, from + capacity),
+                    Arrays.copyOfRange(volume, from, from + capacity),
+                    length);
+        }
+
+        // First index with timestamp >= the given one
+        int indexOf(long timestamp) {
+            int index = Arrays.binarySearch(timestamps, 0, size, timestamp);
+            return index >= 0 ? index : -index - 1;
+        }
+    }
+}
+
+// ChartSeriesStore.java
+package com.test.aem.core.services.cache;
+
+import com.test.aem.core.beans.ChartData;
+import com.test.aem.core.beans.ChartPoint;
+import com.test.aem.core.beans.CompactIndexSnapshot;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * Local price history per index, from which every chart timeframe is cut.
+ * Each index is loaded once (5D intraday bars plus 5Y daily bars) and then
+ * kept current by appending the newest 1D bars, instead of fetching each of
+ * the seven timeframes separately.
+ */
+public final class ChartSeriesStore {
+
+    private static final int INTRADAY_DAYS = 5;
+    private static final long ONE_DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+    // A restored series is only usable if a 5D fetch can still fill the gap since it was written
+    private static final long MAX_RESTORE_GAP_MILLIS = TimeUnit.DAYS.toMillis(INTRADAY_DAYS);
+
+    private final BiFunction<String, String, ChartData> fetcher;
+    private final ConcurrentMap<String, IndexSeries> series = new ConcurrentHashMap<>();
+
+    private volatile long syncMillis = 60000;
+
+    public ChartSeriesStore(BiFunction<String, String, ChartData> fetcher) {
+        this.fetcher = fetcher;
+    }
+
+    public void configure(long syncMillis) {
+        this.syncMillis = syncMillis;
+    }
+
+    public ChartData view(String indexCode, String period) {
+        return cut(indexCode, period, sync(indexCode));
+    }
+
+    /** Cuts a timeframe from the local history without syncing; null when the index was never loaded. */
+    public ChartData peek(String indexCode, String period) {
+        IndexSeries indexSeries = series.get(indexCode);
+        return indexSeries != null && indexSeries.loaded ? cut(indexCode, period, indexSeries) : null;
+    }
+
+    public void remove(String indexCode) {
+        series.remove(indexCode);
+    }
+
+    /** Writes every loaded history with its last sync time. */
+    public void writeTo(CheckpointFile.Output out) throws IOException {
+        List<Map.Entry<String, IndexSeries>> loaded = new ArrayList<>();
+        for (Map.Entry<String, IndexSeries> entry : series.entrySet()) {
+            if (entry.getValue().loaded) {
+                loaded.add(entry);
+            }
+        }
+        out.writeInt(loaded.size());
+        for (Map.Entry<String, IndexSeries> entry : loaded) {
+            IndexSeries indexSeries = entry.getValue();
+            out.writeString(entry.getKey());
+            out.writeLong(indexSeries.lastSync);
+            indexSeries.intraday.writeTo(out);
+            indexSeries.daily.writeTo(out);
+        }
+    }
+
+    /**
+     * Restores histories written by {@link #writeTo}. They sync once older than the
+     * sync interval and then only fetch the bars missed since the checkpoint,
+     * instead of 5D plus 5Y. Returns the number of indices restored.
+     */
+    public int readFrom(CheckpointFile.Input in) {
+        long now = System.currentTimeMillis();
+        int count = in.readInt();
+        int restored = 0;
+        for (int i = 0; i < count; i++) {
+            String indexCode = in.readString();
+            IndexSeries indexSeries = new IndexSeries();
+            indexSeries.lastSync = in.readLong();
+            indexSeries.intraday.readFrom(in);
+            indexSeries.daily.readFrom(in);
+            indexSeries.loaded = true;
+            if (now - indexSeries.lastSync <= MAX_RESTORE_GAP_MILLIS && series.putIfAbsent(indexCode, indexSeries) == null) {
+                restored++;
+            }
+        }
+        return restored;
+    }
+
+    private static ChartData cut(String indexCode, String period, IndexSeries indexSeries) {
+        List<ChartPoint> points;
+        switch (period) {
+            case "1D":
+                points = toPoints(indexSeries.intraday.slice(tradingDayStart(indexSeries.intraday, 1)), null);
+                break;
+            case "5D":
+                points = toPoints(indexSeries.intraday.slice(tradingDayStart(indexSeries.intraday, INTRADAY_DAYS)), null);
+                break;
+            default:
+                points = toPoints(indexSeries.daily.slice(periodStart(indexSeries, period)), today(indexSeries.intraday));
+                break;
+        }
+        return new ChartData(indexCode, period, points);
+    }
+
+    private IndexSeries sync(String indexCode) {
+        IndexSeries indexSeries = series.computeIfAbsent(indexCode, code -> new IndexSeries());
+        if (System.currentTimeMillis() - indexSeries.lastSync < syncMillis) {
+            return indexSeries;
+        }
+        synchronized (indexSeries) {
+            if (System.currentTimeMillis() - indexSeries.lastSync < syncMillis) {
+                return indexSeries;
+            }
+            if (!indexSeries.loaded) {
+                appendAll(indexSeries.intraday, fetcher.apply(indexCode, "5D"));
+                // Today's daily bar is always derived from intraday bars
+                long todayStart = tradingDayStart(indexSeries.intraday, 1);
+                ChartData history = fetcher.apply(indexCode, "5Y");
+                if (history != null && history.getPoints() != null) {
+                    for (ChartPoint point : history.getPoints()) {
+                        if (indexSeries.intraday.size() == 0 || point.getTimestamp() < todayStart) {
+                            append(indexSeries.daily, point);
+                        }
+                    }
+                }
+                indexSeries.loaded = true;
+            } else {
+                // After a restart or a quiet spell the gap may span days; older bars are skipped on append
+                // and the in-progress bar, re-sent with the same timestamp, replaces the one held
+                boolean gap = System.currentTimeMillis() - indexSeries.lastSync > ONE_DAY_MILLIS;
+                appendAll(indexSeries.intraday, fetcher.apply(indexCode, gap ? "5D" : "1D"));
+                rollOver(indexSeries);
+            }
+            indexSeries.lastSync = System.currentTimeMillis();
+        }
+        return indexSeries;
+    }
+
+    // Closes finished trading days into daily bars and trims intraday history
+    private static void rollOver(IndexSeries indexSeries) {
+        PriceSeries.Slice intraday = indexSeries.intraday.all();
+        if (intraday.size() == 0) {
+            return;
+        }
+        LocalDate latestDay = tradingDay(intraday.timestamp(intraday.size() - 1));
+        int dayStart = 0;
+        for (int i = 1; i <= intraday.size(); i++) {
+            if (i == intraday.size() || !tradingDay(intraday.timestamp(i)).equals(tradingDay(intraday.timestamp(dayStart)))) {
+                if (tradingDay(intraday.timestamp(dayStart)).isBefore(latestDay)) {
+                    ChartPoint bar = aggregate(intraday, dayStart, i);
+                    append(indexSeries.daily, bar); // replaces the day's bar when it is the last one held
+                }
+                dayStart = i;
+            }
+        }
+        indexSeries.intraday.retainFrom(tradingDayStart(indexSeries.intraday, INTRADAY_DAYS));
+    }
+
+    private static long periodStart(IndexSeries indexSeries, String period) {
+        PriceSeries.Slice daily = indexSeries.daily.all();
+        long latest = indexSeries.intraday.size() > 0
+                ? indexSeries.intraday.all().timestamp(indexSeries.intraday.size() - 1)
+                : daily.size() > 0 ? daily.timestamp(daily.size() - 1) : System.currentTimeMillis();
+        ZonedDateTime end = Instant.ofEpochMilli(latest).atZone(CompactIndexSnapshot.MARKET_ZONE);
+        ZonedDateTime start;
+        switch (period) {
+            case "3M": start = end.minusMonths(3); break;
+            case "6M": start = end.minusMonths(6); break;
+            case "1Y": start = end.minusYears(1); break;
+            case "5Y": start = end.minusYears(5); break;
+            default: start = end.minusMonths(1); break;
+        }
+        return start.toInstant().toEpochMilli();
+    }
+
+    // Start of the n-th most recent trading day present in the series
+    private static long tradingDayStart(PriceSeries series, int days) {
+        PriceSeries.Slice all = series.all();
+        if (all.size() == 0) {
+            return Long.MIN_VALUE;
+        }
+        LocalDate day = tradingDay(all.timestamp(all.size() - 1));
+        int seen = 1;
+        for (int i = all.size() - 2; i >= 0; i--) {
+            LocalDate current = tradingDay(all.timestamp(i));
+            if (!current.equals(day)) {
+                if (seen == days) {
+                    break;
+                }
+                day = current;
+                seen++;
+            }
+        }
+        return day.atStartOfDay(CompactIndexSnapshot.MARKET_ZONE).toInstant().toEpochMilli();
+    }
+
+    private static ChartPoint today(PriceSeries intraday) {
+        PriceSeries.Slice slice = intraday.slice(tradingDayStart(intraday, 1));
+        return slice.size() > 0 ? aggregate(slice, 0, slice.size()) : null;
+    }
+
+    private static ChartPoint aggregate(PriceSeries.Slice slice, int from, int to) {
+        double high = slice.high(from);
+        double low = slice.low(from);
+        long volume = 0;
+        for (int i = from; i < to; i++) {
+            high = Math.max(high, slice.high(i));
+            low = Math.min(low, slice.low(i));
+            volume += slice.volume(i);
+        }
+        long dayStart = tradingDay(slice.timestamp(from))
+                .atStartOfDay(CompactIndexSnapshot.MARKET_ZONE).toInstant().toEpochMilli();
+        return new ChartPoint(dayStart, slice.open(from), high, low, slice.close(to - 1), volume);
+    }
+
+    private static List<ChartPoint> toPoints(PriceSeries.Slice slice, ChartPoint tail) {
+        List<ChartPoint> points = new ArrayList<>(slice.size() + 1);
+        for (int i = 0; i < slice.size(); i++) {
+            points.add(new ChartPoint(slice.timestamp(i), slice.open(i), slice.high(i), slice.low(i),
+                    slice.close(i), slice.volume(i)));
+        }
+        if (tail != null) {
+            points.add(tail);
+        }
+        return Collections.unmodifiableList(points);
+    }
+
+    private static void appendAll(PriceSeries target, ChartData data) {
+        if (data != null && data.getPoints() != null) {
+            for (ChartPoint point : data.getPoints()) {
+                append(target, point);
+            }
+        }
+    }
+
+    private static void append(PriceSeries target, ChartPoint point) {
+        target.append(point.getTimestamp(), point.getOpen(), point.getHigh(), point.getLow(),
+                point.getClose(), point.getVolume());
+    }
+
+    private static LocalDate tradingDay(long timestamp) {
+        return Instant.ofEpochMilli(timestamp).atZone(CompactIndexSnapshot.MARKET_ZONE).toLocalDate();
+    }
+
+    private static final class IndexSeries {
+        final PriceSeries intraday = new PriceSeries();
+        final PriceSeries daily = new PriceSeries();
+        volatile boolean loaded;
+        volatile long lastSync = Long.MIN_VALUE / 2;
+    }
+}
+
+// ChartDownsampler.java
+package com.test.aem.core.services.cache;
+
+import com.test.aem.core.beans.ChartPoint;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reduces chart series to roughly what the chart can draw: Largest-Triangle-
+ * Three-Buckets on close prices for line and area charts, OHLC bucket
+ * aggregation for candlesticks.
+ */
+public final class ChartDownsampler {
+
+    public static final int DEFAULT_WIDTH_PX = 1200;
+    private static final int MIN_POINTS = 50;
+    private static final int LINE_PX_PER_POINT = 2;
+    private static final int CANDLE_PX_PER_POINT = 6;
+
+    private ChartDownsampler() {}
+
+    /** Point budget for a chart of the given pixel width ("800px", "800" or null for the default). */
+    public static int targetPoints(String width, String chartType) {
+        int widthPx = DEFAULT_WIDTH_PX;
+        if (width != null) {
+            try {
+                widthPx = Integer.parseInt(width.trim().replace("px", ""));
+            } catch (NumberFormatException e) {
+                // percentages and other units fall back to the default width
+            }
+        }
+        int pxPerPoint = "candlestick".equals(chartType) ? CANDLE_PX_PER_POINT : LINE_PX_PER_POINT;
+        return Math.max(MIN_POINTS, widthPx / pxPerPoint);
+    }
+
+    public static List<ChartPoint> downsample(List<ChartPoint> points, String chartType, int targetPoints) {
+        if (points == null || points.size() <= targetPoints) {
+            return points;
+        }
+        return "candlestick".equals(chartType) ? ohlcBuckets(points, targetPoints) : lttb(points, targetPoints);
+    }
+
+    static List<ChartPoint> lttb(List<ChartPoint> points, int threshold) {
+        int n = points.size();
+        if (threshold < 3 || n <= threshold) {
+            return points;
+        }
+        List<ChartPoint> sampled = new ArrayList<>(threshold);
+        double bucketSize = (double) (n - 2) / (threshold - 2);
+        int selected = 0;
+        sampled.add(points.get(0));
+
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            // Average of the next bucket is the third triangle vertex
+            int nextStart = (int) Math.floor((bucket + 1) * bucketSize) + 1;
+            int nextEnd = Math.min((int) Math.floor((bucket + 2) * bucketSize) + 1, n);
+            double avgX = 0;
+            double avgY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                avgX += points.get(i).getTimestamp();
+                avgY += points.get(i).getClose();
+            }
+            int nextCount = Math.max(1, nextEnd - nextStart);
+            avgX /= nextCount;
+            avgY /= nextCount;
+
+            int start = (int) Math.floor(bucket * bucketSize) + 1;
+            int end = (int) Math.floor((bucket + 1) * bucketSize) + 1;
+            double ax = points.get(selected).getTimestamp();
+            double ay = points.get(selected).getClose();
+            double maxArea = -1;
+            int maxIndex = start;
+            for (int i = start; i < end; i++) {
+                double area = Math.abs((ax - avgX) * (points.get(i).getClose() - ay)
+                        - (ax - points.get(i).getTimestamp()) * (avgY - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    maxIndex = i;
+                }
+            }
+            sampled.add(points.get(maxIndex));
+            selected = maxIndex;
+        }
+
+        sampled.add(points.get(n - 1));
+        return Collections.unmodifiableList(sampled);
+    }
+
+    static List<ChartPoint> ohlcBuckets(List<ChartPoint> points, int buckets) {
+        int n = points.size();
+        int perBucket = (n + buckets - 1) / buckets;
+        List<ChartPoint> aggregated = new ArrayList<>(buckets);
+        for (int start = 0; start < n; start += perBucket) {
+            int end = Math.min(start + perBucket, n);
+            ChartPoint first = points.get(start);
+            double high = first.getHigh();
+            double low = first.getLow();
+            long volume = 0;
+            for (int i = start; i < end; i++) {
+                high = Math.max(high, points.get(i).getHigh());
+                low = Math.min(low, points.get(i).getLow());
+                volume += points.get(i).getVolume();
+            }
+            aggregated.add(new ChartPoint(first.getTimestamp(), first.getOpen(), high, low,
+                    points.get(end - 1).getClose(), volume));
+        }
+        return Collections.unmodifiableList(aggregated);
+    }
+}
+
+// NewsWindow.java
+package com.test.aem.core.services.cache;
+
+import com.test.aem.core.beans.CompactIndexSnapshot;
+import com.test.aem.core.beans.FormattedNewsItem;
+import com.test.aem.core.beans.NewsItem;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Newest-first, bounded list of news for one (category, language). Any
+ * maxItems is served as a prefix; dates are formatted once per pattern.
+ */
+public final class NewsWindow {
+
+    private static final DateTimeFormatter ISO_DATE = DateTimeFormatter.ISO_LOCAL_DATE;
+
+    private final List<NewsItem> items;
+    private final ConcurrentMap<String, List<FormattedNewsItem>> formatted = new ConcurrentHashMap<>();
+
+    private NewsWindow(List<NewsItem> items) {
+        this.items = items;
+    }
+
+    public static NewsWindow of(List<NewsItem> news) {
+        List<NewsItem> sorted = new ArrayList<>(news != null ? news : Collections.emptyList());
+        sorted.sort(Comparator.comparing(NewsItem::getPublishDate, Comparator.nullsLast(Comparator.reverseOrder())));
+        return new NewsWindow(Collections.unmodifiableList(sorted));
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    public List<NewsItem> prefix(int maxItems) {
+        return items.subList(0, Math.min(maxItems, items.size()));
+    }
+
+    /** @throws IllegalArgumentException if the pattern is not a valid date pattern */
+    public List<FormattedNewsItem> prefix(int maxItems, String pattern, Locale locale) {
+        List<FormattedNewsItem> all = formatted.computeIfAbsent(pattern + '|' + locale, key -> format(pattern, locale));
+        return all.subList(0, Math.min(maxItems, all.size()));
+    }
+
+    private List<FormattedNewsItem> format(String pattern, Locale locale) {
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern(pattern, locale).withZone(CompactIndexSnapshot.MARKET_ZONE);
+        List<FormattedNewsItem> result = new ArrayList<>(items.size());
+        for (NewsItem item : items) {
+            Date date = item.getPublishDate();
+            result.add(new FormattedNewsItem(item,
+                    date != null ? formatter.format(date.toInstant()) : null,
+                    date != null ? ISO_DATE.format(date.toInstant().atZone(CompactIndexSnapshot.MARKET_ZONE)) : null));
+        }
+        return Collections.unmodifiableList(result);
+    }
+}
+
+// CheckpointFile.java
+package com.test.aem.core.services.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Local binary checkpoint of an in-memory cache, read back on activation so a
+ * restarted node starts warm. Layout: magic, format version, owner schema,
+ * written-at millis, body length, CRC32 of the body, body. Files are mapped in
+ * both directions and replaced atomically, so a crash mid-write leaves the
+ * previous checkpoint in place.
+ */
+public final class CheckpointFile {
+
+    private static final int MAGIC = 0x48534943; // "HSIC"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 4 + 8 + 4 + 8;
+
+    private CheckpointFile() {
+    }
+
+    /** @param schema version of the owner's body encoding; files with another schema are not read */
+    public static void write(Path path, int schema, Body body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+        body.write(new Output(new DataOutputStream(bytes)));
+        byte[] data = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(data);
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + data.length);
+            buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(schema).putLong(System.currentTimeMillis())
+                    .putInt(data.length).putLong(crc.getValue()).put(data);
+            buffer.force();
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the body, or null when there is no checkpoint yet
+     * @throws IOException if the file is truncated, from another format or schema, or fails its checksum
+     */
+    public static Input read(Path path, int schema) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES) {
+                throw new IOException("Truncated checkpoint " + path);
+            }
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION || buffer.getInt() != schema) {
+                throw new IOException("Checkpoint " + path + " has another format or schema");
+            }
+            long writtenAt = buffer.getLong();
+            int length = buffer.getInt();
+            long checksum = buffer.getLong();
+            if (length != size - HEADER_BYTES) {
+                throw new IOException("Truncated checkpoint " + path);
+            }
+            ByteBuffer body = buffer.slice();
+            CRC32 crc = new CRC32();
+            crc.update(body.duplicate());
+            if (crc.getValue() != checksum) {
+                throw new IOException("Checksum mismatch in checkpoint " + path);
+            }
+            return new Input(body, writtenAt);
+        }
+    }
+
+    public interface Body {
+        void write(Output out) throws IOException;
+    }
+
+    public static final class Output {
+
+        private final DataOutputStream out;
+
+        Output(DataOutputStream out) {
+            this.out = out;
+        }
+
+        public void writeInt(int value) throws IOException { out.writeInt(value); }
+        public void writeLong(long value) throws IOException { out.writeLong(value); }
+        public void writeDouble(double value) throws IOException { out.writeDouble(value); }
+
+        public void writeString(String value) throws IOException {
+            if (value == null) {
+                out.writeInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /** Reads are unchecked: a checksummed body that does not decode is a bug in the owner's encoding. */
+    public static final class Input {
+
+        private final ByteBuffer buffer;
+        private final long writtenAt;
+
+        Input(ByteBuffer buffer, long writtenAt) {
+            this.buffer = buffer;
+            this.writtenAt = writtenAt;
+        }
+
+        public long getWrittenAt() { return writtenAt; }
+
+        public int readInt() { return buffer.getInt(); }
+        public long readLong() { return buffer.getLong(); }
+        public double readDouble() { return buffer.getDouble(); }
+
+        public String readString() {
+            int length = buffer.getInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
+
+// CallFailedException.java
+package com.test.aem.core.services.resilience;
+
+/** Thrown by a guarded upstream call; rejected calls never reached the upstream. */
+public class CallFailedException extends RuntimeException {
+
+    public enum Reason { CIRCUIT_OPEN, BULKHEAD_FULL, TIMEOUT, FAILED }
+
+    private final Reason reason;
+
+    public CallFailedException(String name, Reason reason, Throwable cause) {
+        super(name + " call failed: " + reason, cause);
+        this.reason = reason;
+    }
+
+    public Reason getReason() { return reason; }
+
+    public boolean isRejected() {
+        return reason == Reason.CIRCUIT_OPEN || reason == Reason.BULKHEAD_FULL;
+    }
+}
+
+// CircuitBreaker.java
+package com.test.aem.core.services.resilience;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Consecutive-failure circuit breaker. CLOSED lets every call through; after
+ * failureThreshold failures in a row it turns OPEN and rejects without touching
+ * the upstream. Once openMillis have passed, a single probe call is let through
+ * (HALF_OPEN) and its outcome closes or re-opens the circuit.
+ */
+public final class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private static final Logger LOG = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    private final String name;
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final LongAdder[][] transitions = new LongAdder[State.values().length][State.values().length];
+
+    private volatile long openedAt;
+    private volatile long stateSince = System.currentTimeMillis();
+    private volatile int failureThreshold = 5;
+    private volatile long openMillis = 30000;
+
+    public CircuitBreaker(String name) {
+        this.name = name;
+        for (LongAdder[] row : transitions) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] = new LongAdder();
+            }
+        }
+    }
+
+    public void configure(int failureThreshold, long openMillis) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = openMillis;
+    }
+
+    /** True when a call may go upstream. Every permitted call must report onSuccess or onFailure. */
+    public boolean tryAcquire() {
+        State current = state.get();
+        if (current == State.CLOSED) {
+            return true;
+        }
+        // Only the caller that wins the OPEN -> HALF_OPEN transition gets the probe
+        return current == State.OPEN
+                && System.currentTimeMillis() - openedAt >= openMillis
+                && transition(State.OPEN, State.HALF_OPEN);
+    }
+
+    public void onSuccess() {
+        consecutiveFailures.set(0);
+        transition(State.HALF_OPEN, State.CLOSED);
+    }
+
+    public void onFailure() {
+        if (transition(State.HALF_OPEN, State.OPEN)) {
+            return;
+        }
+        if (consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            transition(State.CLOSED, State.OPEN);
+        }
+    }
+
+    public String getName() { return name; }
+    public State getState() { return state.get(); }
+    public long getStateSince() { return stateSince; }
+    public int getConsecutiveFailures() { return consecutiveFailures.get(); }
+
+    /** Count per transition that has happened at least once, keyed "FROM->TO". */
+    public Map<String, Long> getTransitions() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (State from : State.values()) {
+            for (State to : State.values()) {
+                long count = transitions[from.ordinal()][to.ordinal()].sum();
+                if (count > 0) {
+                    counts.put(from + "->" + to, count);
+                }
+            }
+        }
+        return counts;
+    }
+
+    private boolean transition(State from, State to) {
+        long now = System.currentTimeMillis();
+        if (to == State.OPEN) {
+            // Set before the state flips so a concurrent tryAcquire never sees OPEN with an old timestamp
+            openedAt = now;
+        }
+        if (!state.compareAndSet(from, to)) {
+            return false;
+        }
+        stateSince = now;
+        if (to == State.CLOSED) {
+            consecutiveFailures.set(0);
+        }
+        transitions[from.ordinal()][to.ordinal()].increment();
+        if (to == State.HALF_OPEN) {
+            LOG.info("Circuit {} {} -> {}", name, from, to);
+        } else {
+            LOG.warn("Circuit {} {} -> {}", name, from, to);
+        }
+        return true;
+    }
+}
+
+// Bulkhead.java
+package com.test.aem.core.services.resilience;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caps concurrent upstream calls. Never waits: a full bulkhead rejects at once so
+ * the caller can fall back instead of queueing behind a slow feed.
+ */
+public final class Bulkhead {
+
+    private final int maxConcurrent;
+    private final Semaphore permits;
+    private final LongAdder rejected = new LongAdder();
+
+    public Bulkhead(int maxConcurrent) {
+        this.maxConcurrent = maxConcurrent;
+        this.permits = new Semaphore(maxConcurrent);
+    }
+
+    public boolean tryAcquire() {
+        if (permits.tryAcquire()) {
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public int getMaxConcurrent() { return maxConcurrent; }
+    public int getActive() { return maxConcurrent - permits.availablePermits(); }
+    public long getRejected() { return rejected.sum(); }
+}
+
+// ResilienceStats.java
+package com.test.aem.core.services.resilience;
+
+import java.util.Map;
+
+public final class ResilienceStats {
+
+    private final String state;
+    private final long stateAgeMillis;
+    private final Map<String, Long> transitions;
+    private final long calls;
+    private final long successes;
+    private final long failures;
+    private final long timeouts;
+    private final long rejectedOpen;
+    private final long rejectedFull;
+    private final int activeCalls;
+
+    public ResilienceStats(String state, long stateAgeMillis, Map<String, Long> transitions, long calls, long successes,
+                           long failures, long timeouts, long rejectedOpen, long rejectedFull, int activeCalls) {
+        this.state = state;
+        this.stateAgeMillis = stateAgeMillis;
+        this.transitions = transitions;
+        this.calls = calls;
+        this.successes = successes;
+        this.failures = failures;
+        this.timeouts = timeouts;
+        this.rejectedOpen = rejectedOpen;
+        this.rejectedFull = rejectedFull;
+        this.activeCalls = activeCalls;
+    }
+
+    public String getState() { return state; }
+    public long getStateAgeMillis() { return stateAgeMillis; }
+    public Map<String, Long> getTransitions() { return transitions; } // "CLOSED->OPEN" -> count
+    public long getCalls() { return calls; }
+    public long getSuccesses() { return successes; }
+    public long getFailures() { return failures; } // upstream threw, excluding timeouts
+    public long getTimeouts() { return timeouts; }
+    public long getRejectedOpen() { return rejectedOpen; }
+    public long getRejectedFull() { return rejectedFull; }
+    public int getActiveCalls() { return activeCalls; } // includes timed-out calls the upstream has not released
+}
+
+// MarketDataClientMBean.java
+package com.test.aem.core.services.resilience;
+
+/** JMX view of the market data circuit breaker and bulkhead. */
+public interface MarketDataClientMBean {
+
+    String getState();
+
+    String[] getTransitions();
+
+    long getCalls();
+
+    long getTimeouts();
+
+    long getFailures();
+
+    long getRejectedOpen();
+
+    long getRejectedFull();
+
+    int getActiveCalls();
+}
+
+// MarketDataClient.java
+package com.test.aem.core.services;
+
+import com.test.aem.core.beans.ChartData;
+import com.test.aem.core.beans.IndexData;
+import com.test.aem.core.beans.MarketSummary;
+import com.test.aem.core.services.resilience.ResilienceStats;
+
+import java.util.List;
+
+/**
+ * {@link MarketDataService} behind per-call deadlines, a circuit breaker and a
+ * bulkhead. Every method either returns within its deadline or throws a
+ * {@link com.test.aem.core.services.resilience.CallFailedException}; snapshot
+ * stores then keep serving the last good value.
+ */
+public interface MarketDataClient {
+
+    IndexData getCurrentIndexData(String indexCode);
+
+    List<MarketSummary> getMarketSummary(List<String> indexCodes);
+
+    List<MarketSummary> getMajorIndicesSummary();
+
+    ChartData getChartData(String indexCode, String period);
+
+    ResilienceStats getStats();
+}
+
+// MarketDataClientImpl.java
+package com.test.aem.core.services.impl;
+
+import com.test.aem.core.beans.ChartData;
+import com.test.aem.core.beans.IndexData;
+import com.test.aem.core.beans.MarketSummary;
+import com.test.aem.core.services.MarketDataClient;
+import com.test.aem.core.services.MarketDataService;
+import com.test.aem.core.services.resilience.Bulkhead;
+import com.test.aem.core.services.resilience.CallFailedException;
+import com.test.aem.core.services.resilience.CircuitBreaker;
+import com.test.aem.core.services.resilience.MarketDataClientMBean;
+import com.test.aem.core.services.resilience.ResilienceStats;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+import javax.management.DynamicMBean;
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+import java.util.ArrayList;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+@Component(service = MarketDataClient.class, immediate = true)
+@Designate(ocd = MarketDataClientImpl.Config.class)
+public class MarketDataClientImpl implements MarketDataClient {
+
+    @ObjectClassDefinition(name = "HSI - Market Data Client")
+    public @interface Config {
+
+        @AttributeDefinition(name = "Call deadline (ms)", description = "Index and summary calls slower than this count as failures")
+        long callTimeoutMillis() default 2000;
+
+        @AttributeDefinition(name = "Chart call deadline (ms)", description = "Chart history calls return years of bars and get a longer deadline")
+        long chartTimeoutMillis() default 5000;
+
+        @AttributeDefinition(name = "Max concurrent calls", description = "Bulkhead size; applied on activation")
+        int maxConcurrentCalls() default 8;
+
+        @AttributeDefinition(name = "Failure threshold", description = "Consecutive failures or timeouts that open the circuit")
+        int failureThreshold() default 5;
+
+        @AttributeDefinition(name = "Open duration (ms)", description = "How long an open circuit rejects calls before one probe is let through")
+        long openMillis() default 30000;
+    }
+
+    private static final String NAME = "market-data";
+    private static final String JMX_NAME = "com.test.aem:type=MarketDataClient";
+
+    @Reference
+    private MarketDataService marketDataService;
+
+    private final CircuitBreaker breaker = new CircuitBreaker(NAME);
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder successes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder rejectedOpen = new LongAdder();
+
+    private Bulkhead bulkhead;
+    private ExecutorService callers;
+    private ServiceRegistration<DynamicMBean> mbean;
+
+    private volatile long callTimeoutMillis;
+    private volatile long chartTimeoutMillis;
+
+    @Activate
+    protected void activate(BundleContext bundleContext, Config config) throws NotCompliantMBeanException {
+        bulkhead = new Bulkhead(config.maxConcurrentCalls());
+        // One thread per permit, so an admitted call never waits in the queue
+        callers = Executors.newFixedThreadPool(config.maxConcurrentCalls(), IndexSnapshotCacheImpl.daemonThreads("hsi-market-call"));
+        modified(config);
+        Dictionary<String, Object> properties = new Hashtable<>();
+        properties.put("jmx.objectname", JMX_NAME);
+        mbean = bundleContext.registerService(DynamicMBean.class,
+                new StandardMBean(new ClientMetrics(), MarketDataClientMBean.class), properties);
+    }
+
+    @Modified
+    protected void modified(Config config) {
+        callTimeoutMillis = config.callTimeoutMillis();
+        chartTimeoutMillis = config.chartTimeoutMillis();
+        breaker.configure(config.failureThreshold(), config.openMillis());
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        if (mbean != null) {
+            mbean.unregister();
+        }
+        callers.shutdownNow();
+    }
+
+    @Override
+    public IndexData getCurrentIndexData(String indexCode) {
+        return call(() -> marketDataService.getCurrentIndexData(indexCode), callTimeoutMillis);
+    }
+
+    @Override
+    public List<MarketSummary> getMarketSummary(List<String> indexCodes) {
+        return call(() -> marketDataService.getMarketSummary(indexCodes), callTimeoutMillis);
+    }
+
+    @Override
+    public List<MarketSummary> getMajorIndicesSummary() {
+        return call(() -> marketDataService.getMajorIndicesSummary(), callTimeoutMillis);
+    }
+
+    @Override
+    public ChartData getChartData(String indexCode, String period) {
+        return call(() -> marketDataService.getChartData(indexCode, period), chartTimeoutMillis);
+    }
+
+    @Override
+    public ResilienceStats getStats() {
+        return new ResilienceStats(breaker.getState().name(), System.currentTimeMillis() - breaker.getStateSince(),
+                breaker.getTransitions(), calls.sum(), successes.sum(), failures.sum(), timeouts.sum(),
+                rejectedOpen.sum(), bulkhead.getRejected(), bulkhead.getActive());
+    }
+
+    private <T> T call(Supplier<T> upstream, long timeoutMillis) {
+        calls.increment();
+        if (!bulkhead.tryAcquire()) {
+            throw new CallFailedException(NAME, CallFailedException.Reason.BULKHEAD_FULL, null);
+        }
+        // Bulkhead first: a probe granted by the breaker must actually run, or HALF_OPEN never resolves
+        if (!breaker.tryAcquire()) {
+            bulkhead.release();
+            rejectedOpen.increment();
+            throw new CallFailedException(NAME, CallFailedException.Reason.CIRCUIT_OPEN, null);
+        }
+
+        // Whoever flips this owns the permit: the task once it runs, or the caller that cancelled it while queued
+        AtomicBoolean started = new AtomicBoolean();
+        Future<T> future;
+        try {
+            future = callers.submit(() -> {
+                if (!started.compareAndSet(false, true)) {
+                    return null;
+                }
+                // Released when the upstream returns, not when the caller gives up, so hung calls stay counted
+                try {
+                    return upstream.get();
+                } finally {
+                    bulkhead.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+            bulkhead.release();
+            breaker.onFailure();
+            throw new CallFailedException(NAME, CallFailedException.Reason.FAILED, e);
+        }
+
+        try {
+            T result = future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            successes.increment();
+            breaker.onSuccess();
+            return result;
+        } catch (TimeoutException e) {
+            cancel(future, started);
+            timeouts.increment();
+            breaker.onFailure();
+            throw new CallFailedException(NAME, CallFailedException.Reason.TIMEOUT, e);
+        } catch (ExecutionException e) {
+            failures.increment();
+            breaker.onFailure();
+            throw new CallFailedException(NAME, CallFailedException.Reason.FAILED, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel(future, started);
+            breaker.onFailure();
+            throw new CallFailedException(NAME, CallFailedException.Reason.FAILED, e);
+        }
+    }
+
+    // A task cancelled before it ran never reaches its finally, so its permit is returned here
+    private void cancel(Future<?> future, AtomicBoolean started) {
+        if (future.cancel(true) && started.compareAndSet(false, true)) {
+            bulkhead.release();
+        }
+    }
+
+    private final class ClientMetrics implements MarketDataClientMBean {
+
+        @Override
+        public String getState() {
+            return breaker.getState().name();
+        }
+
+        @Override
+        public String[] getTransitions() {
+            List<String> lines = new ArrayList<>();
+            for (Map.Entry<String, Long> entry : breaker.getTransitions().entrySet()) {
+                lines.add(entry.getKey() + "=" + entry.getValue());
+            }
+            return lines.toArray(new String[0]);
+        }
+
+        @Override
+        public long getCalls() {
+            return calls.sum();
+        }
+
+        @Override
+        public long getTimeouts() {
+            return timeouts.sum();
+        }
+
+        @Override
+        public long getFailures() {
+            return failures.sum();
+        }
+
+        @Override
+        public long getRejectedOpen() {
+            return rejectedOpen.sum();
+        }
+
+        @Override
+        public long getRejectedFull() {
+            return bulkhead.getRejected();
+        }
+
+        @Override
+        public int getActiveCalls() {
+            return bulkhead.getActive();
+        }
+    }
+}
+
+// IndexSnapshotCache.java
+package com.test.aem.core.services;
+
+import com.test.aem.core.beans.ChartData;
+import com.test.aem.core.beans.CompactIndexSnapshot;
+import com.test.aem.core.beans.IndexData;
+import com.test.aem.core.beans.MarketSummary;
+import com.test.aem.core.services.cache.CoalescingStats;
+import com.test.aem.core.services.cache.Snapshot;
+import com.test.aem.core.services.cache.SnapshotListener;
+import com.test.aem.core.services.cache.SnapshotStats;
+import com.test.aem.core.services.cache.SortedSummaryView;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shared, tick-refreshed view of {@link MarketDataService}, loaded through
+ * {@link MarketDataClient}. Models read from here instead of calling the feed during render.
+ */
+public interface IndexSnapshotCache {
+
+    /** The feed's IndexData as loaded; shared between readers, so callers must not modify it. */
+    Snapshot<IndexData> getIndexSnapshot(String indexCode, long refreshMillis);
+
+    /** The same snapshot in compact form, converted once per version, with the same version and load time. */
+    Snapshot<CompactIndexSnapshot> getCompactIndexSnapshot(String indexCode, long refreshMillis);
+
+    /** Starts the loads a later read would wait for; never blocks. */
+    void prefetchIndex(String indexCode);
+
+    void prefetchSummaries(List<String> indexCodes);
+
+    void prefetchMajorIndices();
+
+    void prefetchChart(String indexCode, String period);
+
+    /** Notified with the compact form of each reloaded index snapshot. */
+    void addIndexListener(SnapshotListener<CompactIndexSnapshot> listener);
+
+    void removeIndexListener(SnapshotListener<CompactIndexSnapshot> listener);
+
+    /** Notified with the indexCode|period key when a full-resolution chart is reloaded. */
+    void addChartListener(SnapshotListener<ChartData> listener);
+
+    void removeChartListener(SnapshotListener<ChartData> listener);
+
+    /** Summaries in the order of the codes; codes with no summary available are left out. */
+    List<MarketSummary> getMarketSummary(List<String> indexCodes);
+
+    List<MarketSummary> getMajorIndicesSummary();
+
+    /**
+     * MarketDataService's sort orders for these summaries, computed once and rebuilt
+     * only when one of them is refreshed.
+     */
+    SortedSummaryView getSummaryView(List<MarketSummary> summaries);
+
+    Snapshot<ChartData> getChartSnapshot(String indexCode, String period);
+
+    /** Chart data reduced to at most maxPoints for the chart type, cached per resolution. */
+    Snapshot<ChartData> getChartSnapshot(String indexCode, String period, String chartType, int maxPoints);
+
+    /** Hit/miss/staleness counters per store name, one entry per cached key. */
+    Map<String, List<SnapshotStats>> getStats();
+
+    /** Batch sizes and coalescing ratio of upstream market summary calls. */
+    CoalescingStats getSummaryCoalescingStats();
+}
+
+// IndexSnapshotCacheImpl.java
+package com.test.aem.core.services.impl;
+
+import com.test.aem.core.beans.ChartData;
+import com.test.aem.core.beans.CompactIndexSnapshot;
+import com.test.aem.core.beans.IndexData;
+import com.test.aem.core.beans.MarketSummary;
+import com.test.aem.core.services.IndexSnapshotCache;
+import com.test.aem.core.services.MarketDataClient;
+import com.test.aem.core.services.MarketDataService;
+import com.test.aem.core.services.cache.BatchCoalescer;
+import com.test.aem.core.services.cache.ChartDownsampler;
+import com.test.aem.core.services.cache.ChartSeriesStore;
+import com.test.aem.core.services.cache.CheckpointFile;
+import com.test.aem.core.services.cache.CoalescingStats;
+import com.test.aem.core.services.cache.Snapshot;
+import com.test.aem.core.services.cache.SnapshotListener;
+import com.test.aem.core.services.cache.SnapshotStats;
+import com.test.aem.core.services.cache.SnapshotStore;
+import com.test.aem.core.services.cache.SnapshotUnavailableException;
+import com.test.aem.core.services.cache.SortedSummaryView;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Component(service = IndexSnapshotCache.class, immediate = true)
+@Designate(ocd = IndexSnapshotCacheImpl.Config.class)
+public class IndexSnapshotCacheImpl implements IndexSnapshotCache {
+
+    @ObjectClassDefinition(name = "HSI - Index Snapshot Cache")
+    public @interface Config {
+
+        @AttributeDefinition(name = "Tick interval (ms)", description = "How often due snapshots are refreshed")
+        long tickMillis() default 1000;
+
+        @AttributeDefinition(name = "Default refresh interval (ms)", description = "Used when a component sets no refreshInterval")
+        long refreshMillis() default 30000;
+
+        @AttributeDefinition(name = "Chart refresh interval (ms)", description = "How often new bars are appended to the local price history")
+        long chartRefreshMillis() default 60000;
+
+        @AttributeDefinition(name = "Max stale age (ms)", description = "Older snapshots block the reader until reloaded")
+        long maxStaleMillis() default 300000;
+
+        @AttributeDefinition(name = "Load timeout (ms)")
+        long loadTimeoutMillis() default 5000;
+
+        @AttributeDefinition(name = "Idle eviction (ms)", description = "Keys not read for this long stop being refreshed")
+        long idleEvictMillis() default 3600000;
+
+        @AttributeDefinition(name = "Loader threads", description = "Loads a page prefetch can run at once; keep in line with the market data client's max concurrent calls")
+        int loaderThreads() default 8;
+
+        @AttributeDefinition(name = "Summary coalescing window (ms)", description = "Summary misses arriving within this window share one upstream call")
+        long coalesceWindowMillis() default 5;
+
+        @AttributeDefinition(name = "Summary max batch size")
+        int maxBatchSize() default 50;
+
+        @AttributeDefinition(name = "Checkpoint interval (ms)",
+                description = "How often index snapshots and chart history are written to local disk for a warm restart; 0 disables. Applied on activation")
+        long checkpointMillis() default 60000;
+
+        @AttributeDefinition(name = "Max restore age (ms)", description = "Checkpointed snapshots older than this are not restored")
+        long maxRestoreAgeMillis() default 86400000;
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(IndexSnapshotCacheImpl.class);
+
+    private static final String MAJOR_INDICES_KEY = "major";
+    private static final String CHECKPOINT_FILE = "market-cache.ckpt";
+    // Bump when the checkpoint body encoding changes; older files are then ignored
+    private static final int CHECKPOINT_SCHEMA = 2;
+    private static final int MAX_SUMMARY_VIEWS = 1000;
+    private static final int MAX_DOWNSAMPLED_CHARTS = 1000;
+    private static final int MAX_COMPACT_INDICES = 1000;
+
+    @Reference
+    private MarketDataClient marketDataClient;
+
+    // Only for sortMarketData, which orders summaries already loaded and never calls the feed
+    @Reference
+    private MarketDataService marketDataService;
+
+    private ExecutorService loaders;
+    private ScheduledExecutorService scheduler;
+
+    private BatchCoalescer<MarketSummary> summaryCoalescer;
+    private ChartSeriesStore chartSeries;
+
+    private SnapshotStore<IndexData> indexStore;
+    private SnapshotStore<MarketSummary> summaryStore;
+    private SnapshotStore<List<MarketSummary>> majorIndicesStore;
+    private SnapshotStore<ChartData> chartStore;
+
+    private Path checkpoint;
+
+    // Keyed by the joined index codes of the list; replaced when any entry is reloaded
+    private final ConcurrentMap<String, SortedSummaryView> summaryViews = new ConcurrentHashMap<>();
+
+    // Keyed by indexCode; carries the version of the IndexData snapshot it was converted from
+    private final ConcurrentMap<String, Snapshot<CompactIndexSnapshot>> compactIndices = new ConcurrentHashMap<>();
+    private final List<SnapshotListener<CompactIndexSnapshot>> indexListeners = new CopyOnWriteArrayList<>();
+
+    // Keyed by indexCode|period|chartType|maxPoints; carries the version of the full-resolution snapshot
+    private final ConcurrentMap<String, Snapshot<ChartData>> downsampledCharts = new ConcurrentHashMap<>();
+
+    @Activate
+    protected void activate(BundleContext bundleContext, Config config) {
+        loaders = Executors.newFixedThreadPool(config.loaderThreads(), daemonThreads("hsi-snapshot-loader"));
+        scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("hsi-snapshot-tick"));
+
+        indexStore = new SnapshotStore<>("index", marketDataClient::getCurrentIndexData, loaders);
+        indexStore.addListener(this::onIndexSnapshot);
+        summaryCoalescer = new BatchCoalescer<>("summary", this::loadSummaries, scheduler, loaders);
+        summaryStore = SnapshotStore.async("summary", summaryCoalescer::request);
+        majorIndicesStore = new SnapshotStore<>("majorIndices", key -> marketDataClient.getMajorIndicesSummary(), loaders);
+        chartSeries = new ChartSeriesStore(marketDataClient::getChartData);
+        chartStore = new SnapshotStore<>("chart", this::loadChart, loaders);
+        configure(config);
+
+        File dataFile = bundleContext.getDataFile(CHECKPOINT_FILE);
+        checkpoint = config.checkpointMillis() > 0 && dataFile != null ? dataFile.toPath() : null;
+        // Before the first tick and before any model can read, so a restarted node never starts cold
+        restoreCheckpoint(config.maxRestoreAgeMillis());
+
+        scheduler.scheduleWithFixedDelay(this::tick, config.tickMillis(), config.tickMillis(), TimeUnit.MILLISECONDS);
+        if (checkpoint != null) {
+            scheduler.scheduleWithFixedDelay(this::writeCheckpoint, config.checkpointMillis(), config.checkpointMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Modified
+    protected void modified(Config config) {
+        configure(config);
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        scheduler.shutdownNow();
+        writeCheckpoint();
+        loaders.shutdownNow();
+    }
+
+    @Override
+    public Snapshot<IndexData> getIndexSnapshot(String indexCode, long refreshMillis) {
+        return indexStore.getSnapshot(indexCode, refreshMillis);
+    }
+
+    @Override
+    public Snapshot<CompactIndexSnapshot> getCompactIndexSnapshot(String indexCode, long refreshMillis) {
+        return compact(indexCode, getIndexSnapshot(indexCode, refreshMillis));
+    }
+
+    @Override
+    public void prefetchIndex(String indexCode) {
+        indexStore.prefetch(indexCode);
+    }
+
+    @Override
+    public void prefetchSummaries(List<String> indexCodes) {
+        // Misses started together land in the same coalesced upstream batch
+        for (String code : indexCodes) {
+            summaryStore.prefetch(code);
+        }
+    }
+
+    @Override
+    public void prefetchMajorIndices() {
+        majorIndicesStore.prefetch(MAJOR_INDICES_KEY);
+    }
+
+    @Override
+    public void prefetchChart(String indexCode, String period) {
+        chartStore.prefetch(indexCode + "|" + period);
+    }
+
+    @Override
+    public void addIndexListener(SnapshotListener<CompactIndexSnapshot> listener) {
+        indexListeners.add(listener);
+    }
+
+    @Override
+    public void removeIndexListener(SnapshotListener<CompactIndexSnapshot> listener) {
+        indexListeners.remove(listener);
+    }
+
+    @Override
+    public void addChartListener(SnapshotListener<ChartData> listener) {
+        chartStore.addListener(listener);
+    }
+
+    @Override
+    public void removeChartListener(SnapshotListener<ChartData> listener) {
+        chartStore.removeListener(listener);
+    }
+
+    @Override
+    public List<MarketSummary> getMarketSummary(List<String> indexCodes) {
+        // Start every miss first so they land in the same upstream batch
+        prefetchSummaries(indexCodes);
+        List<MarketSummary> result = new ArrayList<>(indexCodes.size());
+        for (String code : indexCodes) {
+            try {
+                result.add(summaryStore.get(code));
+            } catch (SnapshotUnavailableException e) {
+                // An unknown or unavailable code must not empty the whole list
+                LOG.debug("No market summary for {}", code, e);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<MarketSummary> getMajorIndicesSummary() {
+        return majorIndicesStore.get(MAJOR_INDICES_KEY);
+    }
+
+    @Override
+    public SortedSummaryView getSummaryView(List<MarketSummary> summaries) {
+        StringBuilder key = new StringBuilder();
+        for (MarketSummary summary : summaries) {
+            key.append(summary != null ? summary.getIndexCode() : "").append(',');
+        }
+        String viewKey = key.toString();
+        SortedSummaryView view = summaryViews.get(viewKey);
+        if (view == null || !view.isViewOf(summaries)) {
+            view = SortedSummaryView.of(summaries, marketDataService::sortMarketData);
+            if (summaryViews.size() >= MAX_SUMMARY_VIEWS) {
+                summaryViews.clear();
+            }
+            summaryViews.put(viewKey, view);
+        }
+        return view;
+    }
+
+    @Override
+    public Snapshot<ChartData> getChartSnapshot(String indexCode, String period) {
+        return chartStore.getSnapshot(indexCode + "|" + period, 0);
+    }
+
+    @Override
+    public Snapshot<ChartData> getChartSnapshot(String indexCode, String period, String chartType, int maxPoints) {
+        Snapshot<ChartData> full = getChartSnapshot(indexCode, period);
+        List<?> points = full.getValue().getPoints();
+        if (points == null || points.size() <= maxPoints) {
+            return full;
+        }
+        String key = indexCode + "|" + period + "|" + chartType + "|" + maxPoints;
+        Snapshot<ChartData> reduced = downsampledCharts.get(key);
+        if (reduced == null || reduced.getVersion() != full.getVersion()) {
+            ChartData data = new ChartData(indexCode, period,
+                    ChartDownsampler.downsample(full.getValue().getPoints(), chartType, maxPoints));
+            reduced = new Snapshot<>(data, full.getLoadedAt(), full.getVersion());
+            if (downsampledCharts.size() >= MAX_DOWNSAMPLED_CHARTS) {
+                downsampledCharts.clear();
+            }
+            downsampledCharts.put(key, reduced);
+        }
+        return reduced;
+    }
+
+    @Override
+    public Map<String, List<SnapshotStats>> getStats() {
+        Map<String, List<SnapshotStats>> stats = new LinkedHashMap<>();
+        for (SnapshotStore<?> store : stores()) {
+            stats.put(store.getName(), store.getStats());
+        }
+        return stats;
+    }
+
+    @Override
+    public CoalescingStats getSummaryCoalescingStats() {
+        return summaryCoalescer.getStats();
+    }
+
+    private Snapshot<CompactIndexSnapshot> compact(String indexCode, Snapshot<IndexData> snapshot) {
+        if (snapshot == null) {
+            return null;
+        }
+        Snapshot<CompactIndexSnapshot> compact = compactIndices.get(indexCode);
+        if (compact == null || compact.getVersion() != snapshot.getVersion()) {
+            // Converted once per version; every render then shares the compact form
+            compact = new Snapshot<>(CompactIndexSnapshot.from(snapshot.getValue()), snapshot.getLoadedAt(), snapshot.getVersion());
+            if (compactIndices.size() >= MAX_COMPACT_INDICES) {
+                compactIndices.clear();
+            }
+            compactIndices.put(indexCode, compact);
+        }
+        return compact;
+    }
+
+    private void onIndexSnapshot(String indexCode, Snapshot<IndexData> previous, Snapshot<IndexData> current) {
+        if (indexListeners.isEmpty()) {
+            return;
+        }
+        // Usually still cached under the previous version, so only the new snapshot is converted
+        Snapshot<CompactIndexSnapshot> compactPrevious = compact(indexCode, previous);
+        Snapshot<CompactIndexSnapshot> compactCurrent = compact(indexCode, current);
+        for (SnapshotListener<CompactIndexSnapshot> listener : indexListeners) {
+            try {
+                listener.onSnapshot(indexCode, compactPrevious, compactCurrent);
+            } catch (RuntimeException e) {
+                LOG.warn("Index snapshot listener failed for {}", indexCode, e);
+            }
+        }
+    }
+
+    private Map<String, MarketSummary> loadSummaries(List<String> indexCodes) {
+        List<MarketSummary> summaries = marketDataClient.getMarketSummary(indexCodes);
+        Map<String, MarketSummary> byCode = new HashMap<>();
+        if (summaries != null) {
+            for (MarketSummary summary : summaries) {
+                byCode.put(summary.getIndexCode(), summary);
+            }
+        }
+        return byCode;
+    }
+
+    private ChartData loadChart(String key) {
+        // Every timeframe of an index is cut from the same local history
+        int separator = key.indexOf('|');
+        return chartSeries.view(key.substring(0, separator), key.substring(separator + 1));
+    }
+
+    private synchronized void writeCheckpoint() {
+        if (checkpoint == null) {
+            return;
+        }
+        Map<String, Snapshot<IndexData>> indices = indexStore.getSnapshots();
+        Map<String, Snapshot<ChartData>> charts = chartStore.getSnapshots();
+        try {
+            CheckpointFile.write(checkpoint, CHECKPOINT_SCHEMA, out -> {
+                out.writeInt(indices.size());
+                for (Map.Entry<String, Snapshot<IndexData>> entry : indices.entrySet()) {
+                    out.writeString(entry.getKey());
+                    out.writeLong(entry.getValue().getLoadedAt());
+                    writeIndex(out, entry.getValue().getValue());
+                }
+                chartSeries.writeTo(out);
+                // Chart views are cut again from the restored history; only their keys and ages are kept
+                out.writeInt(charts.size());
+                for (Map.Entry<String, Snapshot<ChartData>> entry : charts.entrySet()) {
+                    out.writeString(entry.getKey());
+                    out.writeLong(entry.getValue().getLoadedAt());
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Could not write market data checkpoint {}", checkpoint, e);
+        }
+    }
+
+    private void restoreCheckpoint(long maxRestoreAgeMillis) {
+        if (checkpoint == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            CheckpointFile.Input in = CheckpointFile.read(checkpoint, CHECKPOINT_SCHEMA);
+            if (in == null) {
+                return;
+            }
+            long oldest = System.currentTimeMillis() - maxRestoreAgeMillis;
+            int indices = 0;
+            for (int i = in.readInt(); i > 0; i--) {
+                String key = in.readString();
+                long loadedAt = in.readLong();
+                IndexData snapshot = readIndex(in);
+                if (loadedAt >= oldest) {
+                    indexStore.restore(key, snapshot, loadedAt);
+                    indices++;
+                }
+            }
+            int histories = chartSeries.readFrom(in);
+            int charts = 0;
+            for (int i = in.readInt(); i > 0; i--) {
+                String key = in.readString();
+                long loadedAt = in.readLong();
+                int separator = key.indexOf('|');
+                ChartData data = chartSeries.peek(key.substring(0, separator), key.substring(separator + 1));
+                if (data != null && loadedAt >= oldest) {
+                    chartStore.restore(key, data, loadedAt);
+                    charts++;
+                }
+            }
+            LOG.info("Restored {} index snapshots, {} chart histories and {} charts from a checkpoint written {} s ago in {} ms",
+                    indices, histories, charts, (System.currentTimeMillis() - in.getWrittenAt()) / 1000,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (IOException | RuntimeException e) {
+            // A bad checkpoint only costs the warm start
+            LOG.warn("Ignoring market data checkpoint {}", checkpoint, e);
+        }
+    }
+
+    // Decimals and the timestamp as text, so a restored snapshot is exactly what the feed sent
+    private static void writeIndex(CheckpointFile.Output out, IndexData data) throws IOException {
+        out.writeString(data.getIndexCode());
+        out.writeString(data.getIndexName());
+        writeDecimal(out, data.getCurrentValue());
+        writeDecimal(out, data.getChange());
+        writeDecimal(out, data.getChangePercent());
+        writeDecimal(out, data.getVolume());
+        writeDecimal(out, data.getHigh());
+        writeDecimal(out, data.getLow());
+        out.writeString(data.getLastUpdate() != null ? data.getLastUpdate().toString() : null);
+        out.writeString(data.getStatus());
+    }
+
+    private static IndexData readIndex(CheckpointFile.Input in) {
+        IndexData data = new IndexData(in.readString(), in.readString());
+        data.setCurrentValue(readDecimal(in));
+        data.setChange(readDecimal(in));
+        data.setChangePercent(readDecimal(in));
+        data.setVolume(readDecimal(in));
+        data.setHigh(readDecimal(in));
+        data.setLow(readDecimal(in));
+        String lastUpdate = in.readString();
+        data.setLastUpdate(lastUpdate != null ? LocalDateTime.parse(lastUpdate) : null);
+        data.setStatus(in.readString());
+        return data;
+    }
+
+    private static void writeDecimal(CheckpointFile.Output out, BigDecimal value) throws IOException {
+        out.writeString(value != null ? value.toString() : null);
+    }
+
+    private static BigDecimal readDecimal(CheckpointFile.Input in) {
+        String value = in.readString();
+        return value != null ? new BigDecimal(value) : null;
+    }
+
+    private void configure(Config config) {
+        indexStore.configure(config.refreshMillis(), config.maxStaleMillis(), config.loadTimeoutMillis(), config.idleEvictMillis());
+        summaryStore.configure(config.refreshMillis(), config.maxStaleMillis(), config.loadTimeoutMillis(), config.idleEvictMillis());
+        majorIndicesStore.configure(config.refreshMillis(), config.maxStaleMillis(), config.loadTimeoutMillis(), config.idleEvictMillis());
+        summaryCoalescer.configure(config.coalesceWindowMillis(), config.maxBatchSize());
+        chartSeries.configure(config.chartRefreshMillis());
+        chartStore.configure(config.chartRefreshMillis(), config.maxStaleMillis(), config.loadTimeoutMillis(), config.idleEvictMillis());
+    }
+
+    private void tick() {
+        for (SnapshotStore<?> store : stores()) {
+            store.tick();
+        }
+    }
+
+    private List<SnapshotStore<?>> stores() {
+        List<SnapshotStore<?>> stores = new ArrayList<>(4);
+        stores.add(indexStore);
+        stores.add(summaryStore);
+        stores.add(majorIndicesStore);
+        stores.add(chartStore);
+        return stores;
+    }
+
+    static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
+
+// JsonFragmentCache.java
+package com.test.aem.core.services;
+
+/**
+ * Serialized JSON of market beans, kept per (namespace, key, snapshot version)
+ * so an unchanged snapshot is serialized once no matter how many cards render it.
+ */
+public interface JsonFragmentCache {
+
+    String toJson(String namespace, String key, long version, Object value);
+}
+
+// JsonFragmentCacheImpl.java
+package com.test.aem.core.services.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.test.aem.core.services.JsonFragmentCache;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+import java.io.UncheckedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+@Component(service = JsonFragmentCache.class)
+@Designate(ocd = JsonFragmentCacheImpl.Config.class)
+public class JsonFragmentCacheImpl implements JsonFragmentCache {
+
+    @ObjectClassDefinition(name = "HSI - JSON Fragment Cache")
+    public @interface Config {
+
+        @AttributeDefinition(name = "Max entries", description = "The cache is cleared when it grows past this size")
+        int maxEntries() default 10000;
+    }
+
+    // ObjectMapper/ObjectWriter are thread-safe once configured, so one instance serves every request
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final ConcurrentMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Fragment> fragments = new ConcurrentHashMap<>();
+
+    private volatile int maxEntries;
+
+    @Activate
+    @Modified
+    protected void activate(Config config) {
+        maxEntries = config.maxEntries();
+        fragments.clear();
+    }
+
+    @Override
+    public String toJson(String namespace, String key, long version, Object value) {
+        if (value == null) {
+            return "{}";
+        }
+        String cacheKey = namespace + ':' + key;
+        Fragment fragment = fragments.get(cacheKey);
+        if (fragment != null && fragment.version == version) {
+            return fragment.json;
+        }
+        String json = write(value);
+        if (fragments.size() >= maxEntries) {
+            fragments.clear();
+        }
+        // A concurrent writer may store the same version twice; the result is identical either way
+        fragments.put(cacheKey, new Fragment(version, json));
+        return json;
+    }
+
+    private String write(Object value) {
+        ObjectWriter writer = writers.computeIfAbsent(value.getClass(), MAPPER::writerFor);
+        try {
+            return writer.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static final class Fragment {
+        final long version;
+        final String json;
+
+        Fragment(long version, String json) {
+            this.version = version;
+            this.json = json;
+        }
+    }
+}
+
+// IndexUpdateHub.java
+package com.test.aem.core.services;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Single in-process fan-out of index snapshot changes to push clients. One
+ * refresh per index code per node feeds every subscriber of that code.
+ */
+public interface IndexUpdateHub {
+
+    /**
+     * Returns null when the node is at its connection limit. The listener runs on
+     * the hub's thread whenever delta events are waiting or the subscription
+     * closes; it must not block and takes the events with {@link Subscription#drain()}.
+     */
+    Subscription subscribe(Set<String> indexCodes, Runnable listener);
+
+    int getSubscriberCount();
+
+    /** Current snapshot JSON of an index, null when none could be loaded. */
+    String getSnapshotJson(String indexCode);
+
+    interface Subscription extends AutoCloseable {
+
+        /** Full snapshot events for every subscribed code, sent once on connect. */
+        List<String> initialEvents();
+
+        /** Pending delta events, the latest per code; empty when none arrived. Never blocks. */
+        List<String> drain();
+
+        boolean isClosed();
+
+        @Override
+        void close();
+    }
+}
+
+// IndexUpdateHubImpl.java
+package com.test.aem.core.services.impl;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.test.aem.core.beans.CompactIndexSnapshot;
+import com.test.aem.core.beans.CompactIndexSnapshotSerializer;
+import com.test.aem.core.beans.IndexData;
+import com.test.aem.core.services.IndexSnapshotCache;
+import com.test.aem.core.services.IndexUpdateHub;
+import com.test.aem.core.services.JsonFragmentCache;
+import com.test.aem.core.services.cache.Snapshot;
+import com.test.aem.core.services.cache.SnapshotListener;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Component(service = IndexUpdateHub.class, immediate = true)
+@Designate(ocd = IndexUpdateHubImpl.Config.class)
+public class IndexUpdateHubImpl implements IndexUpdateHub, SnapshotListener<CompactIndexSnapshot> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IndexUpdateHubImpl.class);
+    private static final JsonFactory JSON = new JsonFactory();
+
+    @ObjectClassDefinition(name = "HSI - Index Update Hub")
+    public @interface Config {
+
+        @AttributeDefinition(name = "Max connections", description = "Push connections allowed per node; streams are async and hold no request thread")
+        int maxConnections() default 5000;
+
+        @AttributeDefinition(name = "Keep-alive interval (ms)", description = "How often subscribed index codes are read so the cache keeps refreshing them")
+        long refreshMillis() default 5000;
+
+        @AttributeDefinition(name = "Max consumer lag (ms)", description = "Subscribers that do not drain for this long, because the client stopped reading, are disconnected")
+        long maxLagMillis() default 60000;
+    }
+
+    @Reference
+    private IndexSnapshotCache indexSnapshotCache;
+
+    @Reference
+    private JsonFragmentCache jsonFragmentCache;
+
+    private final ConcurrentMap<String, Set<SubscriptionImpl>> subscribers = new ConcurrentHashMap<>();
+    private final AtomicInteger connections = new AtomicInteger();
+
+    private ScheduledExecutorService scheduler;
+    private volatile int maxConnections;
+    private volatile long refreshMillis;
+    private volatile long maxLagMillis;
+
+    @Activate
+    protected void activate(Config config) {
+        modified(config);
+        indexSnapshotCache.addIndexListener(this);
+        scheduler = Executors.newSingleThreadScheduledExecutor(IndexSnapshotCacheImpl.daemonThreads("hsi-index-push"));
+        scheduler.scheduleWithFixedDelay(this::keepSubscribedCodesFresh, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Modified
+    protected void modified(Config config) {
+        maxConnections = config.maxConnections();
+        refreshMillis = config.refreshMillis();
+        maxLagMillis = config.maxLagMillis();
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        indexSnapshotCache.removeIndexListener(this);
+        scheduler.shutdownNow();
+        for (Set<SubscriptionImpl> set : subscribers.values()) {
+            for (SubscriptionImpl subscription : set) {
+                subscription.close();
+            }
+        }
+    }
+
+    @Override
+    public Subscription subscribe(Set<String> indexCodes, Runnable listener) {
+        if (connections.incrementAndGet() > maxConnections) {
+            connections.decrementAndGet();
+            return null;
+        }
+        SubscriptionImpl subscription = new SubscriptionImpl(indexCodes, listener);
+        for (String code : indexCodes) {
+            subscribers.computeIfAbsent(code, k -> ConcurrentHashMap.newKeySet()).add(subscription);
+        }
+        return subscription;
+    }
+
+    @Override
+    public int getSubscriberCount() {
+        return connections.get();
+    }
+
+    @Override
+    public String getSnapshotJson(String indexCode) {
+        try {
+            Snapshot<CompactIndexSnapshot> snapshot = indexSnapshotCache.getCompactIndexSnapshot(indexCode, 0);
+            return jsonFragmentCache.toJson("index", indexCode, snapshot.getVersion(), snapshot.getValue());
+        } catch (RuntimeException e) {
+            LOG.debug("No snapshot for index {}", indexCode, e);
+            return null;
+        }
+    }
+
+    @Override
+    public void onSnapshot(String indexCode, Snapshot<CompactIndexSnapshot> previous, Snapshot<CompactIndexSnapshot> current) {
+        Set<SubscriptionImpl> set = subscribers.get(indexCode);
+        if (set == null || set.isEmpty()) {
+            return;
+        }
+        String event = deltaEvent(previous != null ? previous.getValue() : null, current.getValue());
+        if (event == null) {
+            return; // refreshed, but nothing a client shows has changed
+        }
+        // Built once, handed to every subscriber of the code
+        for (SubscriptionImpl subscription : set) {
+            subscription.offer(indexCode, event);
+        }
+    }
+
+    // Keeps subscribed codes read so the store's own tick refreshes them, one upstream load per code per node.
+    // Reads pass 0: a requested interval would permanently lower the key's refresh interval for every reader.
+    private void keepSubscribedCodesFresh() {
+        for (Iterator<Map.Entry<String, Set<SubscriptionImpl>>> it = subscribers.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Set<SubscriptionImpl>> entry = it.next();
+            if (entry.getValue().isEmpty()) {
+                it.remove();
+                continue;
+            }
+            try {
+                indexSnapshotCache.getIndexSnapshot(entry.getKey(), 0);
+            } catch (RuntimeException e) {
+                LOG.debug("Could not refresh pushed index {}", entry.getKey(), e);
+            }
+        }
+    }
+
+    static String deltaEvent(CompactIndexSnapshot previous, CompactIndexSnapshot current) {
+        StringWriter out = new StringWriter(128);
+        char[] buffer = new char[24];
+        boolean changed = false;
+        try (JsonGenerator gen = JSON.createGenerator(out)) {
+            gen.writeStartObject();
+            gen.writeStringField("indexCode", current.getIndexCode());
+            IndexData now = current.getIndexData();
+            IndexData before = previous != null ? previous.getIndexData() : null;
+            if (previous == null || !CompactIndexSnapshot.sameValue(previous.getCurrentValue(), before.getCurrentValue(),
+                    current.getCurrentValue(), now.getCurrentValue())) {
+                CompactIndexSnapshotSerializer.writeScaled(gen, "currentValue", current.getCurrentValue(),
+                        CompactIndexSnapshot.PRICE_SCALE, now.getCurrentValue(), buffer);
+                changed = true;
+            }
+            if (previous == null || !CompactIndexSnapshot.sameValue(previous.getChange(), before.getChange(),
+                    current.getChange(), now.getChange())) {
+                CompactIndexSnapshotSerializer.writeScaled(gen, "change", current.getChange(),
+                        CompactIndexSnapshot.PRICE_SCALE, now.getChange(), buffer);
+                gen.writeStringField("changeDirection", current.getChangeDirection());
+                changed = true;
+            }
+            if (previous == null || !CompactIndexSnapshot.sameValue(previous.getChangePercent(), before.getChangePercent(),
+                    current.getChangePercent(), now.getChangePercent())) {
+                CompactIndexSnapshotSerializer.writeScaled(gen, "changePercent", current.getChangePercent(),
+                        CompactIndexSnapshot.PRICE_SCALE, now.getChangePercent(), buffer);
+                changed = true;
+            }
+            // The feed's own text, so statuses the enum does not know still reach the card
+            if (previous == null || !Objects.equals(previous.getStatusText(), current.getStatusText())) {
+                gen.writeStringField("status", current.getStatusText());
+                changed = true;
+            }
+            gen.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return changed ? "event: delta\ndata: " + out + "\n\n" : null;
+    }
+
+    private final class SubscriptionImpl implements Subscription {
+
+        private final Set<String> indexCodes;
+        private final Runnable listener;
+        // Latest event per code: a slow client skips intermediate ticks instead of queueing them
+        private final ConcurrentMap<String, String> pending = new ConcurrentHashMap<>();
+        private volatile long lastDrain = System.currentTimeMillis();
+        private volatile boolean closed;
+
+        SubscriptionImpl(Set<String> indexCodes, Runnable listener) {
+            this.indexCodes = indexCodes;
+            this.listener = listener;
+        }
+
+        void offer(String indexCode, String event) {
+            if (closed) {
+                return;
+            }
+            if (System.currentTimeMillis() - lastDrain > maxLagMillis) {
+                LOG.debug("Disconnecting index push subscriber lagging more than {} ms", maxLagMillis);
+                close();
+                return;
+            }
+            if (pending.put(indexCode, event) == null) {
+                notifyListener();
+            }
+        }
+
+        private void notifyListener() {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                LOG.debug("Index push listener failed", e);
+            }
+        }
+
+        @Override
+        public List<String> initialEvents() {
+            List<String> events = new ArrayList<>(indexCodes.size());
+            for (String code : indexCodes) {
+                String json = getSnapshotJson(code);
+                if (json != null) {
+                    events.add("event: snapshot\ndata: " + json + "\n\n");
+                }
+            }
+            return events;
+        }
+
+        @Override
+        public List<String> drain() {
+            lastDrain = System.currentTimeMillis();
+            if (closed || pending.isEmpty()) {
+                return Collections.emptyList();
+            }
+            List<String> events = new ArrayList<>(pending.size());
+            for (String code : pending.keySet()) {
+                String event = pending.remove(code);
+                if (event != null) {
+                    events.add(event);
+                }
+            }
+            lastDrain = System.currentTimeMillis();
+            return events;
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+            for (String code : indexCodes) {
+                Set<SubscriptionImpl> set = subscribers.get(code);
+                if (set != null) {
+                    set.remove(this);
+                }
+            }
+            pending.clear();
+            connections.decrementAndGet();
+            notifyListener(); // lets the stream complete its response promptly
+        }
+    }
+}
+
+// NewsFeedCache.java
+package com.test.aem.core.services;
+
+import com.test.aem.core.services.cache.NewsWindow;
+import com.test.aem.core.services.cache.SnapshotListener;
+import com.test.aem.core.services.cache.SnapshotStats;
+import java.util.List;
+
+/**
+ * Background-refreshed news windows per (category, language), shared by every
+ * NewsListModel regardless of its maxItems.
+ */
+public interface NewsFeedCache {
+
+    NewsWindow getWindow(String category, String language);
+
+    /** Starts loading the window if a read would wait for it; never blocks. */
+    void prefetchWindow(String category, String language);
+
+    /** Notified with the category|language key when a window is reloaded. */
+    void addWindowListener(SnapshotListener<NewsWindow> listener);
+
+    void removeWindowListener(SnapshotListener<NewsWindow> listener);
+
+    /** Largest maxItems a window can serve without another service call. */
+    int getWindowSize();
+
+    List<SnapshotStats> getStats();
+}
+
+// NewsFeedCacheImpl.java
+package com.test.aem.core.services.impl;
+
+import com.test.aem.core.beans.NewsItem;
+import com.test.aem.core.services.NewsFeedCache;
+import com.test.aem.core.services.NewsService;
+import com.test.aem.core.services.cache.CheckpointFile;
+import com.test.aem.core.services.cache.NewsWindow;
+import com.test.aem.core.services.cache.Snapshot;
+import com.test.aem.core.services.cache.SnapshotListener;
+import com.test.aem.core.services.cache.SnapshotStats;
+import com.test.aem.core.services.cache.SnapshotStore;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+@Component(service = NewsFeedCache.class, immediate = true)
+@Designate(ocd = NewsFeedCacheImpl.Config.class)
+public class NewsFeedCacheImpl implements NewsFeedCache {
+
+    @ObjectClassDefinition(name = "HSI - News Feed Cache")
+    public @interface Config {
+
+        @AttributeDefinition(name = "Window size", description = "News items kept per category and language")
+        int windowSize() default 50;
+
+        @AttributeDefinition(name = "Refresh interval (ms)")
+        long refreshMillis() default 60000;
+
+        @AttributeDefinition(name = "Max stale age (ms)")
+        long maxStaleMillis() default 900000;
+
+        @AttributeDefinition(name = "Load timeout (ms)")
+        long loadTimeoutMillis() default 5000;
+
+        @AttributeDefinition(name = "Idle eviction (ms)")
+        long idleEvictMillis() default 3600000;
+
+        @AttributeDefinition(name = "Checkpoint interval (ms)",
+                description = "How often news windows are written to local disk for a warm restart; 0 disables. Applied on activation")
+        long checkpointMillis() default 60000;
+
+        @AttributeDefinition(name = "Max restore age (ms)", description = "Checkpointed windows older than this are not restored")
+        long maxRestoreAgeMillis() default 86400000;
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(NewsFeedCacheImpl.class);
+
+    private static final String CHECKPOINT_FILE = "news-cache.ckpt";
+    // Bump when the checkpoint body encoding changes; older files are then ignored
+    private static final int CHECKPOINT_SCHEMA = 1;
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    @Reference
+    private NewsService newsService;
+
+    private ExecutorService loaders;
+    private ScheduledExecutorService scheduler;
+    private SnapshotStore<NewsWindow> windows;
+    private Path checkpoint;
+    private volatile int windowSize;
+
+    @Activate
+    protected void activate(BundleContext bundleContext, Config config) {
+        loaders = Executors.newFixedThreadPool(2, IndexSnapshotCacheImpl.daemonThreads("hsi-news-loader"));
+        scheduler = Executors.newSingleThreadScheduledExecutor(IndexSnapshotCacheImpl.daemonThreads("hsi-news-tick"));
+        windows = new SnapshotStore<>("news", this::loadWindow, loaders);
+        modified(config);
+        File dataFile = bundleContext.getDataFile(CHECKPOINT_FILE);
+        checkpoint = config.checkpointMillis() > 0 && dataFile != null ? dataFile.toPath() : null;
+        restoreCheckpoint(config.maxRestoreAgeMillis());
+        scheduler.scheduleWithFixedDelay(() -> windows.tick(), 1, 1, TimeUnit.SECONDS);
+        if (checkpoint != null) {
+            scheduler.scheduleWithFixedDelay(this::writeCheckpoint, config.checkpointMillis(), config.checkpointMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Modified
+    protected void modified(Config config) {
+        windowSize = config.windowSize();
+        windows.configure(config.refreshMillis(), config.maxStaleMillis(), config.loadTimeoutMillis(), config.idleEvictMillis());
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        scheduler.shutdownNow();
+        writeCheckpoint();
+        loaders.shutdownNow();
+    }
+
+    @Override
+    public NewsWindow getWindow(String category, String language) {
+        return windows.get(category + "|" + language);
+    }
+
+    @Override
+    public void prefetchWindow(String category, String language) {
+        windows.prefetch(category + "|" + language);
+    }
+
+    @Override
+    public void addWindowListener(SnapshotListener<NewsWindow> listener) {
+        windows.addListener(listener);
+    }
+
+    @Override
+    public void removeWindowListener(SnapshotListener<NewsWindow> listener) {
+        windows.removeListener(listener);
+    }
+
+    @Override
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    @Override
+    public List<SnapshotStats> getStats() {
+        return windows.getStats();
+    }
+
+    private NewsWindow loadWindow(String key) {
+        int separator = key.indexOf('|');
+        return NewsWindow.of(newsService.getNews(key.substring(0, separator), key.substring(separator + 1), windowSize));
+    }
+
+    private synchronized void writeCheckpoint() {
+        if (checkpoint == null) {
+            return;
+        }
+        Map<String, Snapshot<NewsWindow>> snapshots = windows.getSnapshots();
+        try {
+            CheckpointFile.write(checkpoint, CHECKPOINT_SCHEMA, out -> {
+                out.writeInt(snapshots.size());
+                for (Map.Entry<String, Snapshot<NewsWindow>> entry : snapshots.entrySet()) {
+                    NewsWindow window = entry.getValue().getValue();
+                    out.writeString(entry.getKey());
+                    out.writeLong(entry.getValue().getLoadedAt());
+                    out.writeInt(window.size());
+                    for (NewsItem item : window.prefix(window.size())) {
+                        out.writeString(item.getId());
+                        out.writeString(item.getTitle());
+                        out.writeString(item.getExcerpt());
+                        out.writeString(item.getUrl());
+                        out.writeString(item.getCategory());
+                        out.writeString(item.getLanguage());
+                        out.writeLong(item.getPublishDate() != null ? item.getPublishDate().getTime() : NO_DATE);
+                    }
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Could not write news checkpoint {}", checkpoint, e);
+        }
+    }
+
+    private void restoreCheckpoint(long maxRestoreAgeMillis) {
+        if (checkpoint == null) {
+            return;
+        }
+        try {
+            CheckpointFile.Input in = CheckpointFile.read(checkpoint, CHECKPOINT_SCHEMA);
+            if (in == null) {
+                return;
+            }
+            long oldest = System.currentTimeMillis() - maxRestoreAgeMillis;
+            int restored = 0;
+            for (int i = in.readInt(); i > 0; i--) {
+                String key = in.readString();
+                long loadedAt = in.readLong();
+                List<NewsItem> items = new ArrayList<>();
+                for (int j = in.readInt(); j > 0; j--) {
+                    NewsItem item = new NewsItem();
+                    item.setId(in.readString());
+                    item.setTitle(in.readString());
+                    item.setExcerpt(in.readString());
+                    item.setUrl(in.readString());
+                    item.setCategory(in.readString());
+                    item.setLanguage(in.readString());
+                    long publishDate = in.readLong();
+                    item.setPublishDate(publishDate != NO_DATE ? new Date(publishDate) : null);
+                    items.add(item);
+                }
+                if (loadedAt >= oldest) {
+                    windows.restore(key, NewsWindow.of(items), loadedAt);
+                    restored++;
+                }
+            }
+            LOG.info("Restored {} news windows from a checkpoint written {} s ago", restored,
+                    (System.currentTimeMillis() - in.getWrittenAt()) / 1000);
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Ignoring news checkpoint {}", checkpoint, e);
+        }
+    }
+}
+
+// NavigationNode.java
+package com.test.aem.core.services.navigation;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.Collections;
+import java.util.List;
+
+/** Immutable navigation entry; unchanged subtrees are shared between tree versions. */
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+public final class NavigationNode {
+
+    private final String path;
+    private final String url;
+    private final String title;
+    private final List<NavigationNode> children;
+
+    /** @param url the page link as mapped by the resource resolver, so sling:mapping and vanity rules apply */
+    public NavigationNode(String path, String url, String title, List<NavigationNode> children) {
+        this.path = path;
+        this.url = url;
+        this.title = title;
+        this.children = Collections.unmodifiableList(children);
+    }
+
+    public String getPath() { return path; }
+    public String getTitle() { return title; }
+    public String getUrl() { return url; }
+    public List<NavigationNode> getChildren() { return children; }
+
+    NavigationNode withChildren(List<NavigationNode> newChildren) {
+        return new NavigationNode(path, url, title, newChildren);
+    }
+}
+
+// NavigationTree.java
+package com.test.aem.core.services.navigation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Navigation below one language root. Immutable: an update returns a new tree
+ * that copies only the nodes between the root and the replaced subtree.
+ */
+public final class NavigationTree {
+
+    private final NavigationNode root;
+    private final long version;
+    private final Map<String, NavigationNode> byPath;
+
+    public NavigationTree(NavigationNode root, long version) {
+        this.root = root;
+        this.version = version;
+        Map<String, NavigationNode> index = new HashMap<>();
+        indexNodes(root, index);
+        this.byPath = index;
+    }
+
+    public NavigationNode getRoot() { return root; }
+    public String getRootPath() { return root.getPath(); }
+    public long getVersion() { return version; }
+
+    public boolean contains(String path) {
+        return byPath.containsKey(path);
+    }
+
+    /**
+     * Paths to highlight for the current page: its nearest ancestor-or-self in the
+     * tree and every ancestor of that up to the root, deepest first. Pages below
+     * the tree depth highlight their closest listed ancestor.
+     */
+    public List<String> activePaths(String currentPath) {
+        if (currentPath == null) {
+            return Collections.emptyList();
+        }
+        List<String> active = new ArrayList<>(4);
+        for (String path = currentPath; path.length() >= root.getPath().length(); path = parentPath(path)) {
+            if (byPath.containsKey(path)) {
+                active.add(path);
+            }
+        }
+        return Collections.unmodifiableList(active);
+    }
+
+    /** Nearest path in the tree that is the given path or one of its ancestors, or null outside the tree. */
+    public String nearest(String path) {
+        for (String candidate = path; candidate.length() >= root.getPath().length(); candidate = parentPath(candidate)) {
+            if (byPath.containsKey(candidate)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /** New tree with the subtree at replacement's path swapped in; every other subtree is shared. */
+    public NavigationTree replace(NavigationNode replacement, long newVersion) {
+        return new NavigationTree(replace(root, replacement), newVersion);
+    }
+
+    private static NavigationNode replace(NavigationNode node, NavigationNode replacement) {
+        if (node.getPath().equals(replacement.getPath())) {
+            return replacement;
+        }
+        List<NavigationNode> children = new ArrayList<>(node.getChildren());
+        for (int i = 0; i < children.size(); i++) {
+            if (replacement.getPath().startsWith(children.get(i).getPath() + "/")
+                    || replacement.getPath().equals(children.get(i).getPath())) {
+                children.set(i, replace(children.get(i), replacement));
+                return node.withChildren(children);
+            }
+        }
+        return node;
+    }
+
+    private static void indexNodes(NavigationNode node, Map<String, NavigationNode> index) {
+        index.put(node.getPath(), node);
+        for (NavigationNode child : node.getChildren()) {
+            indexNodes(child, index);
+        }
+    }
+
+    private static String parentPath(String path) {
+        int slash = path.lastIndexOf('/');
+        return slash > 0 ? path.substring(0, slash) : "";
+    }
+}
+
+// NavigationTreeService.java
+package com.test.aem.core.services;
+
+import com.test.aem.core.services.navigation.NavigationTree;
+
+/**
+ * Header navigation built once per language root and kept up to date from
+ * page changes, so rendering a header is a map lookup.
+ */
+public interface NavigationTreeService {
+
+    /**
+     * @param rootPath authored navigation root, in any language
+     * @param language current page language; the root's language segment is swapped for it
+     * @return null when neither root exists
+     */
+    NavigationTree getTree(String rootPath, String language);
+}
+
+// NavigationTreeServiceImpl.java
+package com.test.aem.core.services.impl;
+
+import com.day.cq.wcm.api.Page;
+import com.day.cq.wcm.api.PageFilter;
+import com.day.cq.wcm.api.PageManager;
+import com.test.aem.core.services.NavigationTreeService;
+import com.test.aem.core.services.navigation.NavigationNode;
+import com.test.aem.core.services.navigation.NavigationTree;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Component(
+        service = {NavigationTreeService.class, ResourceChangeListener.class},
+        immediate = true,
+        property = {
+                ResourceChangeListener.PATHS + "=/content",
+                ResourceChangeListener.CHANGES + "=ADDED",
+                ResourceChangeListener.CHANGES + "=CHANGED",
+                ResourceChangeListener.CHANGES + "=REMOVED"
+        })
+@Designate(ocd = NavigationTreeServiceImpl.Config.class)
+public class NavigationTreeServiceImpl implements NavigationTreeService, ResourceChangeListener {
+
+    @ObjectClassDefinition(name = "HSI - Navigation Tree")
+    public @interface Config {
+
+        @AttributeDefinition(name = "Languages", description = "Language segments swapped in the navigation root path")
+        String[] languages() default {"en", "zh"};
+
+        @AttributeDefinition(name = "Depth", description = "Levels of pages below the root")
+        int depth() default 3;
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(NavigationTreeServiceImpl.class);
+
+    // Must be allowed to impersonate anonymous (rep:impersonators). The tree is shared by every
+    // visitor, so it is read as anonymous and never lists pages behind a CUG or ACL
+    private static final String SUBSERVICE = "navigation-reader";
+    private static final String ANONYMOUS = "anonymous";
+    private static final String CONTENT = "/jcr:content";
+    private static final String DAM = "/content/dam/";
+
+    @Reference
+    private ResourceResolverFactory resolverFactory;
+
+    // Keyed by the language root path
+    private final ConcurrentMap<String, NavigationTree> trees = new ConcurrentHashMap<>();
+    private final AtomicLong versions = new AtomicLong();
+
+    private volatile List<String> languages = Collections.emptyList();
+    private volatile int depth;
+
+    @Activate
+    protected void activate(Config config) {
+        modified(config);
+    }
+
+    @Modified
+    protected void modified(Config config) {
+        languages = Arrays.asList(config.languages());
+        depth = config.depth();
+        trees.clear();
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        trees.clear();
+    }
+
+    @Override
+    public NavigationTree getTree(String rootPath, String language) {
+        if (rootPath == null || rootPath.isEmpty()) {
+            return null;
+        }
+        String languageRoot = languageRoot(rootPath, language);
+        NavigationTree tree = trees.get(languageRoot);
+        if (tree == null && !languageRoot.equals(rootPath)) {
+            tree = trees.get(rootPath);
+        }
+        if (tree != null) {
+            return tree;
+        }
+        // Built outside the map so a slow build does not block readers of other roots
+        tree = build(languageRoot);
+        if (tree == null && !languageRoot.equals(rootPath)) {
+            languageRoot = rootPath; // The site has no page for this language
+            tree = build(rootPath);
+        }
+        if (tree == null) {
+            return null;
+        }
+        NavigationTree previous = trees.putIfAbsent(languageRoot, tree);
+        return previous != null ? previous : tree;
+    }
+
+    // Page created, moved or deleted: only the subtree of the nearest listed ancestor is read again
+    @Override
+    public void onChange(List<ResourceChange> changes) {
+        if (trees.isEmpty()) {
+            return;
+        }
+        TreeSet<String> pages = new TreeSet<>();
+        for (ResourceChange change : changes) {
+            String pagePath = pagePath(change.getPath());
+            if (pagePath != null) {
+                pages.add(change.getType() == ResourceChange.ChangeType.REMOVED && !change.getPath().contains(CONTENT)
+                        ? parentPath(pagePath) : pagePath);
+            }
+        }
+        for (Map.Entry<String, NavigationTree> entry : trees.entrySet()) {
+            update(entry.getKey(), entry.getValue(), pages);
+        }
+    }
+
+    private void update(String rootPath, NavigationTree tree, TreeSet<String> pages) {
+        List<String> targets = new ArrayList<>();
+        for (String page : pages) {
+            if (!page.equals(rootPath) && !page.startsWith(rootPath + "/")) {
+                continue;
+            }
+            String target = tree.nearest(page);
+            boolean coveredByAncestor = false;
+            for (String existing : targets) {
+                coveredByAncestor |= target.equals(existing) || target.startsWith(existing + "/");
+            }
+            if (!coveredByAncestor) {
+                targets.add(target);
+            }
+        }
+        if (targets.isEmpty()) {
+            return;
+        }
+        try (ResourceResolver resolver = anonymousResolver()) {
+            PageManager pageManager = resolver.adaptTo(PageManager.class);
+            NavigationTree updated = tree;
+            for (String target : targets) {
+                Page page = pageManager.getPage(target);
+                if (page == null) {
+                    // The root itself went away, or anonymous lost read access to it; rebuilt on the next read
+                    trees.remove(rootPath, tree);
+                    return;
+                }
+                updated = updated.replace(node(resolver, page, levelsBelow(rootPath, target)), versions.incrementAndGet());
+            }
+            trees.replace(rootPath, tree, updated);
+        } catch (LoginException e) {
+            LOG.warn("Service user for subservice {} is not configured or cannot impersonate {}, dropping navigation of {}",
+                    SUBSERVICE, ANONYMOUS, rootPath, e);
+            trees.remove(rootPath, tree);
+        }
+    }
+
+    private NavigationTree build(String rootPath) {
+        try (ResourceResolver resolver = anonymousResolver()) {
+            Page root = resolver.adaptTo(PageManager.class).getPage(rootPath);
+            return root != null ? new NavigationTree(node(resolver, root, 0), versions.incrementAndGet()) : null;
+        } catch (LoginException e) {
+            LOG.warn("Service user for subservice {} is not configured or cannot impersonate {}", SUBSERVICE, ANONYMOUS, e);
+            return null;
+        }
+    }
+
+    // Mapped once here rather than per render, which is why the tree holds URLs and not just paths
+    private NavigationNode node(ResourceResolver resolver, Page page, int level) {
+        List<NavigationNode> children = new ArrayList<>();
+        if (level < depth) {
+            // Hidden and invalid pages are left out, as in the core navigation component
+            Iterator<Page> pages = page.listChildren(new PageFilter(false, false));
+            while (pages.hasNext()) {
+                children.add(node(resolver, pages.next(), level + 1));
+            }
+        }
+        return new NavigationNode(page.getPath(), resolver.map(page.getPath() + ".html"), title(page), children);
+    }
+
+    private static String title(Page page) {
+        if (page.getNavigationTitle() != null) {
+            return page.getNavigationTitle();
+        }
+        return page.getTitle() != null ? page.getTitle() : page.getName();
+    }
+
+    private String languageRoot(String rootPath, String language) {
+        if (language == null || !languages.contains(language)) {
+            return rootPath;
+        }
+        String[] segments = rootPath.split("/");
+        for (int i = 0; i < segments.length; i++) {
+            if (languages.contains(segments[i])) {
+                segments[i] = language;
+                return String.join("/", segments);
+            }
+        }
+        return rootPath;
+    }
+
+    private static int levelsBelow(String rootPath, String path) {
+        int levels = 0;
+        for (int i = rootPath.length(); i < path.length(); i++) {
+            if (path.charAt(i) == '/') {
+                levels++;
+            }
+        }
+        return levels;
+    }
+
+    // Only the page node and its jcr:content (title, hideInNav) matter, not components inside
+    private static String pagePath(String path) {
+        if (path.startsWith(DAM)) {
+            return null;
+        }
+        int content = path.indexOf(CONTENT);
+        if (content < 0) {
+            return path;
+        }
+        return content + CONTENT.length() == path.length() ? path.substring(0, content) : null;
+    }
+
+    private static String parentPath(String path) {
+        int slash = path.lastIndexOf('/');
+        return slash > 0 ? path.substring(0, slash) : path;
+    }
+
+    private ResourceResolver anonymousResolver() throws LoginException {
+        Map<String, Object> authenticationInfo = new HashMap<>();
+        authenticationInfo.put(ResourceResolverFactory.SUBSERVICE, SUBSERVICE);
+        authenticationInfo.put(ResourceResolverFactory.USER_IMPERSONATION, ANONYMOUS);
+        return resolverFactory.getServiceResourceResolver(authenticationInfo);
+    }
+}
+
+// Dependency.java
+package com.test.aem.core.services.invalidation;
+
+/**
+ * Keys for the data a page renders from. Index, chart and news keys match the
+ * keys of the snapshot stores they are read from.
+ */
+public final class Dependency {
+
+    public static final String INDEX = "index:";
+    public static final String CHART = "chart:";
+    public static final String NEWS = "news:";
+    public static final String FRAGMENT = "cf:";
+
+    private Dependency() {
+    }
+
+    public static String index(String indexCode) {
+        return INDEX + indexCode;
+    }
+
+    public static String chart(String indexCode, String period) {
+        return CHART + indexCode + '|' + period;
+    }
+
+    public static String news(String category, String language) {
+        return NEWS + category + '|' + language;
+    }
+
+    public static String fragment(String path) {
+        return FRAGMENT + path;
+    }
+}
+
+// DependencyInvalidationMBean.java
+package com.test.aem.core.services.invalidation;
+
+/** JMX view of the page dependency graph and the dispatcher flushes it drives. */
+public interface DependencyInvalidationMBean {
+
+    int getPages();
+
+    int getDependencies();
+
+    long getEdges();
+
+    /** Data changes that had at least one dependent page. */
+    long getInvalidations();
+
+    long getFlushedPages();
+
+    long getFlushFailures();
+
+    /** Pages flushed per data change: count, mean, p50/p95/p99 and max. */
+    String[] getFanOut();
+
+    /** Flushes the pages depending on a key such as index:HSI or cf:/content/dam/... */
+    int invalidate(String dependency);
+}
+
+// DependencyRegistry.java
+package com.test.aem.core.services;
+
+import org.apache.sling.api.resource.Resource;
+
+import java.util.Set;
+
+/**
+ * Which pages rendered from which data, recorded by the models while they
+ * render. See {@link com.test.aem.core.services.invalidation.Dependency} for the keys.
+ */
+public interface DependencyRegistry {
+
+    /** Records that the page containing the resource depends on the key; a lookup when already known. */
+    void record(Resource resource, String dependency);
+
+    boolean hasDependents(String dependency);
+
+    Set<String> getDependencies();
+
+    /**
+     * Removes the key and every page depending on it, and returns those pages.
+     * They register again when they are next rendered.
+     */
+    Set<String> invalidate(String dependency);
+
+    int getPageCount();
+
+    int getDependencyCount();
+
+    long getEdgeCount();
+}
+
+// DependencyRegistryImpl.java
+package com.test.aem.core.services.impl;
+
+import com.test.aem.core.services.DependencyRegistry;
+import com.test.aem.core.services.cache.CheckpointFile;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.settings.SlingSettingsService;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@Component(service = DependencyRegistry.class, immediate = true)
+@Designate(ocd = DependencyRegistryImpl.Config.class)
+public class DependencyRegistryImpl implements DependencyRegistry {
+
+    @ObjectClassDefinition(name = "HSI - Dependency Registry")
+    public @interface Config {
+
+        @AttributeDefinition(name = "Enabled", description = "Only takes effect on publish instances, where the dispatcher caches pages")
+        boolean enabled() default true;
+
+        @AttributeDefinition(name = "Checkpoint interval (ms)",
+                description = "How often the graph is written to local disk so a restarted node can still flush the pages the dispatcher kept; 0 disables. Applied on activation")
+        long checkpointMillis() default 60000;
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(DependencyRegistryImpl.class);
+
+    private static final String CONTENT = "/jcr:content";
+    private static final String CHECKPOINT_FILE = "dependency-graph.ckpt";
+    // Bump when the checkpoint body encoding changes; older files are then ignored
+    private static final int CHECKPOINT_SCHEMA = 1;
+
+    @Reference
+    private SlingSettingsService slingSettings;
+
+    // Both directions: pages per key to flush, keys per page to forget a flushed page
+    private final ConcurrentMap<String, Set<String>> pagesByDependency = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<String>> dependenciesByPage = new ConcurrentHashMap<>();
+
+    // Set by every change to the graph, so an idle node does not rewrite the same checkpoint
+    private final AtomicBoolean dirty = new AtomicBoolean();
+
+    private ScheduledExecutorService scheduler;
+    private Path checkpoint;
+    private volatile boolean active;
+
+    @Activate
+    protected void activate(BundleContext bundleContext, Config config) {
+        modified(config);
+        File dataFile = bundleContext.getDataFile(CHECKPOINT_FILE);
+        checkpoint = config.checkpointMillis() > 0 && dataFile != null ? dataFile.toPath() : null;
+        // Cached pages outlive a restart at the dispatcher; without their edges no data change would flush them
+        restoreCheckpoint();
+        if (checkpoint != null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(IndexSnapshotCacheImpl.daemonThreads("hsi-dependency-checkpoint"));
+            scheduler.scheduleWithFixedDelay(this::writeCheckpoint, config.checkpointMillis(), config.checkpointMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Modified
+    protected void modified(Config config) {
+        active = config.enabled() && slingSettings.getRunModes().contains("publish");
+        if (!active) {
+            pagesByDependency.clear();
+            dependenciesByPage.clear();
+            dirty.set(true);
+        }
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        writeCheckpoint();
+    }
+
+    @Override
+    public void record(Resource resource, String dependency) {
+        if (!active || resource == null) {
+            return;
+        }
+        String page = pagePath(resource.getPath());
+        if (page == null) {
+            return;
+        }
+        Set<String> dependencies = dependenciesByPage.get(page);
+        if (dependencies != null && dependencies.contains(dependency)) {
+            return; // Every render after the first
+        }
+        addEdge(page, dependency);
+    }
+
+    private void addEdge(String page, String dependency) {
+        dependenciesByPage.computeIfAbsent(page, key -> ConcurrentHashMap.newKeySet()).add(dependency);
+        // Atomic per key with the removal in invalidate, so an edge is never added to a set being dropped
+        pagesByDependency.compute(dependency, (key, pages) -> {
+            Set<String> result = pages != null ? pages : ConcurrentHashMap.newKeySet();
+            result.add(page);
+            return result;
+        });
+        dirty.set(true);
+    }
+
+    @Override
+    public boolean hasDependents(String dependency) {
+        Set<String> pages = pagesByDependency.get(dependency);
+        return pages != null && !pages.isEmpty();
+    }
+
+    @Override
+    public Set<String> getDependencies() {
+        return Collections.unmodifiableSet(pagesByDependency.keySet());
+    }
+
+    @Override
+    public Set<String> invalidate(String dependency) {
+        Set<String> pages = pagesByDependency.remove(dependency);
+        if (pages == null) {
+            return Collections.emptySet();
+        }
+        dirty.set(true);
+        Set<String> result = new HashSet<>(pages);
+        for (String page : result) {
+            // The flushed page re-records everything it still uses on its next render
+            Set<String> dependencies = dependenciesByPage.remove(page);
+            if (dependencies == null) {
+                continue;
+            }
+            for (String other : dependencies) {
+                pagesByDependency.computeIfPresent(other, (key, others) -> {
+                    others.remove(page);
+                    return others.isEmpty() ? null : others;
+                });
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int getPageCount() {
+        return dependenciesByPage.size();
+    }
+
+    @Override
+    public int getDependencyCount() {
+        return pagesByDependency.size();
+    }
+
+    @Override
+    public long getEdgeCount() {
+        long edges = 0;
+        for (Set<String> pages : pagesByDependency.values()) {
+            edges += pages.size();
+        }
+        return edges;
+    }
+
+    private synchronized void writeCheckpoint() {
+        if (checkpoint == null || !dirty.getAndSet(false)) {
+            return;
+        }
+        Map<String, Set<String>> graph = new HashMap<>();
+        for (Map.Entry<String, Set<String>> entry : dependenciesByPage.entrySet()) {
+            graph.put(entry.getKey(), new HashSet<>(entry.getValue()));
+        }
+        try {
+            CheckpointFile.write(checkpoint, CHECKPOINT_SCHEMA, out -> {
+                out.writeInt(graph.size());
+                for (Map.Entry<String, Set<String>> entry : graph.entrySet()) {
+                    out.writeString(entry.getKey());
+                    out.writeInt(entry.getValue().size());
+                    for (String dependency : entry.getValue()) {
+                        out.writeString(dependency);
+                    }
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            dirty.set(true);
+            LOG.warn("Could not write dependency checkpoint {}", checkpoint, e);
+        }
+    }
+
+    // No age limit: the dispatcher keeps a page until it is flushed, however long ago it was rendered
+    private void restoreCheckpoint() {
+        if (checkpoint == null || !active) {
+            return;
+        }
+        try {
+            CheckpointFile.Input in = CheckpointFile.read(checkpoint, CHECKPOINT_SCHEMA);
+            if (in == null) {
+                return;
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                String page = in.readString();
+                for (int j = in.readInt(); j > 0; j--) {
+                    addEdge(page, in.readString());
+                }
+            }
+            LOG.info("Restored dependencies of {} pages from a checkpoint written {} s ago", dependenciesByPage.size(),
+                    (System.currentTimeMillis() - in.getWrittenAt()) / 1000);
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Ignoring dependency checkpoint {}", checkpoint, e);
+        }
+    }
+
+    // Components live below the page's jcr:content; anything else is not a page render
+    private static String pagePath(String path) {
+        int content = path.indexOf(CONTENT);
+        return content > 0 ? path.substring(0, content) : null;
+    }
+}
+
+// DependencyInvalidator.java
+package com.test.aem.core.services;
+
+/**
+ * Flushes from the dispatcher only the pages that rendered from data that
+ * changed: a modified Content Fragment, or a refreshed index, chart or news
+ * snapshot whose content differs from the previous one.
+ */
+public interface DependencyInvalidator {
+
+    /** Queues a flush of every page depending on the key; returns the number of pages. */
+    int invalidate(String dependency);
+}
+
+// DependencyInvalidatorImpl.java
+package com.test.aem.core.services.impl;
+
+import com.day.cq.replication.ReplicationActionType;
+import com.day.cq.replication.ReplicationException;
+import com.day.cq.replication.ReplicationOptions;
+import com.day.cq.replication.Replicator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.test.aem.core.beans.ChartData;
+import com.test.aem.core.beans.CompactIndexSnapshot;
+import com.test.aem.core.services.DependencyInvalidator;
+import com.test.aem.core.services.DependencyRegistry;
+import com.test.aem.core.services.IndexSnapshotCache;
+import com.test.aem.core.services.NewsFeedCache;
+import com.test.aem.core.services.cache.NewsWindow;
+import com.test.aem.core.services.cache.Snapshot;
+import com.test.aem.core.services.cache.SnapshotListener;
+import com.test.aem.core.services.invalidation.Dependency;
+import com.test.aem.core.services.invalidation.DependencyInvalidationMBean;
+import com.test.aem.core.services.profiling.Histogram;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.Session;
+import javax.management.DynamicMBean;
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+@Component(
+        service = {DependencyInvalidator.class, ResourceChangeListener.class},
+        immediate = true,
+        property = {
+                ResourceChangeListener.PATHS + "=/content/dam",
+                ResourceChangeListener.CHANGES + "=ADDED",
+                ResourceChangeListener.CHANGES + "=CHANGED",
+                ResourceChangeListener.CHANGES + "=REMOVED"
+        })
+@Designate(ocd = DependencyInvalidatorImpl.Config.class)
+public class DependencyInvalidatorImpl implements DependencyInvalidator, ResourceChangeListener {
+
+    @ObjectClassDefinition(name = "HSI - Dependency Invalidator")
+    public @interface Config {
+
+        @AttributeDefinition(name = "Flush delay (ms)", description = "Changes within this window are sent as one round of flushes")
+        long flushDelayMillis() default 1000;
+
+        @AttributeDefinition(name = "Keep fresh interval (ms)",
+                description = "How often data with dependent pages is read, so its snapshots keep refreshing while the pages are served from the dispatcher")
+        long keepFreshMillis() default 15000;
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(DependencyInvalidatorImpl.class);
+    private static final String JMX_NAME = "com.test.aem:type=DependencyInvalidation";
+
+    // Needs replicate permission on /content to trigger the flush agents
+    private static final String SUBSERVICE = "dispatcher-flusher";
+    private static final String FLUSH_SERIALIZATION = "flush";
+    private static final String CONTENT = "/jcr:content";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Reference
+    private DependencyRegistry registry;
+
+    @Reference
+    private IndexSnapshotCache indexSnapshotCache;
+
+    @Reference
+    private NewsFeedCache newsFeedCache;
+
+    @Reference
+    private Replicator replicator;
+
+    @Reference
+    private ResourceResolverFactory resolverFactory;
+
+    private final SnapshotListener<CompactIndexSnapshot> indexListener =
+            (key, previous, current) -> onSnapshot(Dependency.index(key), previous, current, Function.identity());
+    private final SnapshotListener<ChartData> chartListener =
+            (key, previous, current) -> onSnapshot(Dependency.CHART + key, previous, current, Function.identity());
+    private final SnapshotListener<NewsWindow> newsListener =
+            (key, previous, current) -> onSnapshot(Dependency.NEWS + key, previous, current, window -> window.prefix(window.size()));
+
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final Histogram fanOut = new Histogram();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder flushedPages = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+
+    private ScheduledExecutorService scheduler;
+    private ServiceRegistration<DynamicMBean> mbean;
+
+    private volatile long flushDelayMillis;
+
+    @Activate
+    protected void activate(BundleContext bundleContext, Config config) throws NotCompliantMBeanException {
+        scheduler = Executors.newSingleThreadScheduledExecutor(IndexSnapshotCacheImpl.daemonThreads("hsi-dispatcher-flush"));
+        modified(config);
+        scheduler.scheduleWithFixedDelay(this::keepFresh, config.keepFreshMillis(), config.keepFreshMillis(), TimeUnit.MILLISECONDS);
+        indexSnapshotCache.addIndexListener(indexListener);
+        indexSnapshotCache.addChartListener(chartListener);
+        newsFeedCache.addWindowListener(newsListener);
+        Dictionary<String, Object> properties = new Hashtable<>();
+        properties.put("jmx.objectname", JMX_NAME);
+        mbean = bundleContext.registerService(DynamicMBean.class,
+                new StandardMBean(new InvalidationMetrics(), DependencyInvalidationMBean.class), properties);
+    }
+
+    @Modified
+    protected void modified(Config config) {
+        flushDelayMillis = config.flushDelayMillis();
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        if (mbean != null) {
+            mbean.unregister();
+        }
+        indexSnapshotCache.removeIndexListener(indexListener);
+        indexSnapshotCache.removeChartListener(chartListener);
+        newsFeedCache.removeWindowListener(newsListener);
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    public int invalidate(String dependency) {
+        Set<String> pages = registry.invalidate(dependency);
+        if (pages.isEmpty()) {
+            return 0;
+        }
+        invalidations.increment();
+        fanOut.record(pages.size());
+        pending.addAll(pages);
+        if (flushScheduled.compareAndSet(false, true)) {
+            scheduler.schedule(this::flushPending, flushDelayMillis, TimeUnit.MILLISECONDS);
+        }
+        LOG.debug("{} changed, flushing {} pages", dependency, pages.size());
+        return pages.size();
+    }
+
+    // Fragment edits land on jcr:content/data/...; the dependency is the asset itself
+    @Override
+    public void onChange(List<ResourceChange> changes) {
+        Set<String> fragments = new HashSet<>();
+        for (ResourceChange change : changes) {
+            String path = change.getPath();
+            int content = path.indexOf(CONTENT);
+            fragments.add(content > 0 ? path.substring(0, content) : path);
+        }
+        for (String fragment : fragments) {
+            invalidate(Dependency.fragment(fragment));
+        }
+    }
+
+    // Runs on the loader thread: cheap when nobody depends on the key
+    private <V> void onSnapshot(String dependency, Snapshot<V> previous, Snapshot<V> current, Function<V, Object> content) {
+        if (!registry.hasDependents(dependency)) {
+            return;
+        }
+        // Snapshots reload on a timer; only a change in what the page would show is worth a flush
+        if (previous != null && sameContent(content.apply(previous.getValue()), content.apply(current.getValue()))) {
+            return;
+        }
+        invalidate(dependency);
+    }
+
+    private static boolean sameContent(Object previous, Object current) {
+        try {
+            return Arrays.equals(MAPPER.writeValueAsBytes(previous), MAPPER.writeValueAsBytes(current));
+        } catch (JsonProcessingException e) {
+            return false;
+        }
+    }
+
+    private void flushPending() {
+        flushScheduled.set(false);
+        List<String> pages = new ArrayList<>(pending.size());
+        for (Iterator<String> it = pending.iterator(); it.hasNext(); ) {
+            pages.add(it.next());
+            it.remove();
+        }
+        if (pages.isEmpty()) {
+            return;
+        }
+        ReplicationOptions options = new ReplicationOptions();
+        options.setFilter(agent -> FLUSH_SERIALIZATION.equals(agent.getConfiguration().getSerializationType()));
+        try (ResourceResolver resolver = resolverFactory.getServiceResourceResolver(
+                Collections.singletonMap(ResourceResolverFactory.SUBSERVICE, SUBSERVICE))) {
+            Session session = resolver.adaptTo(Session.class);
+            for (String page : pages) {
+                try {
+                    // Activating the handle deletes page.* at the dispatcher, so page.model.json goes with the html
+                    replicator.replicate(session, ReplicationActionType.ACTIVATE, page, options);
+                    flushedPages.increment();
+                } catch (ReplicationException e) {
+                    flushFailures.increment();
+                    LOG.warn("Could not flush {}", page, e);
+                }
+            }
+        } catch (LoginException e) {
+            flushFailures.add(pages.size());
+            LOG.warn("Service user for subservice {} is not configured, {} pages not flushed", SUBSERVICE, pages.size(), e);
+        }
+    }
+
+    // Cached pages are not rendered, so their data would go idle in the snapshot stores and stop changing
+    private void keepFresh() {
+        for (String dependency : registry.getDependencies()) {
+            try {
+                if (dependency.startsWith(Dependency.INDEX)) {
+                    indexSnapshotCache.getIndexSnapshot(dependency.substring(Dependency.INDEX.length()), 0);
+                } else if (dependency.startsWith(Dependency.CHART)) {
+                    String[] key = dependency.substring(Dependency.CHART.length()).split("\\|", 2);
+                    indexSnapshotCache.getChartSnapshot(key[0], key[1]);
+                } else if (dependency.startsWith(Dependency.NEWS)) {
+                    String[] key = dependency.substring(Dependency.NEWS.length()).split("\\|", 2);
+                    newsFeedCache.getWindow(key[0], key[1]);
+                }
+            } catch (RuntimeException e) {
+                LOG.debug("Could not refresh {}", dependency, e);
+            }
+        }
+    }
+
+    private final class InvalidationMetrics implements DependencyInvalidationMBean {
+
+        @Override
+        public int getPages() {
+            return registry.getPageCount();
+        }
+
+        @Override
+        public int getDependencies() {
+            return registry.getDependencyCount();
+        }
+
+        @Override
+        public long getEdges() {
+            return registry.getEdgeCount();
+        }
+
+        @Override
+        public long getInvalidations() {
+            return invalidations.sum();
+        }
+
+        @Override
+        public long getFlushedPages() {
+            return flushedPages.sum();
+        }
+
+        @Override
+        public long getFlushFailures() {
+            return flushFailures.sum();
+        }
+
+        @Override
+        public String[] getFanOut() {
+            List<String> lines = new ArrayList<>();
+            for (Map.Entry<String, Long> entry : fanOut.toMap().entrySet()) {
+                lines.add(entry.getKey() + "=" + entry.getValue());
+            }
+            return lines.toArray(new String[0]);
+        }
+
+        @Override
+        public int invalidate(String dependency) {
+            return DependencyInvalidatorImpl.this.invalidate(dependency);
+        }
+    }
+}
+
+// MarketPrefetcher.java
+package com.test.aem.core.services;
+
+import org.apache.sling.api.resource.Resource;
+
+/**
+ * Page-level prefetch: finds the market components on a page and starts every
+ * load they will need at once, before rendering begins. Each model then finds
+ * its snapshot loaded or already in flight, so a cold page waits for roughly
+ * the slowest load instead of the sum of them.
+ */
+public interface MarketPrefetcher {
+
+    /**
+     * Never blocks on the loads themselves.
+     *
+     * @param pageContent the jcr:content resource of the page
+     * @return number of keys handed to the caches
+     */
+    int prefetch(Resource pageContent);
+}
+
+// MarketPrefetcherImpl.java
+package com.test.aem.core.services.impl;
+
+import com.test.aem.core.services.IndexSnapshotCache;
+import com.test.aem.core.services.MarketPrefetcher;
+import com.test.aem.core.services.NewsFeedCache;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ValueMap;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+@Component(service = MarketPrefetcher.class, immediate = true)
+@Designate(ocd = MarketPrefetcherImpl.Config.class)
+public class MarketPrefetcherImpl implements MarketPrefetcher {
+
+    @ObjectClassDefinition(name = "HSI - Market Prefetcher")
+    public @interface Config {
+
+        @AttributeDefinition(name = "Enabled", description = "Start the market data loads of a page before it renders")
+        boolean enabled() default true;
+
+        @AttributeDefinition(name = "Max nodes", description = "Content nodes scanned per page; larger pages are prefetched partially")
+        int maxNodes() default 2000;
+    }
+
+    static final String INDEX_CARD = "hsi/components/content/indexcard";
+    static final String MARKET_DATA = "hsi/components/content/marketdata";
+    static final String NEWS_LIST = "hsi/components/content/newslist";
+    static final String CHART = "hsi/components/content/chartcomponent";
+
+    private static final Logger LOG = LoggerFactory.getLogger(MarketPrefetcherImpl.class);
+    private static final int MAX_PAGES = 5000;
+
+    @Reference
+    private IndexSnapshotCache indexSnapshotCache;
+
+    @Reference
+    private NewsFeedCache newsFeedCache;
+
+    // Keyed by the jcr:content path; a scan is reused until the page is modified
+    private final ConcurrentMap<String, PageNeeds> pages = new ConcurrentHashMap<>();
+
+    private volatile boolean enabled;
+    private volatile int maxNodes;
+
+    @Activate
+    protected void activate(Config config) {
+        modified(config);
+    }
+
+    @Modified
+    protected void modified(Config config) {
+        enabled = config.enabled();
+        maxNodes = config.maxNodes();
+        pages.clear();
+    }
+
+    @Override
+    public int prefetch(Resource pageContent) {
+        if (!enabled || pageContent == null) {
+            return 0;
+        }
+        long lastModified = lastModified(pageContent);
+        PageNeeds needs = pages.get(pageContent.getPath());
+        if (needs == null || needs.lastModified != lastModified) {
+            needs = scan(pageContent, lastModified);
+            if (pages.size() >= MAX_PAGES) {
+                pages.clear();
+            }
+            pages.put(pageContent.getPath(), needs);
+        }
+
+        for (String code : needs.indexCodes) {
+            indexSnapshotCache.prefetchIndex(code);
+        }
+        if (!needs.summaryCodes.isEmpty()) {
+            indexSnapshotCache.prefetchSummaries(needs.summaryCodes);
+        }
+        if (needs.majorIndices) {
+            indexSnapshotCache.prefetchMajorIndices();
+        }
+        for (String[] chart : needs.charts) {
+            indexSnapshotCache.prefetchChart(chart[0], chart[1]);
+        }
+        for (String[] news : needs.news) {
+            newsFeedCache.prefetchWindow(news[0], news[1]);
+        }
+        return needs.size();
+    }
+
+    // Breadth-first, so with a node budget the components near the top of the page come first
+    private PageNeeds scan(Resource pageContent, long lastModified) {
+        Set<String> indexCodes = new LinkedHashSet<>();
+        Set<String> summaryCodes = new LinkedHashSet<>();
+        boolean majorIndices = false;
+        Set<String> charts = new LinkedHashSet<>();
+        Set<String> news = new LinkedHashSet<>();
+
+        Deque<Resource> queue = new ArrayDeque<>();
+        queue.add(pageContent);
+        int visited = 0;
+        while (!queue.isEmpty() && visited++ < maxNodes) {
+            Resource resource = queue.poll();
+            ValueMap properties = resource.getValueMap();
+            // Same defaults as the models
+            if (resource.isResourceType(INDEX_CARD)) {
+                addIfPresent(indexCodes, properties.get("indexCode", String.class));
+            } else if (resource.isResourceType(MARKET_DATA)) {
+                String[] selected = properties.get("selectedIndices", String[].class);
+                if (selected != null && selected.length > 0) {
+                    summaryCodes.addAll(Arrays.asList(selected));
+                } else {
+                    majorIndices = true;
+                }
+            } else if (resource.isResourceType(CHART)) {
+                String code = properties.get("indexCode", String.class);
+                if (code != null && !code.isEmpty()) {
+                    charts.add(code + "|" + properties.get("timeframe", "1M"));
+                }
+            } else if (resource.isResourceType(NEWS_LIST)) {
+                int maxItems = properties.get("maxItems", 0);
+                // Lists larger than the shared window are read from the service directly
+                if (maxItems <= newsFeedCache.getWindowSize()) {
+                    news.add(properties.get("category", "all") + "|" + properties.get("language", "en"));
+                }
+            }
+            Iterator<Resource> children = resource.listChildren();
+            while (children.hasNext()) {
+                queue.add(children.next());
+            }
+        }
+        if (!queue.isEmpty()) {
+            LOG.debug("Prefetch scan of {} stopped after {} nodes", pageContent.getPath(), maxNodes);
+        }
+        return new PageNeeds(lastModified, new ArrayList<>(indexCodes), new ArrayList<>(summaryCodes), majorIndices,
+                split(charts), split(news));
+    }
+
+    private static void addIfPresent(Set<String> codes, String code) {
+        if (code != null && !code.isEmpty()) {
+            codes.add(code);
+        }
+    }
+
+    private static List<String[]> split(Set<String> keys) {
+        List<String[]> result = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            int separator = key.indexOf('|');
+            result.add(new String[]{key.substring(0, separator), key.substring(separator + 1)});
+        }
+        return result;
+    }
+
+    private static long lastModified(Resource pageContent) {
+        ValueMap properties = pageContent.getValueMap();
+        Calendar modified = properties.get("cq:lastModified", Calendar.class);
+        if (modified == null) {
+            modified = properties.get("jcr:lastModified", Calendar.class);
+        }
+        return modified != null ? modified.getTimeInMillis() : 0L;
+    }
+
+    private static final class PageNeeds {
+        final long lastModified;
+        final List<String> indexCodes;
+        final List<String> summaryCodes;
+        final boolean majorIndices;
+        final List<String[]> charts; // {indexCode, period}
+        final List<String[]> news;   // {category, language}
+
+        PageNeeds(long lastModified, List<String> indexCodes, List<String> summaryCodes, boolean majorIndices,
+                  List<String[]> charts, List<String[]> news) {
+            this.lastModified = lastModified;
+            this.indexCodes = Collections.unmodifiableList(indexCodes);
+            this.summaryCodes = Collections.unmodifiableList(summaryCodes);
+            this.majorIndices = majorIndices;
+            this.charts = Collections.unmodifiableList(charts);
+            this.news = Collections.unmodifiableList(news);
+        }
+
+        int size() {
+            return indexCodes.size() + summaryCodes.size() + (majorIndices ? 1 : 0) + charts.size() + news.size();
+        }
+    }
+}
+
+// Histogram.java
+package com.test.aem.core.services.profiling;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram with power-of-two buckets. Bucket i holds values in
+ * [2^(i-1), 2^i), so reported percentiles are upper bounds within 2x.
+ */
+public final class Histogram {
+
+    private static final int BUCKETS = 40;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public Histogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long value) {
+        long v = Math.max(0, value);
+        buckets[v == 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(v))].increment();
+        count.increment();
+        sum.add(v);
+        max.accumulate(v);
+    }
+
+    public long getCount() { return count.sum(); }
+    public long getSum() { return sum.sum(); }
+    public long getMax() { return max.get(); }
+
+    public long percentile(double p) {
+        long total = count.sum();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(p * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets[i].sum();
+            if (seen >= rank) {
+                return i == 0 ? 0 : Math.min(max.get(), (1L << i) - 1);
+            }
+        }
+        return max.get();
+    }
+
+    public Map<String, Long> toMap() {
+        long n = getCount();
+        Map<String, Long> map = new LinkedHashMap<>();
+        map.put("count", n);
+        map.put("mean", n > 0 ? getSum() / n : 0);
+        map.put("p50", percentile(0.50));
+        map.put("p95", percentile(0.95));
+        map.put("p99", percentile(0.99));
+        map.put("max", getMax());
+        return map;
+    }
+}
+
+// RenderStats.java
+package com.test.aem.core.services.profiling;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Histograms for one (model, resource type) pair. Times are in microseconds;
+ * items count the entries a model resolved (content fragments, child
+ * components), not repository reads; JSON sizes are UTF-8 bytes.
+ */
+public final class RenderStats {
+
+    private final String model;
+    private final String resourceType;
+    private final Histogram initMicros = new Histogram();
+    private final Histogram serviceMicros = new Histogram();
+    private final Histogram items = new Histogram();
+    private final Histogram jsonBytes = new Histogram();
+
+    public RenderStats(String model, String resourceType) {
+        this.model = model;
+        this.resourceType = resourceType;
+    }
+
+    public void record(long totalNanos, long serviceNanos, int itemCount, long jsonSize) {
+        initMicros.record(totalNanos / 1000);
+        serviceMicros.record(serviceNanos / 1000);
+        items.record(itemCount);
+        if (jsonSize >= 0) {
+            jsonBytes.record(jsonSize);
+        }
+    }
+
+    public String getModel() { return model; }
+    public String getResourceType() { return resourceType; }
+    public Histogram getInitMicros() { return initMicros; }
+    public Histogram getServiceMicros() { return serviceMicros; }
+    public Histogram getItems() { return items; }
+    public Histogram getJsonBytes() { return jsonBytes; }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("model", model);
+        map.put("resourceType", resourceType);
+        map.put("initMicros", initMicros.toMap());
+        map.put("serviceMicros", serviceMicros.toMap());
+        map.put("items", items.toMap());
+        map.put("jsonBytes", jsonBytes.toMap());
+        return map;
+    }
+}
+
+// RequestProfile.java
+package com.test.aem.core.services.profiling;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Per-request timing breakdown, only created when the debug header is wanted.
+ * Used from the request thread only.
+ */
+public final class RequestProfile {
+
+    private final long start = System.nanoTime();
+    private final Map<String, long[]> entries = new LinkedHashMap<>(); // label -> {count, nanos}
+
+    public void add(String label, long nanos) {
+        long[] entry = entries.computeIfAbsent(label, k -> new long[2]);
+        entry[0]++;
+        entry[1] += nanos;
+    }
+
+    /** Server-Timing header value, e.g. {@code IndexCardModel;desc="x3";dur=1.82, total;dur=40.10}. */
+    public String toServerTiming() {
+        StringBuilder header = new StringBuilder();
+        for (Map.Entry<String, long[]> entry : entries.entrySet()) {
+            header.append(entry.getKey())
+                    .append(";desc=\"x").append(entry.getValue()[0]).append('"')
+                    .append(";dur=").append(String.format(Locale.ROOT, "%.2f", entry.getValue()[1] / 1_000_000.0))
+                    .append(", ");
+        }
+        return header.append("total;dur=").append(String.format(Locale.ROOT, "%.2f", (System.nanoTime() - start) / 1_000_000.0)).toString();
+    }
+}
+
+// ModelTimer.java
+package com.test.aem.core.services.profiling;
+
+import java.util.function.Supplier;
+
+/**
+ * Measures one model's initialisation. Use with try-with-resources around the
+ * {@code @PostConstruct} body; wrap downstream service calls in {@link #call}.
+ * {@link #NOOP} is returned while profiling is disabled, so the cost is a
+ * branch per call.
+ */
+public final class ModelTimer implements AutoCloseable {
+
+    public static final ModelTimer NOOP = new ModelTimer(null, null, null);
+
+    private final RenderStats stats;
+    private final RequestProfile profile;
+    private final String label;
+    private final long start;
+    private long serviceNanos;
+    private int items;
+    private long jsonBytes = -1;
+
+    public ModelTimer(RenderStats stats, RequestProfile profile, String label) {
+        this.stats = stats;
+        this.profile = profile;
+        this.label = label;
+        this.start = stats != null ? System.nanoTime() : 0;
+    }
+
+    public <T> T call(Supplier<T> serviceCall) {
+        if (stats == null) {
+            return serviceCall.get();
+        }
+        long t = System.nanoTime();
+        try {
+            return serviceCall.get();
+        } finally {
+            serviceNanos += System.nanoTime() - t;
+        }
+    }
+
+    /** Entries the model resolved, e.g. content fragments or child components. */
+    public void items(int count) {
+        if (stats != null) {
+            items += count;
+        }
+    }
+
+    /** Adds the UTF-8 length of JSON the model built; measured only while profiling. */
+    public void jsonBytes(CharSequence json) {
+        if (stats != null && json != null) {
+            jsonBytes = Math.max(0, jsonBytes) + utf8Length(json);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (stats == null) {
+            return;
+        }
+        long total = System.nanoTime() - start;
+        stats.record(total, serviceNanos, items, jsonBytes);
+        if (profile != null) {
+            profile.add(label, total);
+        }
+    }
+
+    // Without encoding a copy of the string
+    static long utf8Length(CharSequence text) {
+        long bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+}
+
+// RenderMetricsMBean.java
+package com.test.aem.core.services.profiling;
+
+/**
+ * JMX view of the render profiler: one summary line per (model, resource type)
+ * with count, p50/p95/p99 and max of the init time in microseconds.
+ */
+public interface RenderMetricsMBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    String[] getSummary();
+
+    void reset();
+}
+
+// RenderProfiler.java
+package com.test.aem.core.services;
+
+import com.test.aem.core.services.profiling.ModelTimer;
+import com.test.aem.core.services.profiling.RenderStats;
+import com.test.aem.core.services.profiling.RequestProfile;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.resource.Resource;
+
+import java.util.Collection;
+
+/**
+ * Per-model render metrics. Models open a {@link ModelTimer} around their
+ * initialisation; filters time component includes and model.json sizes.
+ * Everything is a no-op unless enabled in the OSGi configuration.
+ */
+public interface RenderProfiler {
+
+    boolean isEnabled();
+
+    ModelTimer start(Class<?> model, Resource resource);
+
+    /** Returns a profile when a timing header should be sent for this request, otherwise null. */
+    RequestProfile beginRequest(SlingHttpServletRequest request);
+
+    void endRequest(RequestProfile profile);
+
+    void recordInclude(String resourceType, long nanos);
+
+    void recordExport(String resourceType, long nanos, long bytes);
+
+    Collection<RenderStats> getStats();
+
+    void reset();
+}
+
+// RenderProfilerImpl.java
+package com.test.aem.core.services.impl;
+
+import com.day.cq.wcm.api.WCMMode;
+import com.test.aem.core.services.RenderProfiler;
+import com.test.aem.core.services.profiling.ModelTimer;
+import com.test.aem.core.services.profiling.RenderMetricsMBean;
+import com.test.aem.core.services.profiling.RenderStats;
+import com.test.aem.core.services.profiling.RequestProfile;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.resource.Resource;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+import javax.management.DynamicMBean;
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+@Component(service = RenderProfiler.class, immediate = true)
+@Designate(ocd = RenderProfilerImpl.Config.class)
+public class RenderProfilerImpl implements RenderProfiler {
+
+    @ObjectClassDefinition(name = "HSI - Render Profiler")
+    public @interface Config {
+
+        @AttributeDefinition(name = "Enabled", description = "Record per-model render metrics")
+        boolean enabled() default false;
+
+        @AttributeDefinition(name = "Timing header", description = "Send a Server-Timing breakdown on author (WCM mode other than disabled)")
+        boolean debugHeader() default false;
+    }
+
+    static final String INCLUDE = "include";
+    static final String EXPORT = "model.json";
+
+    private static final String JMX_NAME = "com.test.aem:type=RenderMetrics";
+
+    private final ConcurrentMap<String, RenderStats> stats = new ConcurrentHashMap<>();
+    private final ThreadLocal<RequestProfile> currentProfile = new ThreadLocal<>();
+
+    private volatile boolean enabled;
+    private volatile boolean debugHeader;
+    private ServiceRegistration<DynamicMBean> mbean;
+
+    @Activate
+    protected void activate(BundleContext bundleContext, Config config) throws NotCompliantMBeanException {
+        modified(config);
+        Dictionary<String, Object> properties = new Hashtable<>();
+        properties.put("jmx.objectname", JMX_NAME);
+        mbean = bundleContext.registerService(DynamicMBean.class,
+                new StandardMBean(new RenderMetrics(), RenderMetricsMBean.class), properties);
+    }
+
+    @Modified
+    protected void modified(Config config) {
+        enabled = config.enabled();
+        debugHeader = config.debugHeader();
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        if (mbean != null) {
+            mbean.unregister();
+        }
+        stats.clear();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public ModelTimer start(Class<?> model, Resource resource) {
+        if (!enabled) {
+            return ModelTimer.NOOP;
+        }
+        String name = model.getSimpleName();
+        return new ModelTimer(statsFor(name, resource != null ? resource.getResourceType() : ""), currentProfile.get(), name);
+    }
+
+    @Override
+    public RequestProfile beginRequest(SlingHttpServletRequest request) {
+        if (!enabled || !debugHeader || WCMMode.fromRequest(request) == WCMMode.DISABLED) {
+            return null;
+        }
+        RequestProfile profile = new RequestProfile();
+        currentProfile.set(profile);
+        return profile;
+    }
+
+    @Override
+    public void endRequest(RequestProfile profile) {
+        if (profile != null) {
+            currentProfile.remove();
+        }
+    }
+
+    @Override
+    public void recordInclude(String resourceType, long nanos) {
+        if (enabled) {
+            statsFor(INCLUDE, resourceType).record(nanos, 0, 0, -1);
+        }
+    }
+
+    @Override
+    public void recordExport(String resourceType, long nanos, long bytes) {
+        if (enabled) {
+            statsFor(EXPORT, resourceType).record(nanos, 0, 0, bytes);
+        }
+    }
+
+    @Override
+    public Collection<RenderStats> getStats() {
+        return Collections.unmodifiableCollection(stats.values());
+    }
+
+    @Override
+    public void reset() {
+        stats.clear();
+    }
+
+    private RenderStats statsFor(String model, String resourceType) {
+        return stats.computeIfAbsent(model + '|' + resourceType, k -> new RenderStats(model, resourceType));
+    }
+
+    private final class RenderMetrics implements RenderMetricsMBean {
+
+        @Override
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        @Override
+        public void setEnabled(boolean value) {
+            // Runtime switch only; the OSGi configuration wins on the next update
+            enabled = value;
+        }
+
+        @Override
+        public String[] getSummary() {
+            List<String> lines = new ArrayList<>();
+            for (RenderStats s : stats.values()) {
+                lines.add(String.format("%s %s count=%d p50=%dus p95=%dus p99=%dus max=%dus",
+                        s.getModel(), s.getResourceType(), s.getInitMicros().getCount(),
+                        s.getInitMicros().percentile(0.50), s.getInitMicros().percentile(0.95),
+                        s.getInitMicros().percentile(0.99), s.getInitMicros().getMax()));
+            }
+            Collections.sort(lines);
+            return lines.toArray(new String[0]);
+        }
+
+        @Override
+        public void reset() {
+            stats.clear();
+        }
+    }
+}
+
+// =============================================================================
+// SERVLETS
+// =============================================================================
+
+// IndexStreamServlet.java
+package com.test.aem.core.servlets;
+
+import com.test.aem.core.services.IndexUpdateHub;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.Servlet;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.LinkedHashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server-sent events for realTimeUpdate index cards:
+ * GET /bin/hsi/indexstream?codes=HSI,HSCEI. Sends a full snapshot per code,
+ * then only changed fields. Streams end after a maximum duration and the
+ * browser's EventSource reconnects, which spreads clients across nodes.
+ * Consumed by the indexcard clientlib (hsi_index_stream.js), which opens one
+ * stream per page for all its cards.
+ * <p>
+ * Streams are asynchronous with non-blocking writes: the request thread returns
+ * once the stream is set up, IndexUpdateHub signals when events are waiting and
+ * they are written only while the client's socket accepts data, so a stream
+ * holds no thread between events. GET /bin/hsi/indexstream.json?codes=... returns
+ * the current snapshots as a JSON array, polled by clients the hub refuses.
+ */
+@Component(service = Servlet.class, property = {
+        "sling.servlet.paths=/bin/hsi/indexstream",
+        "sling.servlet.methods=GET"
+})
+@Designate(ocd = IndexStreamServlet.Config.class)
+public class IndexStreamServlet extends SlingSafeMethodsServlet {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IndexStreamServlet.class);
+    private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.UTF_8);
+
+    @ObjectClassDefinition(name = "HSI - Index Stream Servlet")
+    public @interface Config {
+
+        @AttributeDefinition(name = "Heartbeat (ms)", description = "Comment line sent when idle so proxies keep the connection")
+        long heartbeatMillis() default 15000;
+
+        @AttributeDefinition(name = "Max stream duration (ms)")
+        long maxStreamMillis() default 600000;
+
+        @AttributeDefinition(name = "Max index codes per stream")
+        int maxCodes() default 20;
+    }
+
+    @Reference
+    private transient IndexUpdateHub indexUpdateHub;
+
+    private final transient Set<EventStream> streams = ConcurrentHashMap.newKeySet();
+
+    private transient ScheduledExecutorService heartbeats;
+    private volatile long maxStreamMillis;
+    private volatile int maxCodes;
+
+    @Activate
+    protected void activate(Config config) {
+        modified(config);
+        heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hsi-index-stream-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeats.scheduleWithFixedDelay(this::sendHeartbeats, config.heartbeatMillis(), config.heartbeatMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Modified
+    protected void modified(Config config) {
+        maxStreamMillis = config.maxStreamMillis();
+        maxCodes = config.maxCodes();
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        heartbeats.shutdownNow();
+        for (EventStream stream : streams) {
+            stream.complete();
+        }
+    }
+
+    @Override
+    protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException {
+        Set<String> codes = new LinkedHashSet<>();
+        String param = request.getParameter("codes");
+        if (param != null) {
+            for (String code : param.split(",")) {
+                if (!code.trim().isEmpty() && codes.size() < maxCodes) {
+                    codes.add(code.trim());
+                }
+            }
+        }
+        if (codes.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "codes parameter is required");
+            return;
+        }
+        if ("json".equals(request.getRequestPathInfo().getExtension())) {
+            writeSnapshots(codes, response);
+            return;
+        }
+        if (!request.isAsyncSupported()) {
+            refuse(response, "Index streams need async request support");
+            return;
+        }
+
+        EventStream stream = new EventStream();
+        IndexUpdateHub.Subscription subscription = indexUpdateHub.subscribe(codes, stream::write);
+        if (subscription == null) {
+            refuse(response, "Too many index streams");
+            return;
+        }
+
+        response.setContentType("text/event-stream");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        response.setHeader("X-Accel-Buffering", "no");
+
+        AsyncContext async = request.startAsync();
+        async.setTimeout(maxStreamMillis);
+        streams.add(stream);
+        try {
+            stream.start(async, subscription);
+        } catch (IOException | RuntimeException e) {
+            stream.complete();
+            throw e;
+        }
+    }
+
+    // The clientlib polls the .json snapshots until a stream is accepted
+    private static void refuse(SlingHttpServletResponse response, String message) throws IOException {
+        response.setHeader("Retry-After", "30");
+        response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, message);
+    }
+
+    private void writeSnapshots(Set<String> codes, SlingHttpServletResponse response) throws IOException {
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        PrintWriter writer = response.getWriter();
+        writer.write('[');
+        boolean first = true;
+        for (String code : codes) {
+            String json = indexUpdateHub.getSnapshotJson(code);
+            if (json != null) {
+                if (!first) {
+                    writer.write(',');
+                }
+                writer.write(json);
+                first = false;
+            }
+        }
+        writer.write(']');
+    }
+
+    private void sendHeartbeats() {
+        for (EventStream stream : streams) {
+            stream.heartbeat();
+        }
+    }
+
+    /**
+     * One client's stream. Written from the hub's listener, the container's
+     * write-possible callback and the heartbeat thread; all writes go through
+     * {@link #write()} under the stream's lock and only while the output is ready,
+     * so no thread ever blocks on a slow client. Events the client cannot take yet
+     * stay coalesced in the subscription.
+     */
+    private final class EventStream implements WriteListener, AsyncListener {
+
+        private final Queue<byte[]> queue = new ArrayDeque<>();
+        private AsyncContext async;
+        private IndexUpdateHub.Subscription subscription;
+        private ServletOutputStream out;
+        private boolean written;
+        private boolean completed;
+
+        synchronized void start(AsyncContext async, IndexUpdateHub.Subscription subscription) throws IOException {
+            this.async = async;
+            this.subscription = subscription;
+            for (String event : subscription.initialEvents()) {
+                queue.add(event.getBytes(StandardCharsets.UTF_8));
+            }
+            async.addListener(this);
+            out = async.getResponse().getOutputStream();
+            out.setWriteListener(this); // the container calls onWritePossible once the output is ready
+        }
+
+        synchronized void write() {
+            if (completed || out == null) {
+                return; // not started yet: the first onWritePossible drains what is pending
+            }
+            if (subscription.isClosed()) {
+                complete(); // lagging, or the hub went away
+                return;
+            }
+            try {
+                if (!out.isReady()) {
+                    return; // onWritePossible follows once the client has read
+                }
+                for (String event : subscription.drain()) {
+                    queue.add(event.getBytes(StandardCharsets.UTF_8));
+                }
+                while (!queue.isEmpty()) {
+                    out.write(queue.poll());
+                    written = true;
+                    if (!out.isReady()) {
+                        return;
+                    }
+                }
+                out.flush();
+            } catch (IOException | IllegalStateException e) {
+                LOG.debug("Index stream write failed", e);
+                complete();
+            }
+        }
+
+        synchronized void heartbeat() {
+            if (!written && queue.isEmpty()) {
+                queue.add(HEARTBEAT);
+            }
+            written = false;
+            write(); // also drains, so an idle client still counts as keeping up
+        }
+
+        synchronized void complete() {
+            if (completed) {
+                return;
+            }
+            completed = true;
+            release();
+            if (async != null) {
+                try {
+                    async.complete();
+                } catch (IllegalStateException e) {
+                    LOG.debug("Index stream already completed", e);
+                }
+            }
+        }
+
+        private void release() {
+            streams.remove(this);
+            if (subscription != null) {
+                subscription.close();
+            }
+        }
+
+        @Override
+        public void onWritePossible() {
+            write();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            LOG.debug("Index stream write error", t);
+            complete();
+        }
+
+        @Override
+        public synchronized void onComplete(AsyncEvent event) {
+            completed = true;
+            release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            complete(); // max stream duration reached; the EventSource reconnects
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            complete();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // not restarted
+        }
+    }
+}
+
+// RenderMetricsServlet.java
+package com.test.aem.core.servlets;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.test.aem.core.services.RenderProfiler;
+import com.test.aem.core.services.profiling.RenderStats;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+import javax.servlet.Servlet;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * GET /bin/hsi/render-metrics returns the render profiler histograms as JSON,
+ * slowest p95 first. Block /bin/hsi/render-metrics at the dispatcher.
+ */
+@Component(service = Servlet.class, property = {
+        "sling.servlet.paths=/bin/hsi/render-metrics",
+        "sling.servlet.methods=GET"
+})
+public class RenderMetricsServlet extends SlingSafeMethodsServlet {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Reference
+    private transient RenderProfiler renderProfiler;
+
+    @Override
+    protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException {
+        List<RenderStats> stats = new ArrayList<>(renderProfiler.getStats());
+        stats.sort((a, b) -> Long.compare(b.getInitMicros().percentile(0.95), a.getInitMicros().percentile(0.95)));
+
+        List<Map<String, Object>> models = new ArrayList<>();
+        for (RenderStats s : stats) {
+            models.add(s.toMap());
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("enabled", renderProfiler.isEnabled());
+        body.put("models", models);
+
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-store");
+        MAPPER.writeValue(response.getWriter(), body);
+    }
+}
+
+// =============================================================================
+// FILTERS
+// =============================================================================
+
+// RenderProfilingFilter.java
+package com.test.aem.core.filters;
+
+import com.test.aem.core.services.RenderProfiler;
+import com.test.aem.core.services.profiling.RequestProfile;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.wrappers.SlingHttpServletResponseWrapper;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+/**
+ * Request-level half of the render profiler: measures size and time of
+ * model.json exports and, on author, adds a Server-Timing header with the
+ * per-model breakdown. The header is written just before the body starts,
+ * which for the model exporter is after every model has been adapted.
+ */
+@Component(service = Filter.class, property = {
+        "sling.filter.scope=REQUEST",
+        "service.ranking:Integer=-1000"
+})
+public class RenderProfilingFilter implements Filter {
+
+    @Reference
+    private RenderProfiler renderProfiler;
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        if (!renderProfiler.isEnabled() || !(request instanceof SlingHttpServletRequest)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        SlingHttpServletRequest slingRequest = (SlingHttpServletRequest) request;
+        boolean export = "json".equals(slingRequest.getRequestPathInfo().getExtension())
+                && Arrays.asList(slingRequest.getRequestPathInfo().getSelectors()).contains("model");
+        RequestProfile profile = renderProfiler.beginRequest(slingRequest);
+        if (profile == null && !export) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        long start = System.nanoTime();
+        ProfilingResponse profilingResponse = new ProfilingResponse((SlingHttpServletResponse) response, profile);
+        try {
+            chain.doFilter(request, profilingResponse);
+        } finally {
+            renderProfiler.endRequest(profile);
+            if (export) {
+                renderProfiler.recordExport(slingRequest.getResource().getResourceType(),
+                        System.nanoTime() - start, profilingResponse.bytes);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    private static final class ProfilingResponse extends SlingHttpServletResponseWrapper {
+
+        private final RequestProfile profile;
+        private long bytes; // characters for writer output, bytes for stream output
+        private PrintWriter writer;
+        private ServletOutputStream stream;
+
+        ProfilingResponse(SlingHttpServletResponse response, RequestProfile profile) {
+            super(response);
+            this.profile = profile;
+        }
+
+        private void beforeBody() {
+            if (profile != null && !isCommitted()) {
+                setHeader("Server-Timing", profile.toServerTiming());
+            }
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                beforeBody();
+                writer = new PrintWriter(new FilterWriter(super.getWriter()) {
+                    @Override
+                    public void write(int c) throws IOException {
+                        bytes++;
+                        super.write(c);
+                    }
+
+                    @Override
+                    public void write(char[] cbuf, int off, int len) throws IOException {
+                        bytes += len;
+                        super.write(cbuf, off, len);
+                    }
+
+                    @Override
+                    public void write(String str, int off, int len) throws IOException {
+                        bytes += len;
+                        super.write(str, off, len);
+                    }
+                });
+            }
+            return writer;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (stream == null) {
+                beforeBody();
+                ServletOutputStream delegate = super.getOutputStream();
+                stream = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        bytes++;
+                        delegate.write(b);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        bytes += len;
+                        delegate.write(b, off, len);
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return delegate.isReady();
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener listener) {
+                        delegate.setWriteListener(listener);
+                    }
+                };
+            }
+            return stream;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            beforeBody();
+            super.flushBuffer();
+        }
+    }
+}
+
+// ComponentTimingFilter.java
+package com.test.aem.core.filters;
+
+import com.test.aem.core.services.RenderProfiler;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import java.io.IOException;
+
+/**
+ * Times every component include by resource type, which covers HTL-rendered
+ * components whose models are not instrumented.
+ */
+@Component(service = Filter.class, property = {
+        "sling.filter.scope=COMPONENT",
+        "service.ranking:Integer=-1000"
+})
+public class ComponentTimingFilter implements Filter {
+
+    @Reference
+    private RenderProfiler renderProfiler;
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        if (!renderProfiler.isEnabled() || !(request instanceof SlingHttpServletRequest)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            renderProfiler.recordInclude(((SlingHttpServletRequest) request).getResource().getResourceType(),
+                    System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+}
+
+// MarketPrefetchFilter.java
+package com.test.aem.core.filters;
+
+import com.day.cq.wcm.api.NameConstants;
+import com.test.aem.core.services.MarketPrefetcher;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.request.RequestPathInfo;
+import org.apache.sling.api.resource.Resource;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Starts the market data loads of a page (HTML or model.json) before any
+ * component renders. Ranked high so the loads overlap with everything else
+ * the request does.
+ */
+@Component(service = Filter.class, property = {
+        "sling.filter.scope=REQUEST",
+        "sling.filter.methods=GET",
+        "service.ranking:Integer=1000"
+})
+public class MarketPrefetchFilter implements Filter {
+
+    @Reference
+    private MarketPrefetcher marketPrefetcher;
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        if (request instanceof SlingHttpServletRequest) {
+            Resource pageContent = pageContent((SlingHttpServletRequest) request);
+            if (pageContent != null) {
+                marketPrefetcher.prefetch(pageContent);
+            }
+        }
+        chain.doFilter(request, response);
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    private static Resource pageContent(SlingHttpServletRequest request) {
+        RequestPathInfo pathInfo = request.getRequestPathInfo();
+        boolean page = "html".equals(pathInfo.getExtension())
+                || "json".equals(pathInfo.getExtension()) && Arrays.asList(pathInfo.getSelectors()).contains("model");
+        Resource resource = request.getResource();
+        if (!page || resource == null) {
+            return null;
+        }
+        if (resource.isResourceType(NameConstants.NT_PAGE)) {
+            return resource.getChild(NameConstants.NN_CONTENT);
+        }
+        return NameConstants.NN_CONTENT.equals(resource.getName()) ? resource : null;
+    }
+}
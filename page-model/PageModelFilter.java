@@ -0,0 +1,63 @@
+package com.yourproject.core.filters;
+
+import com.day.cq.wcm.api.NameConstants;
+import com.yourproject.core.services.PageModelRenditions;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.request.RequestPathInfo;
+import org.apache.sling.api.resource.Resource;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import java.io.IOException;
+
+/**
+ * Answers {page}.model.json from the pre-rendered rendition when there is a
+ * current one; everything else, including child .model.json requests, goes
+ * to the Sling Model Exporter as before.
+ */
+@Component(service = Filter.class, property = {
+        "sling.filter.scope=REQUEST",
+        "sling.filter.methods=GET",
+        "sling.filter.extensions=json",
+        "sling.filter.selectors=model",
+        "service.ranking:Integer=500"
+})
+public class PageModelFilter implements Filter {
+
+    @Reference
+    private PageModelRenditions pageModelRenditions;
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        if (request instanceof SlingHttpServletRequest && isPageModel((SlingHttpServletRequest) request)
+                && pageModelRenditions.serve((SlingHttpServletRequest) request, (SlingHttpServletResponse) response)) {
+            return;
+        }
+        chain.doFilter(request, response);
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    private static boolean isPageModel(SlingHttpServletRequest request) {
+        RequestPathInfo pathInfo = request.getRequestPathInfo();
+        Resource resource = request.getResource();
+        return "json".equals(pathInfo.getExtension())
+                && pathInfo.getSelectors().length == 1 && "model".equals(pathInfo.getSelectors()[0])
+                && pathInfo.getSuffix() == null
+                && resource.isResourceType(NameConstants.NT_PAGE);
+    }
+}
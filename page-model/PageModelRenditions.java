@@ -0,0 +1,25 @@
+package com.yourproject.core.services;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+
+import java.io.IOException;
+
+/**
+ * Page model.json rendered once when a page is activated and stored under
+ * /var, so a dispatcher miss on publish is answered from the stored rendition.
+ * Components marked dynamic are re-exported live and spliced in on every request.
+ */
+public interface PageModelRenditions {
+
+    /** Set on the internal render request so it is not answered from the rendition it is replacing. */
+    String RENDERING_ATTRIBUTE = PageModelRenditions.class.getName() + ".rendering";
+
+    /**
+     * Writes the stored model of the requested page when it is current for the
+     * page's content.
+     *
+     * @return false when nothing was written and the live export should run
+     */
+    boolean serve(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException;
+}
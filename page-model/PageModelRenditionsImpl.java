@@ -0,0 +1,500 @@
+package com.yourproject.core.services.impl;
+
+import com.adobe.cq.export.json.ComponentExporter;
+import com.day.cq.contentsync.handler.util.RequestResponseFactory;
+import com.day.cq.wcm.api.NameConstants;
+import com.day.cq.wcm.api.WCMMode;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.yourproject.core.services.PageModelRenditions;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.apache.sling.engine.SlingRequestProcessor;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
+import org.apache.sling.event.jobs.consumer.JobConsumer;
+import org.apache.sling.models.factory.ExportException;
+import org.apache.sling.models.factory.MissingExporterException;
+import org.apache.sling.models.factory.ModelFactory;
+import org.apache.sling.settings.SlingSettingsService;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.BundleListener;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Publish only. Replication writes under a page's jcr:content; every batch of
+ * changes queues one render job per touched page, and the job stores the
+ * model.json produced by an internal request made as anonymous, together with
+ * a source key over the last modification of the page, its template structure
+ * and policies, the experience fragments it references and the deployed code
+ * (the latest bundle install or update). A rendition whose source key no longer
+ * matches is never served and is queued for a new render, so a missed event or
+ * a deployment that changes the models costs a live export, not stale content.
+ */
+@Component(
+    service = {PageModelRenditions.class, ResourceChangeListener.class, JobConsumer.class},
+    immediate = true,
+    property = {
+        ResourceChangeListener.PATHS + "=/content",
+        ResourceChangeListener.CHANGES + "=ADDED",
+        ResourceChangeListener.CHANGES + "=CHANGED",
+        ResourceChangeListener.CHANGES + "=REMOVED",
+        JobConsumer.PROPERTY_TOPICS + "=" + PageModelRenditionsImpl.TOPIC
+    }
+)
+@Designate(ocd = PageModelRenditionsImpl.Config.class)
+public class PageModelRenditionsImpl implements PageModelRenditions, ResourceChangeListener, JobConsumer {
+
+    @ObjectClassDefinition(name = "SPA - Pre-rendered Page Models")
+    public @interface Config {
+
+        @AttributeDefinition(name = "Enabled", description = "Only takes effect on publish instances")
+        boolean enabled() default true;
+
+        @AttributeDefinition(name = "Dynamic resource types",
+                description = "Exported live on every request and spliced into the stored model")
+        String[] dynamicTypes() default {
+            "hsi/components/content/indexcard",
+            "hsi/components/content/marketdata",
+            "hsi/components/content/newslist",
+            "hsi/components/content/chartcomponent",
+            "my-app/components/customtabs"
+        };
+
+        @AttributeDefinition(name = "Dynamic flag",
+                description = "Boolean component property that also marks a component dynamic, whatever its type")
+        String dynamicProperty() default "realTimeUpdate";
+    }
+
+    static final String TOPIC = "com/yourproject/pagemodel/render";
+
+    private static final Logger LOG = LoggerFactory.getLogger(PageModelRenditionsImpl.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // Needs read on /content and /conf, write on /var/yourproject/page-models, and must be
+    // allowed to impersonate anonymous (rep:impersonators), which the render runs as
+    private static final String SUBSERVICE = "page-model-writer";
+    private static final String ROOT = "/var/yourproject/page-models";
+    private static final String EXPORTER = "jackson";
+    private static final String ANONYMOUS = "anonymous";
+
+    private static final String PAGE_PATH = "pagePath";
+    private static final String REMOVE = "remove";
+
+    private static final String MODEL = "model";
+    private static final String SOURCE_KEY = "sourceKey";
+    private static final String SOURCES = "sources";
+    private static final String DYNAMIC_PATHS = "dynamicPaths";
+    private static final String ITEMS = ":items";
+    private static final String CHILDREN = ":children";
+    private static final String DAM = "/content/dam/";
+    private static final String CONF = "/conf/";
+    private static final String POLICY = "cq:policy";
+    private static final String FRAGMENT = "fragmentVariationPath";
+
+    @Reference
+    private ResourceResolverFactory resolverFactory;
+
+    @Reference
+    private JobManager jobManager;
+
+    @Reference
+    private SlingRequestProcessor requestProcessor;
+
+    @Reference
+    private RequestResponseFactory requestResponseFactory;
+
+    @Reference
+    private ModelFactory modelFactory;
+
+    @Reference
+    private SlingSettingsService slingSettings;
+
+    private volatile boolean active;
+    private volatile Set<String> dynamicTypes = Collections.emptySet();
+    private volatile String dynamicProperty;
+
+    private BundleContext bundleContext;
+    private volatile long deployment;
+    private final BundleListener deploymentListener = event -> {
+        if (event.getType() == BundleEvent.INSTALLED || event.getType() == BundleEvent.UPDATED) {
+            deployment = latestDeployment(bundleContext);
+        }
+    };
+
+    // Pages already queued because a request found their rendition stale; one job until it has run
+    private final Set<String> requeued = ConcurrentHashMap.newKeySet();
+
+    @Activate
+    protected void activate(BundleContext bundleContext, Config config) {
+        this.bundleContext = bundleContext;
+        deployment = latestDeployment(bundleContext);
+        bundleContext.addBundleListener(deploymentListener);
+        modified(config);
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        bundleContext.removeBundleListener(deploymentListener);
+    }
+
+    @Modified
+    protected void modified(Config config) {
+        active = config.enabled() && slingSettings.getRunModes().contains("publish");
+        dynamicTypes = new HashSet<>(Arrays.asList(config.dynamicTypes()));
+        dynamicProperty = config.dynamicProperty();
+    }
+
+    @Override
+    public void onChange(List<ResourceChange> changes) {
+        if (!active) {
+            return;
+        }
+        // One replication touches many nodes of the same page; queue each page once per batch
+        Map<String, Boolean> pages = new HashMap<>();
+        for (ResourceChange change : changes) {
+            String path = change.getPath();
+            if (path.startsWith(DAM)) {
+                continue;
+            }
+            int content = path.indexOf("/" + NameConstants.NN_CONTENT);
+            if (content > 0) {
+                pages.putIfAbsent(path.substring(0, content), false);
+            } else if (change.getType() == ResourceChange.ChangeType.REMOVED) {
+                pages.put(path, true);
+            }
+        }
+        for (Map.Entry<String, Boolean> page : pages.entrySet()) {
+            Map<String, Object> properties = new HashMap<>();
+            properties.put(PAGE_PATH, page.getKey());
+            properties.put(REMOVE, page.getValue());
+            jobManager.addJob(TOPIC, properties);
+        }
+    }
+
+    @Override
+    public JobResult process(Job job) {
+        String pagePath = job.getProperty(PAGE_PATH, String.class);
+        requeued.remove(pagePath);
+        try (ResourceResolver resolver = serviceResolver()) {
+            Resource page = resolver.getResource(pagePath);
+            if (job.getProperty(REMOVE, false) || page == null || !page.isResourceType(NameConstants.NT_PAGE)) {
+                // Removing the node also drops the renditions of every page below it
+                delete(resolver, pagePath);
+                return JobResult.OK;
+            }
+            Resource content = page.getChild(NameConstants.NN_CONTENT);
+            if (content == null) {
+                return JobResult.OK; // jcr:content arrives with a later event of the same replication
+            }
+            String[] sources = sources(resolver, content);
+            long sourceKey = sourceKey(resolver, sources);
+            Resource existing = resolver.getResource(ROOT + pagePath);
+            if (existing != null && existing.getValueMap().get(SOURCE_KEY, -1L) == sourceKey) {
+                return JobResult.OK; // Duplicate job for a page already rendered from this version
+            }
+
+            byte[] model;
+            try (ResourceResolver anonymous = anonymousResolver()) {
+                // Rendered with anonymous's rights, since only anonymous requests are served the result
+                model = render(anonymous, pagePath);
+            }
+            if (model == null) {
+                delete(resolver, pagePath);
+                return JobResult.CANCEL;
+            }
+            if (MAPPER.readTree(model).path(CHILDREN).size() > 0) {
+                // Embeds child pages, which change without touching this page; always exported live
+                delete(resolver, pagePath);
+                return JobResult.OK;
+            }
+            Resource rendition = ResourceUtil.getOrCreateResource(resolver, ROOT + pagePath,
+                    Collections.singletonMap("jcr:primaryType", "nt:unstructured"), "nt:unstructured", false);
+            ModifiableValueMap properties = rendition.adaptTo(ModifiableValueMap.class);
+            properties.put(MODEL, new ByteArrayInputStream(model));
+            properties.put(SOURCE_KEY, sourceKey);
+            properties.put(SOURCES, sources);
+            properties.put(DYNAMIC_PATHS, dynamicPaths(content));
+            resolver.commit();
+            LOG.debug("Stored model of {} ({} bytes)", pagePath, model.length);
+            return JobResult.OK;
+        } catch (LoginException e) {
+            LOG.error("Service user for subservice {} is not configured or cannot impersonate {}", SUBSERVICE, ANONYMOUS, e);
+            return JobResult.CANCEL;
+        } catch (PersistenceException | ServletException | IOException e) {
+            LOG.warn("Could not pre-render the model of {}", pagePath, e);
+            return JobResult.FAILED; // retried by the job queue
+        }
+    }
+
+    @Override
+    public boolean serve(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException {
+        // Renditions are rendered by a service user, so only requests with no more rights than anonymous get them
+        if (!active || request.getAttribute(RENDERING_ATTRIBUTE) != null
+                || WCMMode.fromRequest(request) != WCMMode.DISABLED
+                || !ANONYMOUS.equals(request.getResourceResolver().getUserID())) {
+            return false;
+        }
+        Resource content = request.getResource().getChild(NameConstants.NN_CONTENT);
+        if (content == null) {
+            return false;
+        }
+
+        JsonNode spliced = null;
+        byte[] stored;
+        String[] dynamicPaths;
+        try (ResourceResolver resolver = serviceResolver()) {
+            Resource rendition = resolver.getResource(ROOT + request.getResource().getPath());
+            if (rendition == null) {
+                return false;
+            }
+            ValueMap properties = rendition.getValueMap();
+            String[] sources = properties.get(SOURCES, String[].class);
+            if (sources == null || properties.get(SOURCE_KEY, -1L) != sourceKey(resolver, sources)) {
+                // The page's job has not finished yet, or its template, policies or fragments changed since
+                requeue(request.getResource().getPath());
+                return false;
+            }
+            dynamicPaths = properties.get(DYNAMIC_PATHS, new String[0]);
+            try (InputStream in = properties.get(MODEL, InputStream.class)) {
+                if (in == null) {
+                    return false;
+                }
+                stored = readAll(in);
+            }
+        } catch (LoginException e) {
+            return false;
+        }
+
+        // Everything that can fail happens before the first byte is written, so the live export can still take over
+        if (dynamicPaths.length > 0) {
+            spliced = MAPPER.readTree(stored);
+            for (String relativePath : dynamicPaths) {
+                splice(request, spliced, content, relativePath);
+            }
+        }
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        if (spliced != null) {
+            MAPPER.writeValue(response.getWriter(), spliced);
+        } else {
+            response.setContentLength(stored.length);
+            response.getOutputStream().write(stored);
+        }
+        return true;
+    }
+
+    private byte[] render(ResourceResolver resolver, String pagePath) throws ServletException, IOException {
+        HttpServletRequest request = requestResponseFactory.createRequest("GET", pagePath + ".model.json");
+        request.setAttribute(RENDERING_ATTRIBUTE, Boolean.TRUE);
+        WCMMode.DISABLED.toRequest(request);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HttpServletResponse response = requestResponseFactory.createResponse(out);
+        requestProcessor.processRequest(request, response, resolver);
+        response.flushBuffer();
+        int status = response.getStatus();
+        if (status == HttpServletResponse.SC_NOT_FOUND || status == HttpServletResponse.SC_FORBIDDEN
+                || status == HttpServletResponse.SC_UNAUTHORIZED) {
+            LOG.debug("Model of {} is not readable by {}, not pre-rendered", pagePath, ANONYMOUS);
+            return null;
+        }
+        if (status != HttpServletResponse.SC_OK) {
+            LOG.warn("Rendering the model of {} returned status {}", pagePath, status);
+            return null;
+        }
+        return out.toByteArray();
+    }
+
+    private static void delete(ResourceResolver resolver, String pagePath) throws PersistenceException {
+        Resource rendition = resolver.getResource(ROOT + pagePath);
+        if (rendition != null) {
+            resolver.delete(rendition);
+            resolver.commit();
+        }
+    }
+
+    // Components are found in the model by following :items down the same names as their resource path
+    private void splice(SlingHttpServletRequest request, JsonNode model, Resource content, String relativePath) {
+        String[] names = relativePath.split("/");
+        JsonNode parent = model;
+        for (int i = 0; i < names.length - 1; i++) {
+            parent = parent.path(ITEMS).path(names[i]);
+        }
+        JsonNode items = parent.path(ITEMS);
+        String name = names[names.length - 1];
+        Resource component = content.getChild(relativePath);
+        if (!(items instanceof ObjectNode) || !items.has(name) || component == null) {
+            return; // Not part of the exported model
+        }
+        ComponentExporter live = modelFactory.getModelFromWrappedRequest(request, component, ComponentExporter.class);
+        if (live == null) {
+            return;
+        }
+        try {
+            ((ObjectNode) items).set(name, MAPPER.readTree(modelFactory.exportModel(live, EXPORTER, String.class, Collections.emptyMap())));
+        } catch (ExportException | MissingExporterException | IOException e) {
+            // The stored version of this component is still better than failing the page
+            LOG.debug("Live export of {} failed, serving the stored version", component.getPath(), e);
+        }
+    }
+
+    // Breadth-first; the subtree of a dynamic component is exported with it, so it is not descended into
+    private String[] dynamicPaths(Resource content) {
+        Set<String> paths = new LinkedHashSet<>();
+        Deque<Resource> queue = new ArrayDeque<>();
+        queue.add(content);
+        int prefix = content.getPath().length() + 1;
+        while (!queue.isEmpty()) {
+            Resource resource = queue.poll();
+            if (resource != content && (dynamicTypes.contains(resource.getResourceType())
+                    || resource.getValueMap().get(dynamicProperty, false))) {
+                paths.add(resource.getPath().substring(prefix));
+                continue;
+            }
+            Iterator<Resource> children = resource.listChildren();
+            while (children.hasNext()) {
+                queue.add(children.next());
+            }
+        }
+        return paths.toArray(new String[0]);
+    }
+
+    private void requeue(String pagePath) {
+        if (requeued.add(pagePath)) {
+            Map<String, Object> properties = new HashMap<>();
+            properties.put(PAGE_PATH, pagePath);
+            properties.put(REMOVE, false);
+            jobManager.addJob(TOPIC, properties);
+        }
+    }
+
+    // Every resource whose change alters the exported model without touching the page itself
+    private static String[] sources(ResourceResolver resolver, Resource content) {
+        Set<String> paths = new LinkedHashSet<>();
+        paths.add(content.getPath());
+        String template = content.getValueMap().get(NameConstants.PN_TEMPLATE, String.class);
+        Resource structure = null;
+        if (template != null && template.startsWith(CONF)) {
+            structure = resolver.getResource(template + "/structure/" + NameConstants.NN_CONTENT);
+            paths.add(template + "/structure/" + NameConstants.NN_CONTENT);
+            paths.add(template + "/policies/" + NameConstants.NN_CONTENT);
+            // .../settings/wcm/templates/<name> maps components to policies under .../settings/wcm/policies
+            String policies = template.substring(0, template.lastIndexOf('/', template.lastIndexOf('/') - 1)) + "/policies/";
+            collect(resolver.getResource(template + "/policies/" + NameConstants.NN_CONTENT), POLICY, policies, "", paths);
+        }
+        collect(content, FRAGMENT, "", "/" + NameConstants.NN_CONTENT, paths);
+        collect(structure, FRAGMENT, "", "/" + NameConstants.NN_CONTENT, paths);
+        return paths.toArray(new String[0]);
+    }
+
+    private static void collect(Resource root, String property, String prefix, String suffix, Set<String> into) {
+        if (root == null) {
+            return;
+        }
+        Deque<Resource> queue = new ArrayDeque<>();
+        queue.add(root);
+        while (!queue.isEmpty()) {
+            Resource resource = queue.poll();
+            String value = resource.getValueMap().get(property, String.class);
+            if (value != null && !value.isEmpty()) {
+                into.add(prefix + value + suffix);
+            }
+            Iterator<Resource> children = resource.listChildren();
+            while (children.hasNext()) {
+                queue.add(children.next());
+            }
+        }
+    }
+
+    // A missing source counts as 0, so removing a fragment or policy also changes the key
+    private long sourceKey(ResourceResolver resolver, String[] sources) {
+        long key = 31 * 17 + deployment;
+        for (String path : sources) {
+            Resource resource = resolver.getResource(path);
+            key = 31 * key + (resource != null ? lastModified(resource) : 0L);
+        }
+        return key;
+    }
+
+    // Models, exporters and components all come from bundles; any install or update may change the output
+    private static long latestDeployment(BundleContext bundleContext) {
+        long latest = 0L;
+        for (Bundle bundle : bundleContext.getBundles()) {
+            latest = Math.max(latest, bundle.getLastModified());
+        }
+        return latest;
+    }
+
+    private ResourceResolver serviceResolver() throws LoginException {
+        return resolverFactory.getServiceResourceResolver(
+                Collections.singletonMap(ResourceResolverFactory.SUBSERVICE, SUBSERVICE));
+    }
+
+    private ResourceResolver anonymousResolver() throws LoginException {
+        Map<String, Object> authenticationInfo = new HashMap<>();
+        authenticationInfo.put(ResourceResolverFactory.SUBSERVICE, SUBSERVICE);
+        authenticationInfo.put(ResourceResolverFactory.USER_IMPERSONATION, ANONYMOUS);
+        return resolverFactory.getServiceResourceResolver(authenticationInfo);
+    }
+
+    private static long lastModified(Resource content) {
+        ValueMap properties = content.getValueMap();
+        Calendar modified = properties.get(NameConstants.PN_PAGE_LAST_MOD, Calendar.class);
+        if (modified == null) {
+            modified = properties.get("jcr:lastModified", Calendar.class);
+        }
+        return modified != null ? modified.getTimeInMillis() : 0L;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -8,18 +8,20 @@ import './CustomTable.css';
 const CustomTableEditConfig = {
     emptyLabel: 'HSI Custom Table (Container)',
     isEmpty: function(props) {
-        return !props.tableData || props.tableData.length === 0;
+        return (!props.table || props.table.rows.length === 0) && (!props.tableData || props.tableData.length === 0);
     }
 };
 
 const CustomTable = (props) => {
     // 2. 解构 AEM 属性
     // [重要] 这里是 Wrapper 的属性，也就是 AEM 容器的属性
-    const { className, cqPath, tableData: propTableData, pagePath, itemPath } = props;
+    const { className, cqPath, table, tableData: propTableData, pagePath, itemPath } = props;
 
-    // 数据解析
+    // 数据解析：优先使用服务端解析好的 table（发布端只有 table）
     const createDefaultData = () => [["Date", "Time"], ["Sat, Sun", "00:00 - 06:00"]];
-    const initialData = propTableData ? JSON.parse(propTableData) : createDefaultData();
+    const initialData = table && table.rows.length > 0
+        ? table.rows
+        : (propTableData ? JSON.parse(propTableData) : createDefaultData());
 
     const isInEditor = AuthoringUtils.isInEditor();
     const [isEditing, setIsEditing] = useState(false);
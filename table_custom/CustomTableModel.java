@@ -2,9 +2,18 @@ package com.myproject.core.models;
 
 import com.adobe.cq.export.json.ComponentExporter;
 import com.adobe.cq.export.json.ExporterConstants;
+import com.day.cq.wcm.api.WCMMode;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.myproject.core.servlets.TableRowsServlet;
+import com.myproject.core.tables.ParsedTable;
+import com.myproject.core.tables.TableModelCache;
 import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.resource.Resource;
 import org.apache.sling.models.annotations.Default;
+import org.apache.sling.models.annotations.Exporter;
 import org.apache.sling.models.annotations.Model;
+import org.apache.sling.models.annotations.injectorspecific.OSGiService;
+import org.apache.sling.models.annotations.injectorspecific.SlingObject;
 import org.apache.sling.models.annotations.injectorspecific.ValueMapValue;
 
 @Model(
@@ -16,6 +25,7 @@ import org.apache.sling.models.annotations.injectorspecific.ValueMapValue;
     name = ExporterConstants.SLING_MODEL_EXPORTER_NAME, 
     extensions = ExporterConstants.SLING_MODEL_EXTENSION
 )
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class CustomTableModel implements ComponentExporter {
 
     static final String RESOURCE_TYPE = "my-project/components/custom-table";
@@ -24,12 +34,32 @@ public class CustomTableModel implements ComponentExporter {
     @Default(values = "") // 如果节点没数据，返回空串，交由前端处理兜底
     private String tableData;
 
+    @SlingObject
+    private SlingHttpServletRequest request;
+
+    @SlingObject
+    private Resource resource;
+
+    @OSGiService
+    private TableModelCache tableModelCache;
+
+    // 原始字符串只给编辑模式下的编辑器用，发布端只输出解析好的 table
     public String getTableData() {
-        return tableData;
+        return WCMMode.fromRequest(request) != WCMMode.DISABLED ? tableData : null;
+    }
+
+    // 服务端解析一次并缓存，前端不用再 JSON.parse
+    public ParsedTable getTable() {
+        return tableModelCache.get(resource, "tableData", TableModelCache.Format.JSON_GRID);
+    }
+
+    // 分页 / 排序 / 过滤接口的前缀，前端拼上 ".p1.n20.json" 等 selector，见 TableRowsServlet
+    public String getRowsUrl() {
+        return resource.getPath() + "." + TableRowsServlet.SELECTOR;
     }
 
     @Override
     public String getExportedType() {
         return RESOURCE_TYPE;
     }
-}
\ No newline at end of file
+}
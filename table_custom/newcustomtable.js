@@ -9,7 +9,7 @@ import './CustomTable.css';
 const CustomTableEditConfig = {
   emptyLabel: 'HSI Custom Table',
   isEmpty: function (props) {
-    return !props.tableData || props.tableData.length === 0;
+    return (!props.table || props.table.rows.length === 0) && (!props.tableData || props.tableData.length === 0);
   }
 };
 
@@ -18,6 +18,7 @@ const CustomTable = (props) => {
     className = '',
     cqPath,
     id,
+    table,
     tableData: propTableData,
     pagePath,
     itemPath
@@ -33,6 +34,10 @@ const CustomTable = (props) => {
   ];
 
   const [tableData, setTableData] = useState(() => {
+    // 服务端已解析并校验过，发布端不再下发原始字符串
+    if (table && table.rows.length > 0) {
+      return table.rows;
+    }
     if (propTableData) {
       try {
         return JSON.parse(propTableData);
@@ -0,0 +1,97 @@
+package com.myproject.core.tables;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+// 单元格 HTML 白名单过滤：前端用 dangerouslySetInnerHTML 渲染，输出前必须在服务端清洗
+// 只保留编辑器能产生的行内 / 块级格式标签，全部属性去掉；脚本类标签连同内容一起丢弃，其他标签只保留文本
+final class CellHtml {
+
+    // 与 tiptap StarterKit 和 ManualTable 的 execCommand 能生成的标签一致
+    private static final Set<String> ALLOWED = new HashSet<>(Arrays.asList(
+            "p", "br", "b", "strong", "i", "em", "u", "s", "strike", "code", "pre", "blockquote",
+            "ul", "ol", "li", "h1", "h2", "h3", "h4", "h5", "h6", "hr", "span", "sub", "sup"));
+
+    private static final Set<String> VOID = new HashSet<>(Arrays.asList("br", "hr"));
+
+    // 这些标签里的内容也不能当文本输出
+    private static final Set<String> DROP_WITH_CONTENT = new HashSet<>(Arrays.asList(
+            "script", "style", "iframe", "object", "embed", "template", "textarea", "noscript", "svg", "math"));
+
+    private CellHtml() {
+    }
+
+    static String sanitize(String html) {
+        if (html == null || html.indexOf('<') < 0 && html.indexOf('>') < 0) return html;
+
+        StringBuilder out = new StringBuilder(html.length());
+        String lower = html.toLowerCase(Locale.ROOT);
+        int pos = 0;
+        while (pos < html.length()) {
+            char c = html.charAt(pos);
+            if (c == '>') {
+                out.append("&gt;");
+                pos++;
+                continue;
+            }
+            if (c != '<') {
+                out.append(c);
+                pos++;
+                continue;
+            }
+            if (lower.startsWith("<!--", pos)) {
+                int end = lower.indexOf("-->", pos + 4);
+                pos = end < 0 ? html.length() : end + 3;
+                continue;
+            }
+            int end = tagEnd(html, pos);
+            String name = tagName(lower, pos);
+            if (end < 0 || name == null) {
+                // 不是标签的 "<"，或者标签没有闭合：按文本转义
+                out.append("&lt;");
+                pos++;
+                continue;
+            }
+            boolean closing = html.charAt(pos + 1) == '/';
+            if (!closing && DROP_WITH_CONTENT.contains(name)) {
+                int close = lower.indexOf("</" + name, end);
+                int closeEnd = close < 0 ? -1 : tagEnd(html, close);
+                pos = closeEnd < 0 ? html.length() : closeEnd + 1;
+                continue;
+            }
+            if (ALLOWED.contains(name) && !(closing && VOID.contains(name))) {
+                out.append(closing ? "</" : "<").append(name).append('>');
+            }
+            pos = end + 1;
+        }
+        return out.toString();
+    }
+
+    // 返回标签结束的 ">" 位置，属性值里的 ">" 不算
+    private static int tagEnd(String html, int from) {
+        char quote = 0;
+        for (int i = from + 1; i < html.length(); i++) {
+            char c = html.charAt(i);
+            if (quote != 0) {
+                if (c == quote) quote = 0;
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '>') {
+                return i;
+            } else if (c == '<') {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static String tagName(String lower, int from) {
+        int start = from + 1;
+        if (start < lower.length() && lower.charAt(start) == '/') start++;
+        int end = start;
+        while (end < lower.length() && Character.isLetterOrDigit(lower.charAt(end))) end++;
+        return end > start && Character.isLetter(lower.charAt(start)) ? lower.substring(start, end) : null;
+    }
+}
@@ -0,0 +1,87 @@
+package com.myproject.core.tables;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.util.Collections;
+import java.util.List;
+
+// 解析后的表格：只解析一次，在请求之间共享，所以整个对象不可变
+@JsonSerialize(using = ParsedTableSerializer.class)
+public final class ParsedTable {
+
+    public static final ParsedTable EMPTY = new ParsedTable(0, 0, new Cell[0][], Collections.emptyList());
+
+    private final int columnCount;
+    private final int headerRows;
+    private final Cell[][] rows;
+    private final List<String> problems; // 校验发现的问题，只用于提示作者
+    private volatile TableIndex index;   // 第一次分页/排序/过滤时才建立
+
+    ParsedTable(int columnCount, int headerRows, Cell[][] rows, List<String> problems) {
+        this.columnCount = columnCount;
+        this.headerRows = headerRows;
+        this.rows = rows;
+        this.problems = Collections.unmodifiableList(problems);
+    }
+
+    static ParsedTable invalid(String problem) {
+        return new ParsedTable(0, 0, new Cell[0][], Collections.singletonList(problem));
+    }
+
+    public int getColumnCount() { return columnCount; }
+
+    public int getHeaderRows() { return headerRows; }
+
+    public int getRowCount() { return rows.length; }
+
+    public Cell[] getRow(int index) { return rows[index].clone(); }
+
+    public Cell getCell(int row, int column) {
+        Cell[] cells = rows[row];
+        return column < cells.length ? cells[column] : null;
+    }
+
+    public List<String> getProblems() { return problems; }
+
+    // 内容完全无法解析时为 false；可修复的问题（如行长度不一致）仍为 true
+    public boolean isValid() { return rows.length > 0 || problems.isEmpty(); }
+
+    Cell[][] rows() { return rows; }
+
+    public TableIndex index() {
+        TableIndex built = index;
+        if (built == null) {
+            synchronized (this) {
+                if (index == null) index = new TableIndex(this);
+                built = index;
+            }
+        }
+        return built;
+    }
+
+    public static final class Cell {
+        private final String content; // JSON 表格为纯文本，HTML 表格为单元格内的 HTML
+        private final int colspan;
+        private final int rowspan;
+        private final boolean header;
+        private final String background;
+
+        Cell(String content, int colspan, int rowspan, boolean header, String background) {
+            this.content = content;
+            this.colspan = colspan;
+            this.rowspan = rowspan;
+            this.header = header;
+            this.background = background;
+        }
+
+        static Cell text(String content, boolean header) {
+            return new Cell(content, 1, 1, header, null);
+        }
+
+        public String getContent() { return content; }
+        public int getColspan() { return colspan; }
+        public int getRowspan() { return rowspan; }
+        public boolean isHeader() { return header; }
+        public String getBackground() { return background; }
+    }
+}
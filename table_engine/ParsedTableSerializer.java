@@ -0,0 +1,63 @@
+package com.myproject.core.tables;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+/**
+ * 紧凑输出：{"columnCount":3,"headerRows":1,"rows":[["a","b","c"],...]}
+ * 普通单元格直接输出字符串，只有带合并、背景色或表头位置不符的单元格才输出对象。
+ * 直接写 JsonGenerator，不经过中间的 Map/JsonNode，大表也不会产生额外的对象。
+ */
+public class ParsedTableSerializer extends StdSerializer<ParsedTable> {
+
+    public ParsedTableSerializer() {
+        super(ParsedTable.class);
+    }
+
+    @Override
+    public void serialize(ParsedTable table, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        write(table, gen);
+    }
+
+    public static void write(ParsedTable table, JsonGenerator gen) throws IOException {
+        gen.writeStartObject();
+        gen.writeNumberField("columnCount", table.getColumnCount());
+        gen.writeNumberField("headerRows", table.getHeaderRows());
+        gen.writeArrayFieldStart("rows");
+        ParsedTable.Cell[][] rows = table.rows();
+        for (int r = 0; r < rows.length; r++) {
+            writeRow(rows[r], r < table.getHeaderRows(), gen);
+        }
+        gen.writeEndArray();
+        if (!table.getProblems().isEmpty()) {
+            gen.writeArrayFieldStart("problems");
+            for (String problem : table.getProblems()) {
+                gen.writeString(problem);
+            }
+            gen.writeEndArray();
+        }
+        gen.writeEndObject();
+    }
+
+    public static void writeRow(ParsedTable.Cell[] cells, boolean headerRow, JsonGenerator gen) throws IOException {
+        gen.writeStartArray();
+        for (ParsedTable.Cell cell : cells) {
+            if (cell.getColspan() == 1 && cell.getRowspan() == 1 && cell.getBackground() == null
+                    && cell.isHeader() == headerRow) {
+                gen.writeString(cell.getContent());
+                continue;
+            }
+            gen.writeStartObject();
+            gen.writeStringField("v", cell.getContent());
+            if (cell.getColspan() != 1) gen.writeNumberField("colspan", cell.getColspan());
+            if (cell.getRowspan() != 1) gen.writeNumberField("rowspan", cell.getRowspan());
+            if (cell.getBackground() != null) gen.writeStringField("bg", cell.getBackground());
+            if (cell.isHeader() != headerRow) gen.writeBooleanField("header", cell.isHeader());
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+    }
+}
@@ -0,0 +1,167 @@
+package com.myproject.core.tables;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Pattern;
+
+/**
+ * 表体（不含表头行）的查询索引，随 ParsedTable 一起缓存：
+ * 每列按需生成一次升序排列（降序直接倒着读），再加一个单元格文本的倒排索引用于过滤。
+ * 返回的都是 ParsedTable 中的行号。
+ */
+public final class TableIndex {
+
+    private static final Pattern TAGS = Pattern.compile("<[^>]*>");
+    private static final Pattern NUMBER_NOISE = Pattern.compile("hk\\$|[,\\s%$€£¥]");
+
+    private final int bodyStart;
+    private final int bodyRows;
+    private final String[][] text;     // [column][body row]，去掉 HTML 后的小写文本
+    private final double[][] numbers;  // [column][body row]，不是数字时为 NaN
+    private final AtomicReferenceArray<int[]> ascending;
+    private final TreeMap<String, int[]> postings;
+
+    TableIndex(ParsedTable table) {
+        this.bodyStart = table.getHeaderRows();
+        this.bodyRows = table.getRowCount() - bodyStart;
+        int columns = table.getColumnCount();
+        this.text = new String[columns][bodyRows];
+        this.numbers = new double[columns][bodyRows];
+        this.ascending = new AtomicReferenceArray<>(columns);
+
+        Map<String, BitSet> tokens = new TreeMap<>();
+        for (int r = 0; r < bodyRows; r++) {
+            for (int c = 0; c < columns; c++) {
+                ParsedTable.Cell cell = table.getCell(bodyStart + r, c);
+                String plain = cell != null ? plainText(cell.getContent()) : "";
+                text[c][r] = plain;
+                numbers[c][r] = parseNumber(plain);
+                for (String token : tokenize(plain)) {
+                    tokens.computeIfAbsent(token, k -> new BitSet(bodyRows)).set(r);
+                }
+            }
+        }
+        this.postings = new TreeMap<>();
+        for (Map.Entry<String, BitSet> entry : tokens.entrySet()) {
+            postings.put(entry.getKey(), entry.getValue().stream().toArray());
+        }
+    }
+
+    public int getBodyStart() { return bodyStart; }
+
+    public int getColumnCount() { return text.length; }
+
+    /**
+     * @param column 排序列，小于 0 表示保持原顺序
+     * @param query  过滤条件，每个词都要匹配（按词前缀），为空表示不过滤
+     */
+    public int[] select(int column, boolean descending, String query) {
+        BitSet matches = filter(query);
+        int[] order = column >= 0 && column < text.length ? sorted(column) : null;
+        int[] result = new int[matches != null ? matches.cardinality() : bodyRows];
+        // 降序只倒转有内容的部分，空单元格仍然排在最后
+        int filled = order != null ? filledCount(column) : bodyRows;
+        int n = 0;
+        for (int i = 0; i < bodyRows; i++) {
+            int position = descending && i < filled ? filled - 1 - i : i;
+            int row = order != null ? order[position] : position;
+            if (matches == null || matches.get(row)) result[n++] = bodyStart + row;
+        }
+        return result;
+    }
+
+    private int[] sorted(int column) {
+        int[] order = ascending.get(column);
+        if (order != null) return order;
+
+        String[] columnText = text[column];
+        double[] columnNumbers = numbers[column];
+        // 数字按数值排，排在文本前面；空单元格永远在最后
+        Comparator<Integer> comparator = (a, b) -> {
+            boolean aEmpty = columnText[a].isEmpty(), bEmpty = columnText[b].isEmpty();
+            if (aEmpty || bEmpty) return Boolean.compare(aEmpty, bEmpty);
+            boolean aNumber = !Double.isNaN(columnNumbers[a]), bNumber = !Double.isNaN(columnNumbers[b]);
+            if (aNumber && bNumber) return Double.compare(columnNumbers[a], columnNumbers[b]);
+            if (aNumber != bNumber) return aNumber ? -1 : 1;
+            return columnText[a].compareTo(columnText[b]);
+        };
+        Integer[] boxed = new Integer[bodyRows];
+        for (int i = 0; i < bodyRows; i++) boxed[i] = i;
+        Arrays.sort(boxed, comparator); // 稳定排序，相同值保持原顺序
+        order = new int[bodyRows];
+        for (int i = 0; i < bodyRows; i++) order[i] = boxed[i];
+        ascending.compareAndSet(column, null, order);
+        return ascending.get(column);
+    }
+
+    private int filledCount(int column) {
+        int filled = 0;
+        for (String value : text[column]) {
+            if (!value.isEmpty()) filled++;
+        }
+        return filled;
+    }
+
+    private BitSet filter(String query) {
+        List<String> terms = tokenize(query != null ? query.toLowerCase(Locale.ROOT) : "");
+        if (terms.isEmpty()) return null;
+        BitSet result = null;
+        for (String term : terms) {
+            BitSet termRows = new BitSet(bodyRows);
+            for (int[] rows : postings.subMap(term, true, term + Character.MAX_VALUE, false).values()) {
+                for (int row : rows) termRows.set(row);
+            }
+            if (result == null) {
+                result = termRows;
+            } else {
+                result.and(termRows);
+            }
+            if (result.isEmpty()) break;
+        }
+        return result;
+    }
+
+    // 字母数字按连续片段切词；中文没有空格，按单字切
+    static List<String> tokenize(String plain) {
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= plain.length(); i++) {
+            char c = i < plain.length() ? plain.charAt(i) : ' ';
+            boolean han = Character.UnicodeScript.of(c) == Character.UnicodeScript.HAN;
+            if (Character.isLetterOrDigit(c) && !han) {
+                if (start < 0) start = i;
+                continue;
+            }
+            if (start >= 0) {
+                tokens.add(plain.substring(start, i));
+                start = -1;
+            }
+            if (han) tokens.add(String.valueOf(c));
+        }
+        return tokens;
+    }
+
+    static String plainText(String content) {
+        if (content == null || content.isEmpty()) return "";
+        String plain = content.indexOf('<') >= 0 ? TAGS.matcher(content).replaceAll(" ") : content;
+        return plain.replace("&nbsp;", " ").replace("&amp;", "&").trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static double parseNumber(String plain) {
+        if (plain.isEmpty()) return Double.NaN;
+        String candidate = NUMBER_NOISE.matcher(plain).replaceAll("");
+        if (candidate.isEmpty() || !(Character.isDigit(candidate.charAt(candidate.length() - 1)))) return Double.NaN;
+        try {
+            return Double.parseDouble(candidate);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.myproject.core.tables;
+
+import org.apache.sling.api.resource.Resource;
+
+// 表格解析缓存：按 "资源路径 + 属性名" 缓存，资源修改后自动重新解析
+public interface TableModelCache {
+
+    enum Format {
+        JSON_GRID,   // CustomTableModel.tableData
+        HTML,        // DynamicTable.tableContent
+        MANUAL_JSON  // ManualTable.tableData
+    }
+
+    ParsedTable get(Resource resource, String property, Format format);
+
+    // SpaDynamicTable：表格由子节点组成，子树有变化时失效
+    ParsedTable getTree(Resource resource);
+}
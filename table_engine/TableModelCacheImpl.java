@@ -0,0 +1,126 @@
+package com.myproject.core.tables;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+@Component(
+    service = {TableModelCache.class, ResourceChangeListener.class},
+    immediate = true,
+    property = {
+        ResourceChangeListener.PATHS + "=/content",
+        ResourceChangeListener.CHANGES + "=ADDED",
+        ResourceChangeListener.CHANGES + "=CHANGED",
+        ResourceChangeListener.CHANGES + "=REMOVED"
+    }
+)
+public class TableModelCacheImpl implements TableModelCache, ResourceChangeListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TableModelCacheImpl.class);
+
+    private static final int MAX_ENTRIES = 2000;
+    private static final String TREE = "rows";
+
+    // key 为 "路径@属性"，按路径排序：某个路径上的所有表格是一段连续区间 [path + "@", path + "A")
+    private final ConcurrentNavigableMap<String, Entry> entries = new ConcurrentSkipListMap<>();
+
+    @Deactivate
+    protected void deactivate() {
+        entries.clear();
+    }
+
+    @Override
+    public ParsedTable get(Resource resource, String property, Format format) {
+        ValueMap properties = resource.getValueMap();
+        String raw = properties.get(property, String.class);
+        if (raw == null || raw.isEmpty()) return ParsedTable.EMPTY;
+
+        // 有修改时间时用 "修改时间 + 长度" 判断是否变化，没有时退回到内容 hash
+        long lastModified = lastModified(properties);
+        long version = lastModified > 0 ? lastModified * 31 + raw.length() : raw.hashCode();
+        String key = resource.getPath() + "@" + property;
+        Entry entry = entries.get(key);
+        if (entry != null && entry.version == version) return entry.table;
+
+        long start = System.nanoTime();
+        ParsedTable table = parse(raw, format);
+        if (!table.getProblems().isEmpty()) {
+            LOG.warn("Table {} has problems: {}", key, table.getProblems());
+        }
+        LOG.debug("Parsed table {} ({} rows, {} chars) in {} ms", key, table.getRowCount(), raw.length(),
+                (System.nanoTime() - start) / 1_000_000.0);
+
+        put(key, new Entry(version, table));
+        return table;
+    }
+
+    @Override
+    public ParsedTable getTree(Resource resource) {
+        String key = resource.getPath() + "@" + TREE;
+        Entry entry = entries.get(key);
+        if (entry != null) return entry.table;
+
+        long start = System.nanoTime();
+        ParsedTable table = TableParsers.fromResourceTree(resource);
+        LOG.debug("Read table tree {} ({} rows) in {} ms", key, table.getRowCount(),
+                (System.nanoTime() - start) / 1_000_000.0);
+        put(key, new Entry(0L, table));
+        return table;
+    }
+
+    // 属性表格本身有修改时间校验；子节点组成的表格只能靠这里失效
+    // 受影响的只有变更路径自身及其祖先上的表格，逐级按区间删除，不扫描全部缓存
+    @Override
+    public void onChange(List<ResourceChange> changes) {
+        for (ResourceChange change : changes) {
+            String changed = change.getPath();
+            evict(changed);
+            for (int slash = changed.lastIndexOf('/'); slash > 0; slash = changed.lastIndexOf('/', slash - 1)) {
+                evict(changed.substring(0, slash));
+            }
+        }
+    }
+
+    private void evict(String path) {
+        if (!entries.isEmpty()) entries.subMap(path + "@", path + "A").clear();
+    }
+
+    private void put(String key, Entry entry) {
+        if (entries.size() >= MAX_ENTRIES) entries.clear();
+        entries.put(key, entry);
+    }
+
+    private static ParsedTable parse(String raw, Format format) {
+        switch (format) {
+            case HTML: return TableParsers.fromHtml(raw);
+            case MANUAL_JSON: return TableParsers.fromManualJson(raw);
+            default: return TableParsers.fromJsonGrid(raw);
+        }
+    }
+
+    private static long lastModified(ValueMap properties) {
+        Calendar modified = properties.get("jcr:lastModified", Calendar.class);
+        if (modified == null) modified = properties.get("cq:lastModified", Calendar.class);
+        return modified != null ? modified.getTimeInMillis() : 0L;
+    }
+
+    private static final class Entry {
+        final long version;
+        final ParsedTable table;
+
+        Entry(long version, ParsedTable table) {
+            this.version = version;
+            this.table = table;
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package com.myproject.core.tables;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ValueMap;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// 把作者保存的原始字符串解析成 ParsedTable；解析失败不抛异常，问题记录在 problems 里
+final class TableParsers {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final Pattern ATTRIBUTE = Pattern.compile("([\\w-]+)\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)')");
+    private static final Pattern BACKGROUND = Pattern.compile("background-color\\s*:\\s*([^;]+)");
+    private static final Pattern SINGLE_PARAGRAPH = Pattern.compile("(?is)^<p>(.*)</p>$");
+
+    private TableParsers() {
+    }
+
+    // CustomTableModel：[["Date","Time"],["Sat, Sun","00:00 - 06:00"]]，第一行为表头
+    static ParsedTable fromJsonGrid(String raw) {
+        if (raw == null || raw.trim().isEmpty()) return ParsedTable.EMPTY;
+
+        JsonNode root;
+        try {
+            root = MAPPER.readTree(raw);
+        } catch (JsonProcessingException e) {
+            return ParsedTable.invalid("tableData is not valid JSON: " + e.getOriginalMessage());
+        }
+        if (root == null || !root.isArray()) {
+            return ParsedTable.invalid("tableData must be an array of rows");
+        }
+
+        List<String> problems = new ArrayList<>();
+        List<String[]> values = new ArrayList<>(root.size());
+        int columnCount = 0;
+        for (int r = 0; r < root.size(); r++) {
+            JsonNode row = root.get(r);
+            if (!row.isArray()) {
+                problems.add("row " + r + " is not an array, skipped");
+                continue;
+            }
+            String[] cells = new String[row.size()];
+            for (int c = 0; c < row.size(); c++) {
+                JsonNode cell = row.get(c);
+                if (cell.isContainerNode()) {
+                    problems.add("cell " + r + "," + c + " is not a scalar value");
+                    cells[c] = cell.toString();
+                } else {
+                    cells[c] = cell.isNull() ? "" : cell.asText();
+                }
+            }
+            columnCount = Math.max(columnCount, cells.length);
+            values.add(cells);
+        }
+
+        // 行长度不一致时补空单元格，前端不用再判断越界
+        ParsedTable.Cell[][] rows = new ParsedTable.Cell[values.size()][];
+        for (int r = 0; r < rows.length; r++) {
+            String[] cells = values.get(r);
+            if (cells.length < columnCount) {
+                problems.add("row " + r + " has " + cells.length + " of " + columnCount + " cells, padded");
+            }
+            rows[r] = new ParsedTable.Cell[columnCount];
+            for (int c = 0; c < columnCount; c++) {
+                rows[r][c] = ParsedTable.Cell.text(c < cells.length ? cells[c] : "", r == 0);
+            }
+        }
+        return new ParsedTable(columnCount, rows.length > 0 ? 1 : 0, rows, problems);
+    }
+
+    // ManualTable：{"colWidths":[...],"rows":[{"cells":[{"content":"<b>A1</b>","style":{...}}]}]}，没有表头
+    static ParsedTable fromManualJson(String raw) {
+        if (raw == null || raw.trim().isEmpty()) return ParsedTable.EMPTY;
+
+        JsonNode root;
+        try {
+            root = MAPPER.readTree(raw);
+        } catch (JsonProcessingException e) {
+            return ParsedTable.invalid("tableData is not valid JSON: " + e.getOriginalMessage());
+        }
+        JsonNode rowNodes = root != null ? root.get("rows") : null;
+        if (rowNodes == null || !rowNodes.isArray()) {
+            return ParsedTable.invalid("tableData has no rows array");
+        }
+
+        List<String> problems = new ArrayList<>();
+        ParsedTable.Cell[][] rows = new ParsedTable.Cell[rowNodes.size()][];
+        int columnCount = root.path("colWidths").size();
+        for (int r = 0; r < rows.length; r++) {
+            JsonNode cells = rowNodes.get(r).path("cells");
+            if (!cells.isArray()) problems.add("row " + r + " has no cells array");
+            rows[r] = new ParsedTable.Cell[cells.size()];
+            for (int c = 0; c < cells.size(); c++) {
+                JsonNode cell = cells.get(c);
+                String background = cell.path("style").path("backgroundColor").asText(null);
+                rows[r][c] = new ParsedTable.Cell(CellHtml.sanitize(cell.path("content").asText("")), 1, 1, false, background);
+            }
+            columnCount = Math.max(columnCount, cells.size());
+        }
+        return new ParsedTable(columnCount, 0, rows, problems);
+    }
+
+    // SpaDynamicTable：rows/itemN/cols/itemM 下是拖入的组件，排序和过滤只需要其中的文本
+    static ParsedTable fromResourceTree(Resource table) {
+        List<ParsedTable.Cell[]> rows = new ArrayList<>();
+        String[] headers = table.getValueMap().get("tableHeaders", String[].class);
+        if (headers != null && headers.length > 0) {
+            ParsedTable.Cell[] headerRow = new ParsedTable.Cell[headers.length];
+            for (int c = 0; c < headers.length; c++) headerRow[c] = ParsedTable.Cell.text(headers[c], true);
+            rows.add(headerRow);
+        }
+
+        int columnCount = headers != null ? headers.length : 0;
+        Resource rowsResource = table.getChild("rows");
+        if (rowsResource != null) {
+            for (Resource row : rowsResource.getChildren()) {
+                Resource cols = row.getChild("cols");
+                List<ParsedTable.Cell> cells = new ArrayList<>();
+                if (cols != null) {
+                    for (Resource col : cols.getChildren()) {
+                        StringBuilder text = new StringBuilder();
+                        collectText(col, text);
+                        cells.add(ParsedTable.Cell.text(text.toString().trim(), false));
+                    }
+                }
+                columnCount = Math.max(columnCount, cells.size());
+                rows.add(cells.toArray(new ParsedTable.Cell[0]));
+            }
+        }
+        return new ParsedTable(columnCount, headers != null && headers.length > 0 ? 1 : 0,
+                rows.toArray(new ParsedTable.Cell[0][]), new ArrayList<>());
+    }
+
+    private static void collectText(Resource resource, StringBuilder text) {
+        ValueMap properties = resource.getValueMap();
+        for (String name : new String[]{"jcr:title", "title", "text", "value"}) {
+            String value = properties.get(name, String.class);
+            if (value != null && !value.isEmpty()) text.append(value).append(' ');
+        }
+        Iterator<Resource> children = resource.listChildren();
+        while (children.hasNext()) collectText(children.next(), text);
+    }
+
+    // DynamicTable：tiptap 生成的 <table> HTML，单元格内保留白名单内的行内 HTML（见 CellHtml）
+    static ParsedTable fromHtml(String raw) {
+        if (raw == null || raw.trim().isEmpty()) return ParsedTable.EMPTY;
+
+        String lower = raw.toLowerCase(Locale.ROOT);
+        int tableStart = lower.indexOf("<table");
+        if (tableStart < 0) return ParsedTable.invalid("tableContent contains no <table> element");
+        int tableEnd = lower.indexOf("</table", tableStart);
+        List<String> problems = new ArrayList<>();
+        if (tableEnd < 0) {
+            problems.add("<table> is not closed");
+            tableEnd = raw.length();
+        }
+
+        List<ParsedTable.Cell[]> rows = new ArrayList<>();
+        int pos = tableStart;
+        while (true) {
+            int tr = findTag(lower, "tr", pos, tableEnd);
+            if (tr < 0) break;
+            int trOpenEnd = lower.indexOf('>', tr);
+            int trEnd = lower.indexOf("</tr", trOpenEnd);
+            int nextTr = findTag(lower, "tr", trOpenEnd, tableEnd);
+            if (trEnd < 0 || trEnd > tableEnd || (nextTr >= 0 && nextTr < trEnd)) {
+                problems.add("row " + rows.size() + " is not closed");
+                trEnd = nextTr >= 0 ? nextTr : tableEnd;
+            }
+            rows.add(parseCells(raw, lower, trOpenEnd + 1, trEnd, rows.size(), problems));
+            pos = trEnd;
+        }
+        if (rows.isEmpty()) {
+            problems.add("<table> contains no rows");
+            return new ParsedTable(0, 0, new ParsedTable.Cell[0][], problems);
+        }
+
+        int headerRows = 0;
+        while (headerRows < rows.size() && allHeaders(rows.get(headerRows))) headerRows++;
+        return new ParsedTable(columnCount(rows), headerRows, rows.toArray(new ParsedTable.Cell[0][]), problems);
+    }
+
+    private static ParsedTable.Cell[] parseCells(String raw, String lower, int from, int to, int rowIndex,
+                                                 List<String> problems) {
+        List<ParsedTable.Cell> cells = new ArrayList<>();
+        int pos = from;
+        while (true) {
+            int td = findTag(lower, "td", pos, to);
+            int th = findTag(lower, "th", pos, to);
+            int start = td < 0 ? th : (th < 0 ? td : Math.min(td, th));
+            if (start < 0) break;
+            boolean header = start == th;
+            int openEnd = lower.indexOf('>', start);
+            if (openEnd < 0 || openEnd > to) {
+                problems.add("row " + rowIndex + " has a truncated cell tag");
+                break;
+            }
+            int close = lower.indexOf(header ? "</th" : "</td", openEnd);
+            if (close < 0 || close > to) {
+                problems.add("row " + rowIndex + " cell " + cells.size() + " is not closed");
+                close = to;
+            }
+            cells.add(toCell(raw.substring(start, openEnd), raw.substring(openEnd + 1, close).trim(), header));
+            pos = close;
+        }
+        return cells.toArray(new ParsedTable.Cell[0]);
+    }
+
+    private static ParsedTable.Cell toCell(String openTag, String content, boolean header) {
+        int colspan = 1;
+        int rowspan = 1;
+        String background = null;
+        Matcher attribute = ATTRIBUTE.matcher(openTag);
+        while (attribute.find()) {
+            String name = attribute.group(1).toLowerCase(Locale.ROOT);
+            String value = attribute.group(2) != null ? attribute.group(2) : attribute.group(3);
+            if ("colspan".equals(name)) {
+                colspan = parseSpan(value);
+            } else if ("rowspan".equals(name)) {
+                rowspan = parseSpan(value);
+            } else if ("style".equals(name)) {
+                Matcher bg = BACKGROUND.matcher(value);
+                if (bg.find()) background = bg.group(1).trim();
+            }
+        }
+        // tiptap 会把每个单元格的内容包一层 <p>，只有一段时去掉
+        Matcher paragraph = SINGLE_PARAGRAPH.matcher(content);
+        if (paragraph.matches() && !paragraph.group(1).toLowerCase(Locale.ROOT).contains("<p")) {
+            content = paragraph.group(1);
+        }
+        return new ParsedTable.Cell(CellHtml.sanitize(content), colspan, rowspan, header, background);
+    }
+
+    // 考虑 rowspan 占位后的实际列数
+    private static int columnCount(List<ParsedTable.Cell[]> rows) {
+        int[] carried = new int[0];
+        int max = 0;
+        for (ParsedTable.Cell[] row : rows) {
+            int width = 0;
+            for (int carry : carried) if (carry > 0) width++;
+            for (ParsedTable.Cell cell : row) width += cell.getColspan();
+            max = Math.max(max, width);
+
+            int[] next = new int[Math.max(carried.length, width)];
+            for (int i = 0; i < carried.length; i++) next[i] = Math.max(0, carried[i] - 1);
+            int column = 0;
+            for (ParsedTable.Cell cell : row) {
+                while (column < carried.length && carried[column] > 0) column++;
+                for (int span = 0; span < cell.getColspan() && column < next.length; span++, column++) {
+                    next[column] = cell.getRowspan() - 1;
+                }
+            }
+            carried = next;
+        }
+        return max;
+    }
+
+    private static boolean allHeaders(ParsedTable.Cell[] row) {
+        if (row.length == 0) return false;
+        for (ParsedTable.Cell cell : row) {
+            if (!cell.isHeader()) return false;
+        }
+        return true;
+    }
+
+    // 查找 <name> 或 <name ...>，避免把 <thead> 当成 <th>
+    private static int findTag(String lower, String name, int from, int to) {
+        String open = "<" + name;
+        int index = lower.indexOf(open, from);
+        while (index >= 0 && index < to) {
+            int after = index + open.length();
+            if (after < lower.length()) {
+                char c = lower.charAt(after);
+                if (c == '>' || c == '/' || Character.isWhitespace(c)) return index;
+            }
+            index = lower.indexOf(open, after);
+        }
+        return -1;
+    }
+
+    private static int parseSpan(String value) {
+        try {
+            return Math.max(1, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+}
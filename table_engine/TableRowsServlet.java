@@ -0,0 +1,185 @@
+package com.myproject.core.servlets;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.myproject.core.tables.ParsedTable;
+import com.myproject.core.tables.ParsedTableSerializer;
+import com.myproject.core.tables.TableIndex;
+import com.myproject.core.tables.TableModelCache;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+import javax.servlet.Servlet;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 大表格分页 / 排序 / 过滤接口，所有参数都在 selector 里，Dispatcher 可以按 URL 缓存：
+ *
+ *   {table}.rows.p{page}.n{size}[.c{column}.{asc|desc}][.q{base64url(query)}].json
+ *
+ * 例如 /content/site/en/page/jcr:content/root/table.rows.p2.n20.c1.desc.json
+ * 非规范写法（前导 0、不支持的 size、未归一化的 query 等）一律返回 404，避免同一结果被缓存成多份。
+ */
+@Component(
+    service = Servlet.class,
+    property = {
+        "sling.servlet.resourceTypes=" + TableRowsServlet.CUSTOM_TABLE,
+        "sling.servlet.resourceTypes=" + TableRowsServlet.MANUAL_TABLE,
+        "sling.servlet.resourceTypes=" + TableRowsServlet.SPA_TABLE,
+        "sling.servlet.selectors=" + TableRowsServlet.SELECTOR,
+        "sling.servlet.extensions=json",
+        "sling.servlet.methods=GET"
+    }
+)
+public class TableRowsServlet extends SlingSafeMethodsServlet {
+
+    public static final String SELECTOR = "rows";
+
+    static final String CUSTOM_TABLE = "my-project/components/custom-table";
+    static final String MANUAL_TABLE = "my-project/components/manualtable";
+    static final String SPA_TABLE = "my-project/components/spa-dynamic-table";
+
+    private static final int[] PAGE_SIZES = {10, 20, 50, 100};
+    private static final int MAX_QUERY_LENGTH = 100;
+
+    private static final Pattern PAGE = Pattern.compile("p([1-9][0-9]{0,5})");
+    private static final Pattern SIZE = Pattern.compile("n([1-9][0-9]{0,2})");
+    private static final Pattern COLUMN = Pattern.compile("c(0|[1-9][0-9]{0,2})");
+    private static final Pattern QUERY = Pattern.compile("q([A-Za-z0-9_-]{1,200})");
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    @Reference
+    private transient TableModelCache tableModelCache;
+
+    @Override
+    protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException {
+        Query query = Query.parse(request.getRequestPathInfo().getSelectors());
+        if (query == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        ParsedTable table = load(request.getResource());
+        if (table == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        TableIndex index = table.index();
+        if (query.column >= index.getColumnCount()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        int[] rows = index.select(query.column, query.descending, query.text);
+        int pageCount = Math.max(1, (rows.length + query.size - 1) / query.size);
+        if (query.page > pageCount) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        int from = Math.min(rows.length, (query.page - 1) * query.size);
+        int to = Math.min(rows.length, from + query.size);
+
+        response.setContentType("application/json");
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        try (JsonGenerator gen = JSON.createGenerator(response.getWriter())) {
+            gen.writeStartObject();
+            gen.writeNumberField("total", rows.length);
+            gen.writeNumberField("page", query.page);
+            gen.writeNumberField("pageSize", query.size);
+            gen.writeNumberField("pageCount", pageCount);
+            gen.writeNumberField("columnCount", table.getColumnCount());
+            gen.writeArrayFieldStart("header");
+            for (int r = 0; r < index.getBodyStart(); r++) {
+                ParsedTableSerializer.writeRow(table.getRow(r), true, gen);
+            }
+            gen.writeEndArray();
+            // 原始行号：SpaDynamicTable 的单元格是组件，前端按行号重排已有的行
+            gen.writeArrayFieldStart("rowIds");
+            for (int i = from; i < to; i++) gen.writeNumber(rows[i] - index.getBodyStart());
+            gen.writeEndArray();
+            gen.writeArrayFieldStart("rows");
+            for (int i = from; i < to; i++) {
+                ParsedTableSerializer.writeRow(table.getRow(rows[i]), false, gen);
+            }
+            gen.writeEndArray();
+            gen.writeEndObject();
+        }
+    }
+
+    private ParsedTable load(Resource resource) {
+        if (resource.isResourceType(CUSTOM_TABLE)) {
+            return tableModelCache.get(resource, "tableData", TableModelCache.Format.JSON_GRID);
+        }
+        if (resource.isResourceType(MANUAL_TABLE)) {
+            return tableModelCache.get(resource, "tableData", TableModelCache.Format.MANUAL_JSON);
+        }
+        if (resource.isResourceType(SPA_TABLE)) {
+            return tableModelCache.getTree(resource);
+        }
+        return null;
+    }
+
+    // base64url(UTF-8)，不带 padding；前端编码前先 trim + 小写 + 合并空格
+    public static String encodeQuery(String text) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(normalize(text).getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String normalize(String text) {
+        return text.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Query {
+        int page;
+        int size;
+        int column = -1;
+        boolean descending;
+        String text;
+
+        // 只接受规范顺序和写法，其它一律视为无效
+        static Query parse(String[] selectors) {
+            if (selectors.length < 3 || !SELECTOR.equals(selectors[0])) return null;
+            Query query = new Query();
+            Matcher page = PAGE.matcher(selectors[1]);
+            Matcher size = SIZE.matcher(selectors[2]);
+            if (!page.matches() || !size.matches()) return null;
+            query.page = Integer.parseInt(page.group(1));
+            query.size = Integer.parseInt(size.group(1));
+            if (Arrays.stream(PAGE_SIZES).noneMatch(s -> s == query.size)) return null;
+
+            int next = 3;
+            if (next < selectors.length && COLUMN.matcher(selectors[next]).matches()) {
+                if (next + 1 >= selectors.length) return null;
+                String direction = selectors[next + 1];
+                if (!"asc".equals(direction) && !"desc".equals(direction)) return null;
+                query.column = Integer.parseInt(selectors[next].substring(1));
+                query.descending = "desc".equals(direction);
+                next += 2;
+            }
+            if (next < selectors.length) {
+                Matcher q = QUERY.matcher(selectors[next]);
+                if (!q.matches()) return null;
+                try {
+                    query.text = new String(Base64.getUrlDecoder().decode(q.group(1)), StandardCharsets.UTF_8);
+                } catch (IllegalArgumentException e) {
+                    return null;
+                }
+                if (query.text.isEmpty() || query.text.length() > MAX_QUERY_LENGTH
+                        || !encodeQuery(query.text).equals(q.group(1))) return null;
+                next++;
+            }
+            return next == selectors.length ? query : null;
+        }
+    }
+}